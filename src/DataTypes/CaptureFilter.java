@@ -0,0 +1,82 @@
+package DataTypes;
+
+import java.util.Iterator;
+
+/**
+ * CaptureFilter - decides which packets a capture tap writes out or the packet tracer marks
+ *
+ * Every criterion defaults to ANY; a packet must match all criteria that are set
+ */
+public class CaptureFilter {
+	public static final int ANY = -1;
+
+	private int router = ANY; // the router the packet is seen at
+	private int label = ANY; // a label anywhere in the MPLS stack
+	private int DSCP = ANY; // the DSCP field of the packet
+	private int dest = ANY; // the destination address of the packet
+
+	/**
+	 * Only capture packets seen at the given router
+	 * @param router the address of the router, or ANY
+	 * @since 1.0
+	 */
+	public void setRouter(int router){
+		this.router = router;
+	}
+
+	/**
+	 * Only capture packets carrying the given MPLS label
+	 * @param label the label, or ANY
+	 * @since 1.0
+	 */
+	public void setLabel(int label){
+		this.label = label;
+	}
+
+	/**
+	 * Only capture packets with the given DSCP field
+	 * @param DSCP the DSCP value, or ANY
+	 * @since 1.0
+	 */
+	public void setDSCP(int DSCP){
+		this.DSCP = DSCP;
+	}
+
+	/**
+	 * Only capture packets sent to the given router
+	 * @param dest the destination address, or ANY
+	 * @since 1.0
+	 */
+	public void setDest(int dest){
+		this.dest = dest;
+	}
+
+	/**
+	 * Returns whether a packet seen at a router passes this filter
+	 * @param packet the packet
+	 * @param router the address of the router the packet is seen at
+	 * @return true if the packet should be captured
+	 * @since 1.0
+	 */
+	public boolean matches(Packet packet, int router){
+		if (this.router != ANY && this.router != router) {
+			return false;
+		}
+		if (this.dest != ANY && this.dest != packet.getDest()) {
+			return false;
+		}
+		if (this.DSCP != ANY && this.DSCP != packet.getDSCP()) {
+			return false;
+		}
+		if (this.label != ANY) {
+			Iterator<MPLS> headers = packet.MPLSheaderIterator();
+			while (headers.hasNext()) {
+				if (headers.next().getLabel() == this.label) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+}
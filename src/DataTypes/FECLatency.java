@@ -0,0 +1,159 @@
+package DataTypes;
+
+/**
+ * FECLatency - the latency of the packets of one forwarding equivalence class
+ *
+ * The class is identified by source, destination and DSCP, and for a point to multipoint tree
+ * by its group as well, with the leaf as the destination. Besides the total time from
+ * creation to delivery it keeps the part spent queued in nic output buffers and the part
+ * spent in the wait list of the source while the LSP was set up, the rest is link time.
+ */
+public class FECLatency {
+	private int source, dest, DSCP; // the forwarding equivalence class
+	private int group = -1; // the P2MP group, -1 for a unicast LSP
+	private LatencyHistogram total = new LatencyHistogram(); // ticks from creation to delivery
+	private LatencyHistogram queueing = new LatencyHistogram(); // ticks in nic output buffers
+	private LatencyHistogram waiting = new LatencyHistogram(); // ticks in the wait list of the source
+
+	/**
+	 * Creates empty histograms for a forwarding equivalence class
+	 * @param source the source router
+	 * @param dest the destination router
+	 * @param DSCP the traffic class
+	 * @since 1.0
+	 */
+	public FECLatency(int source, int dest, int DSCP){
+		this.source = source;
+		this.dest = dest;
+		this.DSCP = DSCP;
+	}
+
+	/**
+	 * Creates empty histograms for the packets of a point to multipoint tree delivered at one leaf
+	 * @param source the root of the tree
+	 * @param leaf the leaf router
+	 * @param DSCP the traffic class
+	 * @param group the group the tree delivers
+	 * @since 1.0
+	 */
+	public FECLatency(int source, int leaf, int DSCP, int group){
+		this(source, leaf, DSCP);
+		this.group = group;
+	}
+
+	/**
+	 * Records a delivered packet
+	 * @param packet the packet
+	 * @param tick the tick the packet was delivered at
+	 * @since 1.0
+	 */
+	public void record(Packet packet, long tick){
+		this.total.record(tick - packet.getInjectedAt());
+		this.queueing.record(packet.getQueueTicks());
+		this.waiting.record(packet.getWaitTicks());
+	}
+
+	/**
+	 * Adds the packets recorded by another router or thread for the same class
+	 * @param other the latencies to add
+	 * @since 1.0
+	 */
+	public void merge(FECLatency other){
+		this.total.merge(other.total);
+		this.queueing.merge(other.queueing);
+		this.waiting.merge(other.waiting);
+	}
+
+	/**
+	 * Adds the packets recorded by another object for the same class a number of times, used to
+	 * repeat the deliveries of one tick while the network is fast-forwarded
+	 * @param other the latencies to add
+	 * @param times how many times to add them
+	 * @since 1.0
+	 */
+	public void merge(FECLatency other, long times){
+		this.total.merge(other.total, times);
+		this.queueing.merge(other.queueing, times);
+		this.waiting.merge(other.waiting, times);
+	}
+
+	/**
+	 * Returns a copy of the latencies recorded so far
+	 * @return the copy
+	 * @since 1.0
+	 */
+	public FECLatency copy(){
+		FECLatency copy = new FECLatency(this.source, this.dest, this.DSCP, this.group);
+		copy.merge(this);
+		return copy;
+	}
+
+	/**
+	 * Returns the packets recorded since an earlier copy
+	 * @param earlier the copy
+	 * @return the latencies recorded since
+	 * @since 1.0
+	 */
+	public FECLatency since(FECLatency earlier){
+		FECLatency since = new FECLatency(this.source, this.dest, this.DSCP, this.group);
+		since.total = this.total.since(earlier.total);
+		since.queueing = this.queueing.since(earlier.queueing);
+		since.waiting = this.waiting.since(earlier.waiting);
+		return since;
+	}
+
+	/**
+	 * Returns whether two objects hold the same latencies
+	 * @param other the latencies to compare with
+	 * @return true if all three histograms hold the same values
+	 * @since 1.0
+	 */
+	public boolean sameAs(FECLatency other){
+		return this.total.sameAs(other.total) && this.queueing.sameAs(other.queueing) && this.waiting.sameAs(other.waiting);
+	}
+
+	public int getSource(){
+		return this.source;
+	}
+
+	public int getDest(){
+		return this.dest;
+	}
+
+	public int getDSCP(){
+		return this.DSCP;
+	}
+
+	public int getGroup(){
+		return this.group;
+	}
+
+	public LatencyHistogram getTotal(){
+		return this.total;
+	}
+
+	public LatencyHistogram getQueueing(){
+		return this.queueing;
+	}
+
+	public LatencyHistogram getWaiting(){
+		return this.waiting;
+	}
+
+	/**
+	 * Returns the p50, p99 and p999 of a histogram as text
+	 */
+	private static String percentiles(LatencyHistogram histogram){
+		return histogram.getPercentile(0.5) + "/" + histogram.getPercentile(0.99) + "/" + histogram.getPercentile(0.999);
+	}
+
+	/**
+	 * Returns a one line report of the class, percentiles are given as p50/p99/p999
+	 * @return the report
+	 * @since 1.0
+	 */
+	public String toString(){
+		return this.source + "->" + this.dest + (this.group < 0 ? "" : " group " + this.group) + " DSCP " + this.DSCP + ": " + this.total.getCount() + " packets, latency "
+				+ percentiles(this.total) + ", queueing " + percentiles(this.queueing) + ", wait list " + percentiles(this.waiting);
+	}
+}
@@ -0,0 +1,198 @@
+package DataTypes;
+
+import java.util.Arrays;
+
+/**
+ * FECTable - a map from forwarding equivalence classes to int values, such as labels
+ *
+ * A class is packed into a long key by LSPState.key(dest, DSCP). Keys and values sit in two
+ * plain arrays with open addressing and linear probing, so a lookup is one hash and a short
+ * scan of adjacent slots, allocates nothing and boxes nothing. Removal shifts the following
+ * entries back instead of leaving tombstones, so lookups stay short however many classes come
+ * and go. The arrays are only allocated when the first key is put, as most routers of a large
+ * network never hold an entry in most of their tables. Keys must not be negative.
+ */
+public class FECTable {
+	public static final int NONE = Integer.MIN_VALUE; // returned for a key that is not in the table
+	private static final long FREE = -1; // the key of an unused slot
+
+	private long[] keys; // the key in each slot, FREE if the slot is unused
+	private int[] values; // the value in each slot
+	private int size = 0; // number of keys in the table
+	private int mask; // slots - 1, the number of slots is a power of two
+	private static final long[] NO_KEYS = new long[0]; // the keys of a table nothing was put in yet
+	private static final int[] NO_VALUES = new int[0];
+
+	/**
+	 * Creates an empty table, without slots until the first key is put
+	 * @since 1.0
+	 */
+	public FECTable(){
+		this.keys = NO_KEYS;
+		this.values = NO_VALUES;
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key the key
+	 * @return the value, NONE if the key is not in the table
+	 * @since 1.0
+	 */
+	public int get(long key){
+		int slot = this.slotOf(key);
+		return slot < 0 ? NONE : this.values[slot];
+	}
+
+	/**
+	 * Returns whether a key is in the table
+	 * @param key the key
+	 * @return true if the table has the key
+	 * @since 1.0
+	 */
+	public boolean containsKey(long key){
+		return this.slotOf(key) >= 0;
+	}
+
+	/**
+	 * Sets the value of a key
+	 * @param key the key, not negative
+	 * @param value the value, not NONE
+	 * @since 1.0
+	 */
+	public void put(long key, int value){
+		if (this.keys.length == 0) {
+			this.allocate(16);
+		}
+		int slot = hash(key) & this.mask;
+		while (this.keys[slot] != FREE) {
+			if (this.keys[slot] == key) {
+				this.values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.size++;
+		if (this.size * 4 > this.keys.length * 3) {	// keep the table at most three quarters full
+			this.resize(this.keys.length * 2);
+		}
+	}
+
+	/**
+	 * Removes a key
+	 * @param key the key
+	 * @return the value the key had, NONE if it was not in the table
+	 * @since 1.0
+	 */
+	public int remove(long key){
+		int slot = this.slotOf(key);
+		if (slot < 0) {
+			return NONE;
+		}
+		int value = this.values[slot];
+		// move back the entries that probed past the freed slot
+		int free = slot;
+		int next = (free + 1) & this.mask;
+		while (this.keys[next] != FREE) {
+			int home = hash(this.keys[next]) & this.mask;
+			if (((next - home) & this.mask) >= ((next - free) & this.mask)) {
+				this.keys[free] = this.keys[next];
+				this.values[free] = this.values[next];
+				free = next;
+			}
+			next = (next + 1) & this.mask;
+		}
+		this.keys[free] = FREE;
+		this.size--;
+		return value;
+	}
+
+	/**
+	 * Returns the number of keys in the table
+	 * @return the table size
+	 * @since 1.0
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of slots, for walking the table with keyAt and valueAt
+	 * @return the capacity
+	 * @since 1.0
+	 */
+	public int capacity(){
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the key in a slot
+	 * @param slot the slot, below capacity
+	 * @return the key, negative if the slot is unused
+	 * @since 1.0
+	 */
+	public long keyAt(int slot){
+		return this.keys[slot];
+	}
+
+	/**
+	 * Returns the value in a slot
+	 * @param slot the slot, below capacity
+	 * @return the value, meaningless if the slot is unused
+	 * @since 1.0
+	 */
+	public int valueAt(int slot){
+		return this.values[slot];
+	}
+
+	/**
+	 * Returns the slot holding a key, or -1
+	 */
+	private int slotOf(long key){
+		if (this.size == 0) {
+			return -1;
+		}
+		int slot = hash(key) & this.mask;
+		while (this.keys[slot] != FREE) {
+			if (this.keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Spreads the bits of a key, the low bits of packed keys alone hold little more than the DSCP
+	 */
+	private static int hash(long key){
+		long h = key * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Creates empty arrays of a number of slots
+	 */
+	private void allocate(int slots){
+		this.keys = new long[slots];
+		Arrays.fill(this.keys, FREE);
+		this.values = new int[slots];
+		this.mask = slots - 1;
+	}
+
+	/**
+	 * Moves every entry into arrays of a new number of slots
+	 */
+	private void resize(int slots){
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.allocate(slots);
+		this.size = 0;
+		for (int i = 0; i < oldKeys.length; i ++) {
+			if (oldKeys[i] != FREE) {
+				this.put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package DataTypes;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import NetworkElements.*;
+
+/**
+ * ForwardingTable - an immutable snapshot of a router's label table
+ *
+ * The labels are kept sorted in a plain int array next to the pairs they switch to, so a lookup
+ * is a binary search over one array. A router builds a new snapshot whenever its control plane
+ * changes the label table and publishes it through a single volatile reference. Forwarders on
+ * any thread read whatever snapshot is current without locking and see every LSP installed or
+ * removed as a whole.
+ *
+ * Point to multipoint labels sit in the same arrays. Their pair is null and the branches of the
+ * tree are found next to it, so unicast lookups pay nothing for them.
+ */
+public class ForwardingTable {
+	public static final ForwardingTable EMPTY = new ForwardingTable(new TreeMap<Integer, NICLabelPair>());
+
+	private final int[] labels; // the incoming labels, ascending
+	private final NICLabelPair[] pairs; // the nic and label each incoming label is switched to, null for P2MP labels
+	private final LabelBranches[] branches; // the tree each P2MP label is switched to, null for unicast labels, null if there are none
+
+	/**
+	 * Builds a snapshot of a label table
+	 * @param table the label table, copied
+	 * @since 1.0
+	 */
+	public ForwardingTable(SortedMap<Integer, NICLabelPair> table){
+		this(table, new TreeMap<Integer, LabelBranches>());
+	}
+
+	/**
+	 * Builds a snapshot of a unicast and a point to multipoint label table, the two tables must
+	 * not share labels
+	 * @param table the unicast label table, copied
+	 * @param trees the P2MP label table, copied
+	 * @since 1.0
+	 */
+	public ForwardingTable(SortedMap<Integer, NICLabelPair> table, SortedMap<Integer, LabelBranches> trees){
+		int size = table.size() + trees.size();
+		this.labels = new int[size];
+		this.pairs = new NICLabelPair[size];
+		this.branches = trees.isEmpty() ? null : new LabelBranches[size];
+		Iterator<Map.Entry<Integer, NICLabelPair>> unicast = table.entrySet().iterator();
+		Iterator<Map.Entry<Integer, LabelBranches>> p2mp = trees.entrySet().iterator();
+		Map.Entry<Integer, NICLabelPair> pair = unicast.hasNext() ? unicast.next() : null;
+		Map.Entry<Integer, LabelBranches> tree = p2mp.hasNext() ? p2mp.next() : null;
+		// merge the two sorted tables
+		for (int i = 0; i < size; i ++) {
+			if (tree == null || (pair != null && pair.getKey() < tree.getKey())) {
+				this.labels[i] = pair.getKey();
+				this.pairs[i] = pair.getValue();
+				pair = unicast.hasNext() ? unicast.next() : null;
+			}
+			else {
+				this.labels[i] = tree.getKey();
+				this.branches[i] = tree.getValue();
+				tree = p2mp.hasNext() ? p2mp.next() : null;
+			}
+		}
+	}
+
+	/**
+	 * Returns where an incoming label is switched to
+	 * @param label the incoming label
+	 * @return the nic and outgoing label, or null if the label is not in the table
+	 * @since 1.0
+	 */
+	public NICLabelPair lookup(int label){
+		int index = this.indexOf(label);
+		return index < 0 ? null : this.pairs[index];
+	}
+
+	/**
+	 * Returns the tree a point to multipoint label is switched to
+	 * @param label the incoming label
+	 * @return the branches, or null if the label is not a P2MP label in the table
+	 * @since 1.0
+	 */
+	public LabelBranches lookupBranches(int label){
+		if (this.branches == null)
+			return null;
+		int index = this.indexOf(label);
+		return index < 0 ? null : this.branches[index];
+	}
+
+	/**
+	 * Returns the position of a label in the table by binary search
+	 */
+	private int indexOf(int label){
+		int low = 0, high = this.labels.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = this.labels[middle];
+			if (value < label)
+				low = middle + 1;
+			else if (value > label)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of labels in the table
+	 * @return the table size
+	 * @since 1.0
+	 */
+	public int size(){
+		return this.labels.length;
+	}
+
+	/**
+	 * Returns whether the table has no labels
+	 * @return true if empty
+	 * @since 1.0
+	 */
+	public boolean isEmpty(){
+		return this.labels.length == 0;
+	}
+}
@@ -4,10 +4,182 @@ import NetworkElements.*;
 
 /**
  * GraphInfo - graph information
+ *
+ * The links of every router are kept as edges in plain arrays: each router has the first and
+ * last of its edges, and each edge the router it leads to, the next edge of the same router and
+ * the nic it leaves by, so a router costs a few ints and no objects. An edge is numbered in the
+ * order it was added, a router's edges are walked with getFirstEdge and getNextEdge in the order
+ * its links were made.
  * @author Zhengyang Zuo
  *
  */
 public class GraphInfo {
-	static public HashMap<Integer, ArrayList<Integer>> graph = new HashMap<Integer, ArrayList<Integer>>();
-	static public HashMap<Integer, ArrayList<LSRNIC>> nics = new HashMap<Integer, ArrayList<LSRNIC>>();
-}
\ No newline at end of file
+	private static FECTable nodes = new FECTable(); // the node number of each router, by address
+	private static int nodeCount = 0; // number of routers in the graph
+	private static int[] firstEdge = new int[16]; // the first edge of each node, -1 if it has none
+	private static int[] lastEdge = new int[16]; // the last edge of each node, -1 if it has none
+	private static int edgeCount = 0; // number of edges in the graph
+	private static int[] edgeTarget = new int[16]; // the address of the router each edge leads to
+	private static int[] nextEdge = new int[16]; // the next edge of the same router, -1 after the last
+	private static LSRNIC[] edgeNIC = new LSRNIC[16]; // the nic each edge leaves by, null for a router of another partition
+
+	/**
+	 * Adds a router without links, or takes the links away from a router already in the graph
+	 * @param address the address of the router
+	 * @since 1.0
+	 */
+	public static synchronized void addRouter(int address){
+		int node = nodeOf(address);
+		firstEdge[node] = -1;
+		lastEdge[node] = -1;
+	}
+
+	/**
+	 * Adds a link in one direction, the router it starts at is added if it is not in the graph
+	 * @param from the address of the router the link starts at
+	 * @param to the address of the router the link leads to
+	 * @param nic the nic of the link at the router it starts at, null for a router of another partition
+	 * @since 1.0
+	 */
+	public static synchronized void addEdge(int from, int to, LSRNIC nic){
+		int node = nodeOf(from);
+		if (edgeCount == edgeTarget.length) {
+			edgeTarget = Arrays.copyOf(edgeTarget, edgeCount * 2);
+			nextEdge = Arrays.copyOf(nextEdge, edgeCount * 2);
+			edgeNIC = Arrays.copyOf(edgeNIC, edgeCount * 2);
+		}
+		int edge = edgeCount++;
+		edgeTarget[edge] = to;
+		nextEdge[edge] = -1;
+		edgeNIC[edge] = nic;
+		if (lastEdge[node] < 0)
+			firstEdge[node] = edge;
+		else
+			nextEdge[lastEdge[node]] = edge;
+		lastEdge[node] = edge;
+	}
+
+	/**
+	 * Returns the number of routers in the graph
+	 * @return the router count
+	 * @since 1.0
+	 */
+	public static int getRouterCount(){
+		return nodeCount;
+	}
+
+	/**
+	 * Returns the first edge of a router
+	 * @param address the address of the router
+	 * @return the edge, -1 if the router has no links or is not in the graph
+	 * @since 1.0
+	 */
+	public static int getFirstEdge(int address){
+		int node = nodes.get(address);
+		return node == FECTable.NONE ? -1 : firstEdge[node];
+	}
+
+	/**
+	 * Returns the edge after an edge of the same router
+	 * @param edge the edge
+	 * @return the next edge, -1 after the last
+	 * @since 1.0
+	 */
+	public static int getNextEdge(int edge){
+		return nextEdge[edge];
+	}
+
+	/**
+	 * Returns the address of the router an edge leads to
+	 * @param edge the edge
+	 * @return the address
+	 * @since 1.0
+	 */
+	public static int getEdgeTarget(int edge){
+		return edgeTarget[edge];
+	}
+
+	/**
+	 * Returns the nic an edge leaves by
+	 * @param edge the edge
+	 * @return the nic, null for a router of another partition
+	 * @since 1.0
+	 */
+	public static LSRNIC getEdgeNIC(int edge){
+		return edgeNIC[edge];
+	}
+
+	/**
+	 * Returns the nic of the first link from one router to another
+	 * @param from the address of the router the link starts at
+	 * @param to the address of the router the link leads to
+	 * @return the nic, null if no link leads there
+	 * @since 1.0
+	 */
+	public static LSRNIC getNICTo(int from, int to){
+		for (int edge = getFirstEdge(from); edge >= 0; edge = nextEdge[edge])
+			if (edgeTarget[edge] == to)
+				return edgeNIC[edge];
+		return null;
+	}
+
+	/**
+	 * Finds the first hop of the shortest paths from a router with a breadth first search, up to
+	 * a destination or over the whole graph. Of two paths of the same length the one through the
+	 * lower address at each distance is taken, and of two links to the same neighbour the first
+	 * @param from the address of the router the paths start at
+	 * @param to the address of the destination, the search stops when it is reached, negative to search the whole graph
+	 * @param firstHops filled with the first edge of the path to every router reached, -1 for the router the paths start at
+	 * @return the first edge of the path to the destination, -1 if it is not reached
+	 * @since 1.0
+	 */
+	public static int findFirstHops(int from, int to, FECTable firstHops){
+		firstHops.put(from, -1);
+		int[] level = {from};
+		int levelSize = 1;
+		while (levelSize > 0) {
+			Arrays.sort(level, 0, levelSize);
+			int[] next = new int[Math.max(16, levelSize * 2)];
+			int nextSize = 0;
+			for (int i = 0; i < levelSize; i ++) {
+				int hop = firstHops.get(level[i]);
+				for (int edge = getFirstEdge(level[i]); edge >= 0; edge = nextEdge[edge]) {
+					int target = edgeTarget[edge];
+					if (firstHops.containsKey(target)) {
+						continue;
+					}
+					int first = hop < 0 ? edge : hop;
+					if (target == to) {
+						return first;
+					}
+					firstHops.put(target, first);
+					if (nextSize == next.length)
+						next = Arrays.copyOf(next, nextSize * 2);
+					next[nextSize++] = target;
+				}
+			}
+			level = next;
+			levelSize = nextSize;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the node number of a router, adding the router if it is not in the graph
+	 */
+	private static int nodeOf(int address){
+		int node = nodes.get(address);
+		if (node != FECTable.NONE) {
+			return node;
+		}
+		if (nodeCount == firstEdge.length) {
+			firstEdge = Arrays.copyOf(firstEdge, nodeCount * 2);
+			lastEdge = Arrays.copyOf(lastEdge, nodeCount * 2);
+		}
+		node = nodeCount++;
+		nodes.put(address, node);
+		firstEdge[node] = -1;
+		lastEdge[node] = -1;
+		return node;
+	}
+}
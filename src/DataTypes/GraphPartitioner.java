@@ -0,0 +1,146 @@
+package DataTypes;
+
+import java.util.*;
+
+/**
+ * GraphPartitioner - splits the routers of a network into balanced partitions with few cut links
+ *
+ * Partitions are first grown breadth first from a seed router until they reach their share
+ * of the routers, then routers on the border are moved to a neighbouring partition whenever
+ * that removes more cut links than it adds and keeps the partitions balanced. The result only
+ * depends on the graph, so every process computes the same partitioning.
+ */
+public class GraphPartitioner {
+	private static final int REFINEMENT_PASSES = 10; // maximum number of passes over the border routers
+
+	/**
+	 * Partitions a graph
+	 * @param adjacency the neighbours of each node, by node index
+	 * @param parts the number of partitions
+	 * @return the partition of each node
+	 * @since 1.0
+	 */
+	public static int[] partition(int[][] adjacency, int parts){
+		int n = adjacency.length;
+		int[] part = new int[n];
+		Arrays.fill(part, -1);
+		int capacity = (n + parts - 1) / parts;
+		int[] size = new int[parts];
+
+		// grow each partition from the node farthest away from the previous seed
+		int seed = 0;
+		int assigned = 0;
+		for (int p = 0; p < parts && assigned < n; p ++) {
+			seed = farthestUnassigned(adjacency, part, seed);
+			LinkedList<Integer> queue = new LinkedList<Integer>();
+			queue.add(seed);
+			part[seed] = p;
+			size[p]++;
+			assigned++;
+			while (size[p] < capacity || p == parts - 1) {
+				if (queue.isEmpty()) {
+					// the region is cut off from the rest, continue from any unassigned node
+					int next = firstUnassigned(part);
+					if (next < 0)
+						break;
+					part[next] = p;
+					size[p]++;
+					assigned++;
+					queue.add(next);
+					continue;
+				}
+				int u = queue.poll();
+				for (int i = 0; i < adjacency[u].length && (size[p] < capacity || p == parts - 1); i ++) {
+					int v = adjacency[u][i];
+					if (part[v] < 0) {
+						part[v] = p;
+						size[p]++;
+						assigned++;
+						queue.add(v);
+					}
+				}
+			}
+		}
+
+		// move border nodes while that reduces the number of cut links
+		int maxSize = capacity + Math.max(1, capacity / 32);
+		int[] links = new int[parts];
+		for (int pass = 0; pass < REFINEMENT_PASSES; pass ++) {
+			boolean moved = false;
+			for (int u = 0; u < n; u ++) {
+				Arrays.fill(links, 0);
+				for (int i = 0; i < adjacency[u].length; i ++)
+					links[part[adjacency[u][i]]]++;
+				int best = part[u];
+				for (int p = 0; p < parts; p ++) {
+					if (links[p] > links[best] && size[p] < maxSize)
+						best = p;
+				}
+				if (best != part[u] && size[part[u]] > 1) {
+					size[part[u]]--;
+					size[best]++;
+					part[u] = best;
+					moved = true;
+				}
+			}
+			if (!moved)
+				break;
+		}
+		return part;
+	}
+
+	/**
+	 * Returns the number of links whose ends are in different partitions
+	 * @param adjacency the neighbours of each node, by node index
+	 * @param part the partition of each node
+	 * @return the number of cut links
+	 * @since 1.0
+	 */
+	public static int cutLinks(int[][] adjacency, int[] part){
+		int cut = 0;
+		for (int u = 0; u < adjacency.length; u ++) {
+			for (int i = 0; i < adjacency[u].length; i ++) {
+				if (part[u] != part[adjacency[u][i]])
+					cut++;
+			}
+		}
+		return cut / 2;
+	}
+
+	/**
+	 * Returns the unassigned node with the most hops to a given node, or the first unassigned node
+	 * if none can be reached
+	 */
+	private static int farthestUnassigned(int[][] adjacency, int[] part, int from){
+		int[] dist = new int[adjacency.length];
+		Arrays.fill(dist, -1);
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		queue.add(from);
+		dist[from] = 0;
+		int farthest = -1;
+		while (!queue.isEmpty()) {
+			int u = queue.poll();
+			if (part[u] < 0 && (farthest < 0 || dist[u] > dist[farthest]))
+				farthest = u;
+			for (int i = 0; i < adjacency[u].length; i ++) {
+				int v = adjacency[u][i];
+				if (dist[v] < 0) {
+					dist[v] = dist[u] + 1;
+					queue.add(v);
+				}
+			}
+		}
+		return farthest >= 0 ? farthest : firstUnassigned(part);
+	}
+
+	/**
+	 * Returns the lowest numbered unassigned node, or -1 if every node is assigned
+	 */
+	private static int firstUnassigned(int[] part){
+		for (int i = 0; i < part.length; i ++) {
+			if (part[i] < 0)
+				return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,258 @@
+package DataTypes;
+
+import java.util.BitSet;
+
+import NetworkElements.*;
+
+/**
+ * LSPState - what a router remembers about the LSP to one destination and class
+ *
+ * LSPs to the same destination and class are merged, so one state and one label serve every
+ * source whose LSP passes through the router. The state holds the label the router allocated
+ * and the bandwidth it reserved, and counts its users: the router itself if a source starts
+ * here, and each router upstream that sends on the label, by the nic it is reached on. A router
+ * upstream counts once however many sources it merged itself. The label and bandwidth are given
+ * back when the last user tears down or the soft state expires.
+ *
+ * An explicitly routed LSP, a tunnel, is never merged. Its state is kept per ingress and tunnel
+ * number, so the old and the new path of an LSP being re-routed can pass through the same
+ * router while the traffic moves from one to the other. Where they do, the tunnel shares the
+ * bandwidth the old path reserved for its ingress, and only reserves the rest, until the old
+ * path is torn down and hands it over.
+ */
+public class LSPState {
+	private LSR router; // the router holding this state
+	private int dest, DSCP; // the LSP this state belongs to
+	private int label = -1; // the label this router allocated, the key in its label table
+	private int bandwidth = 0; // the bandwidth reserved at this router for all users
+	private int users = 1; // the sources and upstream routers using the LSP through this router
+	private boolean ingress = false; // is this router one of the sources of the LSP?
+	private boolean active = true; // false once the state is removed, timers still in the wheel are then ignored
+	private long expires = 0; // the tick the state expires at unless it is refreshed
+	private long lastUsed = 0; // at the ingress, the last tick a packet was sent on the LSP
+	private int source = -1; // the ingress of a tunnel, -1 for a merged LSP
+	private int tunnel = 0; // the tunnel number the ingress gave the LSP, 0 for a merged LSP
+	private int[] route = null; // at the ingress of a tunnel, the routers it follows
+	private LSPState sharedWith = null; // for a tunnel, the state of the old path whose reservation it shares until that path is torn down
+	private int shared = 0; // the bandwidth shared with that path, part of the bandwidth of both
+	private long upstream = 0; // the nics the routers upstream using the LSP are reached on, bit i for nic i
+	private BitSet upstreamHigh = null; // the same for nics numbered 64 and up, null while there are none
+
+	/**
+	 * Creates the state of an LSP at a router, with one user
+	 * @param router the router holding the state
+	 * @param dest the destination of the LSP
+	 * @param DSCP the traffic class of the LSP
+	 * @since 1.0
+	 */
+	public LSPState(LSR router, int dest, int DSCP){
+		this.router = router;
+		this.dest = dest;
+		this.DSCP = DSCP;
+	}
+
+	/**
+	 * Returns the key of the LSP from one source, for tables kept per source such as the latency
+	 * of the packets delivered. Addresses must be below 2^29
+	 * @param source the source of the LSP
+	 * @param dest the destination of the LSP
+	 * @param DSCP the traffic class of the LSP
+	 * @return the key
+	 * @since 1.0
+	 */
+	public static long key(int source, int dest, int DSCP){
+		return ((long) source << 35) | ((long) dest << 6) | (DSCP & 0x3f);
+	}
+
+	/**
+	 * Returns the key of a merged LSP in a router's state table
+	 * @param dest the destination of the LSP
+	 * @param DSCP the traffic class of the LSP
+	 * @return the key
+	 * @since 1.0
+	 */
+	public static long key(int dest, int DSCP){
+		return ((long) dest << 6) | (DSCP & 0x3f);
+	}
+
+	/**
+	 * Returns the key of a tunnel in a router's tunnel table
+	 * @param source the ingress of the tunnel
+	 * @param tunnel the tunnel number the ingress gave it
+	 * @return the key
+	 * @since 1.0
+	 */
+	public static long tunnelKey(int source, int tunnel){
+		return ((long) source << 32) | (tunnel & 0xffffffffL);
+	}
+
+	/**
+	 * Returns the key of this LSP in its router's state table, or in its tunnel table for a tunnel
+	 * @return the key
+	 * @since 1.0
+	 */
+	public long getKey(){
+		return this.tunnel == 0 ? key(this.dest, this.DSCP) : tunnelKey(this.source, this.tunnel);
+	}
+
+	/**
+	 * Makes this state the state of a tunnel
+	 * @param source the ingress of the tunnel
+	 * @param tunnel the tunnel number the ingress gave it, not 0
+	 * @since 1.0
+	 */
+	public void setTunnel(int source, int tunnel){
+		this.source = source;
+		this.tunnel = tunnel;
+	}
+
+	public int getSource(){
+		return this.source;
+	}
+
+	public int getTunnel(){
+		return this.tunnel;
+	}
+
+	public int[] getRoute(){
+		return this.route;
+	}
+
+	public void setRoute(int[] route){
+		this.route = route;
+	}
+
+	public LSPState getSharedWith(){
+		return this.sharedWith;
+	}
+
+	public int getShared(){
+		return this.shared;
+	}
+
+	/**
+	 * Makes a tunnel share part of the reservation of the path it takes over
+	 * @param sharedWith the state of that path at the same router, null once the tunnel holds its whole bandwidth
+	 * @param shared the bandwidth shared
+	 * @since 1.0
+	 */
+	public void setShared(LSPState sharedWith, int shared){
+		this.sharedWith = sharedWith;
+		this.shared = shared;
+	}
+
+	public LSR getRouter(){
+		return this.router;
+	}
+
+	public int getDest(){
+		return this.dest;
+	}
+
+	public int getDSCP(){
+		return this.DSCP;
+	}
+
+	public int getLabel(){
+		return this.label;
+	}
+
+	public void setLabel(int label){
+		this.label = label;
+	}
+
+	public int getBandwidth(){
+		return this.bandwidth;
+	}
+
+	public void setBandwidth(int bandwidth){
+		this.bandwidth = bandwidth;
+	}
+
+	public int getUsers(){
+		return this.users;
+	}
+
+	public void setUsers(int users){
+		this.users = users;
+	}
+
+	public boolean isIngress(){
+		return this.ingress;
+	}
+
+	public void setIngress(boolean ingress){
+		this.ingress = ingress;
+	}
+
+	public boolean isActive(){
+		return this.active;
+	}
+
+	public void setActive(boolean active){
+		this.active = active;
+	}
+
+	public long getExpires(){
+		return this.expires;
+	}
+
+	public void setExpires(long expires){
+		this.expires = expires;
+	}
+
+	public long getLastUsed(){
+		return this.lastUsed;
+	}
+
+	public void setLastUsed(long lastUsed){
+		this.lastUsed = lastUsed;
+	}
+
+	/**
+	 * Returns whether the router upstream on a nic is a user of the LSP
+	 * @param nic the index of the nic
+	 * @return true if it has been counted
+	 * @since 1.0
+	 */
+	public boolean hasUpstream(int nic){
+		if (nic < 64)
+			return (this.upstream & (1L << nic)) != 0;
+		return this.upstreamHigh != null && this.upstreamHigh.get(nic - 64);
+	}
+
+	/**
+	 * Remembers the router upstream on a nic as a user of the LSP. The count of users is left to the caller
+	 * @param nic the index of the nic
+	 * @return false if it was a user already
+	 * @since 1.0
+	 */
+	public boolean addUpstream(int nic){
+		if (this.hasUpstream(nic))
+			return false;
+		if (nic < 64)
+			this.upstream |= 1L << nic;
+		else {
+			if (this.upstreamHigh == null)
+				this.upstreamHigh = new BitSet();
+			this.upstreamHigh.set(nic - 64);
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets the router upstream on a nic as a user of the LSP. The count of users is left to the caller
+	 * @param nic the index of the nic
+	 * @return false if it was not a user
+	 * @since 1.0
+	 */
+	public boolean removeUpstream(int nic){
+		if (!this.hasUpstream(nic))
+			return false;
+		if (nic < 64)
+			this.upstream &= ~(1L << nic);
+		else
+			this.upstreamHigh.clear(nic - 64);
+		return true;
+	}
+}
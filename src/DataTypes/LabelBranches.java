@@ -0,0 +1,77 @@
+package DataTypes;
+
+import java.util.Arrays;
+
+/**
+ * LabelBranches - where a point to multipoint label is switched to
+ *
+ * A P2MP label is switched to every (nic, label) branch of the tree below the router, and when
+ * the router is itself a leaf the packet is also delivered here. The branches never change, a
+ * router that grafts a branch or a local leaf onto the tree builds a new set and publishes it.
+ */
+public class LabelBranches {
+	public static final LabelBranches EMPTY = new LabelBranches(new NICLabelPair[0], false);
+
+	private final NICLabelPair[] branches; // the nic and label of each branch
+	private final boolean local; // is the packet also delivered at this router?
+
+	/**
+	 * Creates a branch set
+	 * @param branches the branches, not copied
+	 * @param local true if the router is a leaf of the tree
+	 */
+	private LabelBranches(NICLabelPair[] branches, boolean local){
+		this.branches = branches;
+		this.local = local;
+	}
+
+	/**
+	 * Returns a branch set with one more branch
+	 * @param branch the branch to add
+	 * @return the new set, or this set if it already has the branch
+	 * @since 1.0
+	 */
+	public LabelBranches withBranch(NICLabelPair branch){
+		if (this.hasBranch(branch))
+			return this;
+		NICLabelPair[] branches = Arrays.copyOf(this.branches, this.branches.length + 1);
+		branches[this.branches.length] = branch;
+		return new LabelBranches(branches, this.local);
+	}
+
+	/**
+	 * Returns a branch set that also delivers at this router
+	 * @return the new set, or this set if it already delivers here
+	 * @since 1.0
+	 */
+	public LabelBranches withLocal(){
+		if (this.local)
+			return this;
+		return new LabelBranches(this.branches, true);
+	}
+
+	/**
+	 * Returns whether a branch is in the set
+	 * @param branch the branch
+	 * @return true if the set has a branch with the same nic and label
+	 * @since 1.0
+	 */
+	public boolean hasBranch(NICLabelPair branch){
+		for (int i = 0; i < this.branches.length; i ++)
+			if (this.branches[i].equals(branch))
+				return true;
+		return false;
+	}
+
+	public int getBranchCount(){
+		return this.branches.length;
+	}
+
+	public NICLabelPair getBranch(int index){
+		return this.branches[index];
+	}
+
+	public boolean isLocal(){
+		return this.local;
+	}
+}
@@ -0,0 +1,202 @@
+package DataTypes;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram - a histogram of tick counts with logarithmic buckets
+ *
+ * Values below 16 get a bucket each, above that every power of two is split into 16 buckets,
+ * so a percentile read from the histogram is within 1/16 of the recorded value whatever its
+ * size. Only the buckets up to the highest value recorded are kept, as the latencies of a run
+ * rarely go past the first few hundred, and two histograms are merged by adding their buckets.
+ * A histogram has one writer, histograms written by different routers or threads are merged
+ * once the run is over.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4; // log2 of the buckets per power of two
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private static final long[] NO_COUNTS = new long[0]; // the buckets of a histogram nothing was recorded in
+
+	private long[] counts = NO_COUNTS; // number of values recorded in each bucket, up to the highest bucket used
+	private long count = 0; // number of values recorded
+	private long sum = 0; // sum of the values recorded
+	private long max = 0; // the largest value recorded
+
+	/**
+	 * Records a value, negative values are counted as 0
+	 * @param value the value
+	 * @since 1.0
+	 */
+	public void record(long value){
+		if (value < 0)
+			value = 0;
+		int bucket = bucketOf(value);
+		if (bucket >= this.counts.length)
+			this.grow(bucket);
+		this.counts[bucket]++;
+		this.count++;
+		this.sum += value;
+		if (value > this.max)
+			this.max = value;
+	}
+
+	/**
+	 * Adds the values of another histogram to this one
+	 * @param other the histogram to add
+	 * @since 1.0
+	 */
+	public void merge(LatencyHistogram other){
+		if (other.counts.length > this.counts.length)
+			this.grow(other.counts.length - 1);
+		for (int i = 0; i < other.counts.length; i ++)
+			this.counts[i] += other.counts[i];
+		this.count += other.count;
+		this.sum += other.sum;
+		if (other.max > this.max)
+			this.max = other.max;
+	}
+
+	/**
+	 * Adds the values of another histogram to this one a number of times
+	 * @param other the histogram to add
+	 * @param times how many times to add it
+	 * @since 1.0
+	 */
+	public void merge(LatencyHistogram other, long times){
+		if (other.counts.length > this.counts.length)
+			this.grow(other.counts.length - 1);
+		for (int i = 0; i < other.counts.length; i ++)
+			this.counts[i] += other.counts[i] * times;
+		this.count += other.count * times;
+		this.sum += other.sum * times;
+		if (times > 0 && other.max > this.max)
+			this.max = other.max;
+	}
+
+	/**
+	 * Returns a copy of this histogram
+	 * @return the copy
+	 * @since 1.0
+	 */
+	public LatencyHistogram copy(){
+		LatencyHistogram copy = new LatencyHistogram();
+		copy.merge(this);
+		return copy;
+	}
+
+	/**
+	 * Returns the values recorded since an earlier copy of this histogram. The maximum of the
+	 * difference is not known, it is taken to be the maximum of this histogram
+	 * @param earlier the copy
+	 * @return the values recorded since
+	 * @since 1.0
+	 */
+	public LatencyHistogram since(LatencyHistogram earlier){
+		LatencyHistogram since = this.copy();
+		for (int i = 0; i < earlier.counts.length; i ++)
+			since.counts[i] -= earlier.counts[i];
+		since.count -= earlier.count;
+		since.sum -= earlier.sum;
+		return since;
+	}
+
+	/**
+	 * Returns whether two histograms hold the same values, their maximum aside
+	 * @param other the histogram to compare with
+	 * @return true if every bucket has the same count
+	 * @since 1.0
+	 */
+	public boolean sameAs(LatencyHistogram other){
+		if (this.count != other.count || this.sum != other.sum)
+			return false;
+		for (int i = 0; i < Math.max(this.counts.length, other.counts.length); i ++) {
+			long a = i < this.counts.length ? this.counts[i] : 0;
+			long b = i < other.counts.length ? other.counts[i] : 0;
+			if (a != b)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of values recorded
+	 * @return the count
+	 * @since 1.0
+	 */
+	public long getCount(){
+		return this.count;
+	}
+
+	/**
+	 * Returns the largest value recorded
+	 * @return the maximum, 0 if nothing was recorded
+	 * @since 1.0
+	 */
+	public long getMax(){
+		return this.max;
+	}
+
+	/**
+	 * Returns the mean of the values recorded
+	 * @return the mean, 0 if nothing was recorded
+	 * @since 1.0
+	 */
+	public double getMean(){
+		return this.count == 0 ? 0 : this.sum / (double) this.count;
+	}
+
+	/**
+	 * Returns the value below which a fraction of the recorded values lie
+	 * @param fraction the fraction, 0.99 for the 99th percentile
+	 * @return the highest value of the bucket holding the percentile, never above the maximum
+	 * @since 1.0
+	 */
+	public long getPercentile(double fraction){
+		if (this.count == 0)
+			return 0;
+		long rank = (long) Math.ceil(fraction * this.count);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < this.counts.length; i ++) {
+			seen += this.counts[i];
+			if (seen >= rank)
+				return Math.min(highestValueOf(i), this.max);
+		}
+		return this.max;
+	}
+
+	/**
+	 * Makes room for the buckets up to a bucket, a quarter more than needed so a slowly rising
+	 * maximum does not copy the buckets every time
+	 */
+	private void grow(int bucket){
+		int length = Math.min(BUCKETS, Math.max(SUB_BUCKETS * 2, bucket + 1 + (bucket + 1) / 4));
+		this.counts = Arrays.copyOf(this.counts, length);
+	}
+
+	/**
+	 * Returns the bucket of a value
+	 */
+	private static int bucketOf(long value){
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the highest value that falls in a bucket
+	 */
+	private static long highestValueOf(int bucket){
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long lowest = (1L << exponent) | (sub << (exponent - SUB_BITS));
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+}
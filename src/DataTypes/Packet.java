@@ -1,5 +1,7 @@
 package DataTypes;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -13,8 +15,25 @@ public class Packet {
 	private boolean isPathErr = false;
 	private boolean isResvErr = false;
 	private boolean isWait = false;
+	private boolean isPathTear = false;
+	private boolean isResvTear = false;
+	private boolean isRefresh = false;	// a PATH that refreshes an existing LSP instead of setting one up
 	private int traceID = 0;	// The trace ID for the packet
 	private int bandwidth = 0;
+	private long injectedAt = -1;	// the tick a data packet was created at, -1 for packets that are not timed
+	private int[] hopEnqueue = null;	// the tick the packet entered the output buffer at each hop, relative to injectedAt
+	private int hops = 0;	// number of entries used in hopEnqueue
+	private long queueTicks = 0;	// ticks spent in nic output buffers
+	private long waitTicks = 0;	// ticks spent in the wait list of the source while the LSP was set up
+	private long waitingSince = -1;	// the tick the packet joined the wait list, -1 if it is not waiting
+	private boolean hopsShared = false;	// is hopEnqueue shared with a replica? It is then copied before the next write
+	private int group = -1;	// the point to multipoint group the packet belongs to, -1 for unicast packets
+	private int tunnel = 0;	// the explicitly routed LSP the signaling belongs to, 0 for hop by hop LSPs
+	private int[] route = null;	// the routers an explicitly routed PATH or RESV follows after its ingress, null for hop by hop LSPs
+	private int[] sharedRoute = null;	// the routers after the ingress of the path a tunnel takes over, null if it takes over none
+	private int sharedTunnel = 0;	// the tunnel that path belongs to, 0 for a hop by hop LSP
+	private Packet[] bundle = null;	// the PATH, RESV or RESVCONF messages of several FECs sent to the next hop as this one packet, null for a single message
+	private PacketTrace trace = null;	// the hops of a sampled packet, null for packets that are not traced
 
 	
 	/**
@@ -187,6 +206,48 @@ public class Packet {
 		return this.isResvErr;
 	}
 	
+	/**
+	 * Set isPathTear
+	 */
+	public void setIsPathTear(boolean flag) {
+		this.isPathTear = flag;
+	}
+	
+	/**
+	 * Get isPathTear
+	 */
+	public boolean getIsPathTear() {
+		return this.isPathTear;
+	}
+	
+	/**
+	 * Set isResvTear
+	 */
+	public void setIsResvTear(boolean flag) {
+		this.isResvTear = flag;
+	}
+	
+	/**
+	 * Get isResvTear
+	 */
+	public boolean getIsResvTear() {
+		return this.isResvTear;
+	}
+	
+	/**
+	 * Set isRefresh
+	 */
+	public void setIsRefresh(boolean flag) {
+		this.isRefresh = flag;
+	}
+	
+	/**
+	 * Get isRefresh
+	 */
+	public boolean getIsRefresh() {
+		return this.isRefresh;
+	}
+	
 	/**
 	 * Returns the trace ID for this cell
 	 * @return the trace ID for this cell
@@ -227,5 +288,320 @@ public class Packet {
 	public MPLS getFirstMPLS() {
 		return this.MPLSheader.peek();
 	}
-}
 	
+	/**
+	 * Returns the MPLS headers of this packet, outermost first
+	 * @return an iterator over the MPLS headers
+	 */
+	public Iterator<MPLS> MPLSheaderIterator() {
+		return this.MPLSheader.iterator();
+	}
+	
+	/**
+	 * Returns the number of MPLS headers on this packet
+	 * @return the depth of the label stack
+	 */
+	public int getMPLSheaderCount() {
+		return this.MPLSheader.size();
+	}
+	
+	/**
+	 * Returns the point to multipoint group of the packet
+	 * @return the group, -1 for a unicast packet
+	 * @since 1.0
+	 */
+	public int getGroup() {
+		return this.group;
+	}
+	
+	/**
+	 * Makes the packet part of a point to multipoint group, for data packets and their signaling
+	 * @param group the group
+	 * @since 1.0
+	 */
+	public void setGroup(int group) {
+		this.group = group;
+	}
+	
+	/**
+	 * Returns the explicitly routed LSP the signaling belongs to
+	 * @return the tunnel number the ingress gave the LSP, 0 for a hop by hop LSP
+	 * @since 1.0
+	 */
+	public int getTunnel() {
+		return this.tunnel;
+	}
+	
+	/**
+	 * Makes the signaling part of an explicitly routed LSP
+	 * @param tunnel the tunnel number the ingress gave the LSP
+	 * @since 1.0
+	 */
+	public void setTunnel(int tunnel) {
+		this.tunnel = tunnel;
+	}
+	
+	/**
+	 * Returns the explicit route of the signaling of a tunnel
+	 * @return the addresses of the routers after the ingress up to the destination, null for hop by hop signaling
+	 * @since 1.0
+	 */
+	public int[] getRoute() {
+		return this.route;
+	}
+	
+	/**
+	 * Sets the explicit route of the signaling of a tunnel
+	 * @param route the addresses of the routers after the ingress up to the destination, not copied
+	 * @since 1.0
+	 */
+	public void setRoute(int[] route) {
+		this.route = route;
+	}
+	
+	/**
+	 * Returns the path the tunnel being signaled takes over, the routers on it share the bandwidth
+	 * already reserved for it
+	 * @return the addresses of the routers after the ingress up to the destination, null if the tunnel takes over no path
+	 * @since 1.0
+	 */
+	public int[] getSharedRoute() {
+		return this.sharedRoute;
+	}
+	
+	/**
+	 * Returns the tunnel the path the tunnel being signaled takes over belongs to
+	 * @return the tunnel number, 0 for a hop by hop LSP
+	 * @since 1.0
+	 */
+	public int getSharedTunnel() {
+		return this.sharedTunnel;
+	}
+	
+	/**
+	 * Sets the path the tunnel being signaled takes over
+	 * @param route the addresses of the routers after the ingress up to the destination, not copied
+	 * @param tunnel the tunnel that path belongs to, 0 for a hop by hop LSP
+	 * @since 1.0
+	 */
+	public void setShared(int[] route, int tunnel) {
+		this.sharedRoute = route;
+		this.sharedTunnel = tunnel;
+	}
+	
+	/**
+	 * Returns the messages a bundle carries
+	 * @return the messages, all of the same kind as the bundle, null if this packet is no bundle
+	 * @since 1.0
+	 */
+	public Packet[] getBundle() {
+		return this.bundle;
+	}
+	
+	/**
+	 * Makes this packet a bundle of signaling messages for the next hop. The bundle goes from
+	 * one router to its neighbour, which handles each message as if it had arrived on its own
+	 * @param bundle the messages, not copied
+	 * @since 1.0
+	 */
+	public void setBundle(Packet[] bundle) {
+		this.bundle = bundle;
+	}
+	
+	/**
+	 * Returns the hop records of a sampled packet
+	 * @return the trace, null if the packet is not traced
+	 * @since 1.0
+	 */
+	public PacketTrace getTrace() {
+		return this.trace;
+	}
+	
+	/**
+	 * Marks the packet for tracing, every hop appends a record to the trace
+	 * @param trace the trace, or null to stop tracing
+	 * @since 1.0
+	 */
+	public void setTrace(PacketTrace trace) {
+		this.trace = trace;
+	}
+	
+	/**
+	 * Makes a copy of a packet for another branch of a point to multipoint tree. Only the header
+	 * fields and the label stack are copied, the timing recorded so far is shared with the copy
+	 * until either packet records its next hop
+	 * @return the copy
+	 * @since 1.0
+	 */
+	public Packet replicate() {
+		Packet copy = new Packet(this.source, this.dest, this.DSCP);
+		copy.OAM = this.OAM;
+		copy.traceID = this.traceID;
+		copy.bandwidth = this.bandwidth;
+		copy.group = this.group;
+		for (MPLS header : this.MPLSheader) {
+			copy.MPLSheader.add(new MPLS(header.getLabel(), header.getTrafficClass(), header.getStackingBit()));
+		}
+		copy.injectedAt = this.injectedAt;
+		copy.hopEnqueue = this.hopEnqueue;
+		copy.hops = this.hops;
+		copy.queueTicks = this.queueTicks;
+		copy.waitTicks = this.waitTicks;
+		copy.waitingSince = this.waitingSince;
+		if (this.trace != null) {	// each branch reports the path it took
+			copy.trace = this.trace.copy();
+		}
+		if (this.hopEnqueue != null) {
+			this.hopsShared = true;
+			copy.hopsShared = true;
+		}
+		return copy;
+	}
+	
+	/**
+	 * Starts timing a data packet
+	 * @param tick the tick the packet was created at
+	 * @since 1.0
+	 */
+	public void setInjectedAt(long tick) {
+		this.injectedAt = tick;
+	}
+	
+	/**
+	 * Returns the tick a data packet was created at
+	 * @return the creation tick, -1 if the packet is not timed
+	 * @since 1.0
+	 */
+	public long getInjectedAt() {
+		return this.injectedAt;
+	}
+	
+	/**
+	 * Notes that the packet entered the output buffer of a nic
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void markEnqueued(long tick) {
+		if (this.injectedAt < 0) {
+			return;
+		}
+		if (this.hopEnqueue == null) {
+			this.hopEnqueue = new int[4];
+		}
+		else if (this.hops == this.hopEnqueue.length || this.hopsShared) {
+			this.hopEnqueue = Arrays.copyOf(this.hopEnqueue, Math.max(this.hops * 2, 4));
+			this.hopsShared = false;
+		}
+		this.hopEnqueue[this.hops++] = (int) (tick - this.injectedAt);
+	}
+	
+	/**
+	 * Notes that the packet left the output buffer of a nic it was last enqueued at
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void markDequeued(long tick) {
+		if (this.hops > 0) {
+			this.queueTicks += tick - this.injectedAt - this.hopEnqueue[this.hops - 1];
+		}
+	}
+	
+	/**
+	 * Notes that the packet joined the wait list of its source
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void markWaiting(long tick) {
+		if (this.injectedAt >= 0) {
+			this.waitingSince = tick;
+		}
+	}
+	
+	/**
+	 * Notes that the packet left the wait list of its source
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void markReleased(long tick) {
+		if (this.waitingSince >= 0) {
+			this.waitTicks += tick - this.waitingSince;
+			this.waitingSince = -1;
+		}
+	}
+	
+	/**
+	 * Moves the timing of a packet later, as if it had been created some ticks later. Used for the
+	 * packets held in buffers while the network is fast-forwarded, the ticks they spend there
+	 * are then the same as those of the packets that would have taken their place
+	 * @param ticks the number of ticks
+	 * @since 1.0
+	 */
+	public void shiftTiming(long ticks) {
+		if (this.injectedAt >= 0) {
+			this.injectedAt += ticks;	// the hops are relative to it
+		}
+		if (this.waitingSince >= 0) {
+			this.waitingSince += ticks;
+		}
+		if (this.trace != null) {
+			this.trace.shift(ticks);
+		}
+	}
+	
+	/**
+	 * Returns the number of output buffers the packet has entered
+	 * @return the number of hops recorded
+	 * @since 1.0
+	 */
+	public int getHopCount() {
+		return this.hops;
+	}
+	
+	/**
+	 * Returns the tick the packet entered the output buffer of a hop
+	 * @param hop the hop, 0 for the first
+	 * @return the enqueue tick
+	 * @since 1.0
+	 */
+	public long getHopEnqueueTick(int hop) {
+		return this.injectedAt + this.hopEnqueue[hop];
+	}
+	
+	/**
+	 * Returns the ticks the packet has spent in nic output buffers
+	 * @return the queueing time
+	 * @since 1.0
+	 */
+	public long getQueueTicks() {
+		return this.queueTicks;
+	}
+	
+	/**
+	 * Returns the ticks the packet has spent in the wait list of its source
+	 * @return the wait list time
+	 * @since 1.0
+	 */
+	public long getWaitTicks() {
+		return this.waitTicks;
+	}
+	
+	/**
+	 * Restores the timing of a packet that was received from another process
+	 * @param injectedAt the creation tick
+	 * @param queueTicks the queueing time so far
+	 * @param waitTicks the wait list time
+	 * @param hopEnqueue the enqueue tick of each hop so far
+	 * @since 1.0
+	 */
+	public void setTiming(long injectedAt, long queueTicks, long waitTicks, long[] hopEnqueue) {
+		this.injectedAt = injectedAt;
+		this.queueTicks = queueTicks;
+		this.waitTicks = waitTicks;
+		this.hops = 0;
+		this.hopEnqueue = null;
+		this.hopsShared = false;
+		for (int i = 0; i < hopEnqueue.length; i ++) {
+			this.markEnqueued(hopEnqueue[i]);
+		}
+	}
+}
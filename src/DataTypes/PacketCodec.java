@@ -0,0 +1,148 @@
+package DataTypes;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * PacketCodec - converts packets to and from bytes so they can leave the JVM
+ */
+public class PacketCodec {
+	private static final int OAM = 1, PATH = 2, RESV = 4, RESVCONF = 8, PATHERR = 16, RESVERR = 32, WAIT = 64,
+			PATHTEAR = 128, RESVTEAR = 256, REFRESH = 512;
+
+	/**
+	 * Returns the number of bytes a packet takes when encoded
+	 * @param packet the packet
+	 * @return the encoded length in bytes
+	 * @since 1.0
+	 */
+	public static int encodedLength(Packet packet){
+		int length = 66 + 9 * packet.getMPLSheaderCount() + 4 * packet.getHopCount()
+				+ (packet.getRoute() == null ? 0 : 4 * packet.getRoute().length)
+				+ (packet.getTrace() == null ? 0 : 16 + 24 * packet.getTrace().getHopCount());
+		Packet[] bundle = packet.getBundle();
+		for (int i = 0; bundle != null && i < bundle.length; i ++)
+			length += encodedLength(bundle[i]);
+		return length;
+	}
+
+	/**
+	 * Writes a packet to a buffer
+	 * @param packet the packet to encode
+	 * @param buffer the buffer, must have at least encodedLength bytes remaining
+	 * @since 1.0
+	 */
+	public static void encode(Packet packet, ByteBuffer buffer){
+		int flags = 0;
+		if (packet.getIsOAM()) flags |= OAM;
+		if (packet.getIsPath()) flags |= PATH;
+		if (packet.getIsResv()) flags |= RESV;
+		if (packet.getIsResvConf()) flags |= RESVCONF;
+		if (packet.getIsPathErr()) flags |= PATHERR;
+		if (packet.getIsResvErr()) flags |= RESVERR;
+		if (packet.getIsWait()) flags |= WAIT;
+		if (packet.getIsPathTear()) flags |= PATHTEAR;
+		if (packet.getIsResvTear()) flags |= RESVTEAR;
+		if (packet.getIsRefresh()) flags |= REFRESH;
+
+		buffer.putInt(packet.getSource());
+		buffer.putInt(packet.getDest());
+		buffer.putInt(packet.getDSCP());
+		buffer.putShort((short) flags);
+		buffer.putInt(packet.getTraceID());
+		buffer.putInt(packet.getBandwidth());
+		buffer.putInt(packet.getGroup());
+		buffer.putInt(packet.getTunnel());
+		int[] route = packet.getRoute();
+		buffer.putInt(route == null ? -1 : route.length);
+		for (int i = 0; route != null && i < route.length; i ++)
+			buffer.putInt(route[i]);
+		buffer.putInt(packet.getMPLSheaderCount());
+		Iterator<MPLS> headers = packet.MPLSheaderIterator();
+		while (headers.hasNext()) {
+			MPLS header = headers.next();
+			buffer.putInt(header.getLabel());
+			buffer.putInt(header.getTrafficClass());
+			buffer.put((byte) header.getStackingBit());
+		}
+		buffer.putLong(packet.getInjectedAt());
+		buffer.putInt((int) packet.getQueueTicks());
+		buffer.putInt((int) packet.getWaitTicks());
+		buffer.putInt(packet.getHopCount());
+		for (int i = 0; i < packet.getHopCount(); i ++)
+			buffer.putInt((int) (packet.getHopEnqueueTick(i) - packet.getInjectedAt()));
+		PacketTrace trace = packet.getTrace();
+		buffer.putInt(trace == null ? -1 : trace.getHopCount());
+		if (trace != null) {
+			buffer.putLong(trace.getStartTick());
+			buffer.putInt(trace.getCapacity());
+			buffer.putInt(trace.getLost());
+			for (int i = 0; i < trace.getHopCount(); i ++)
+				for (int field = 0; field < 6; field ++)
+					buffer.putInt(trace.getField(i, field));
+		}
+		Packet[] bundle = packet.getBundle();
+		buffer.putInt(bundle == null ? -1 : bundle.length);
+		for (int i = 0; bundle != null && i < bundle.length; i ++)
+			encode(bundle[i], buffer);
+	}
+
+	/**
+	 * Reads a packet from a buffer
+	 * @param buffer the buffer positioned at an encoded packet
+	 * @return the decoded packet
+	 * @since 1.0
+	 */
+	public static Packet decode(ByteBuffer buffer){
+		Packet packet = new Packet(buffer.getInt(), buffer.getInt(), buffer.getInt());
+		int flags = buffer.getShort();
+		packet.setIsOAM((flags & OAM) != 0);
+		packet.setIsPath((flags & PATH) != 0);
+		packet.setIsResv((flags & RESV) != 0);
+		packet.setIsResvConf((flags & RESVCONF) != 0);
+		packet.setIsPathErr((flags & PATHERR) != 0);
+		packet.setIsResvErr((flags & RESVERR) != 0);
+		packet.setIsWait((flags & WAIT) != 0);
+		packet.setIsPathTear((flags & PATHTEAR) != 0);
+		packet.setIsResvTear((flags & RESVTEAR) != 0);
+		packet.setIsRefresh((flags & REFRESH) != 0);
+		packet.setTraceID(buffer.getInt());
+		packet.setBandwidth(buffer.getInt());
+		packet.setGroup(buffer.getInt());
+		packet.setTunnel(buffer.getInt());
+		int hops = buffer.getInt();
+		if (hops >= 0) {
+			int[] route = new int[hops];
+			for (int i = 0; i < hops; i ++)
+				route[i] = buffer.getInt();
+			packet.setRoute(route);
+		}
+		int headers = buffer.getInt();
+		for (int i = 0; i < headers; i ++)
+			packet.addMPLSheader(new MPLS(buffer.getInt(), buffer.getInt(), buffer.get()));
+		long injectedAt = buffer.getLong();
+		long queueTicks = buffer.getInt();
+		long waitTicks = buffer.getInt();
+		long[] hopEnqueue = new long[buffer.getInt()];
+		for (int i = 0; i < hopEnqueue.length; i ++)
+			hopEnqueue[i] = injectedAt + buffer.getInt();
+		packet.setTiming(injectedAt, queueTicks, waitTicks, hopEnqueue);
+		int traced = buffer.getInt();
+		if (traced >= 0) {
+			long startTick = buffer.getLong();
+			PacketTrace trace = new PacketTrace(buffer.getInt(), startTick);
+			trace.addLost(buffer.getInt());
+			for (int i = 0; i < traced; i ++)
+				trace.record(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), startTick + buffer.getInt());
+			packet.setTrace(trace);
+		}
+		int messages = buffer.getInt();
+		if (messages >= 0) {
+			Packet[] bundle = new Packet[messages];
+			for (int i = 0; i < messages; i ++)
+				bundle[i] = decode(buffer);
+			packet.setBundle(bundle);
+		}
+		return packet;
+	}
+}
@@ -0,0 +1,156 @@
+package DataTypes;
+
+/**
+ * PacketTrace - the hops a sampled packet has taken
+ *
+ * Each hop is one record of router, in-nic, in-label, out-label, output queue depth and tick,
+ * packed as ints into an array allocated when the packet is marked, so recording a hop never
+ * allocates. Hops beyond the capacity are counted but not kept.
+ */
+public class PacketTrace {
+	public static final int NONE = -1; // no nic or label at this hop, at the ingress or the egress
+	private static final int FIELDS = 6; // ints per hop record
+
+	private int[] records; // the hop records, FIELDS ints each
+	private int hops = 0; // number of hop records kept
+	private int lost = 0; // hops that did not fit
+	private long startTick; // the tick the trace started at, record ticks are relative to it
+
+	/**
+	 * Creates an empty trace
+	 * @param capacity the number of hops kept at most
+	 * @param startTick the tick the packet was marked at
+	 * @since 1.0
+	 */
+	public PacketTrace(int capacity, long startTick){
+		this.records = new int[capacity * FIELDS];
+		this.startTick = startTick;
+	}
+
+	/**
+	 * Appends a hop
+	 * @param router the address of the router
+	 * @param inNIC the index of the nic the packet arrived on, NONE at the ingress
+	 * @param inLabel the label the packet arrived with, NONE at the ingress
+	 * @param outLabel the label the packet leaves with, NONE at the egress
+	 * @param queueDepth the packets ahead of it in the output buffer
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void record(int router, int inNIC, int inLabel, int outLabel, int queueDepth, long tick){
+		int at = this.hops * FIELDS;
+		if (at == this.records.length) {
+			this.lost++;
+			return;
+		}
+		this.records[at] = router;
+		this.records[at + 1] = inNIC;
+		this.records[at + 2] = inLabel;
+		this.records[at + 3] = outLabel;
+		this.records[at + 4] = queueDepth;
+		this.records[at + 5] = (int) (tick - this.startTick);
+		this.hops++;
+	}
+
+	/**
+	 * Returns a copy for a replica of the packet, which goes on recording hops of its own
+	 * @return the copy
+	 * @since 1.0
+	 */
+	public PacketTrace copy(){
+		PacketTrace copy = new PacketTrace(this.records.length / FIELDS, this.startTick);
+		System.arraycopy(this.records, 0, copy.records, 0, this.hops * FIELDS);
+		copy.hops = this.hops;
+		copy.lost = this.lost;
+		return copy;
+	}
+
+	/**
+	 * Counts hops that did not fit in the trace on another process
+	 * @param lost the hops lost there
+	 */
+	void addLost(int lost){
+		this.lost += lost;
+	}
+
+	/**
+	 * Returns the number of hops kept
+	 * @return the hop count
+	 * @since 1.0
+	 */
+	public int getHopCount(){
+		return this.hops;
+	}
+
+	/**
+	 * Returns the number of hops that did not fit in the trace
+	 * @return the hops lost
+	 * @since 1.0
+	 */
+	public int getLost(){
+		return this.lost;
+	}
+
+	/**
+	 * Returns the maximum number of hops kept
+	 * @return the capacity
+	 * @since 1.0
+	 */
+	public int getCapacity(){
+		return this.records.length / FIELDS;
+	}
+
+	/**
+	 * Returns the tick the trace started at
+	 * @return the start tick
+	 * @since 1.0
+	 */
+	public long getStartTick(){
+		return this.startTick;
+	}
+
+	/**
+	 * Moves every hop later, for a packet held in a buffer while the network is fast-forwarded
+	 * @param ticks the number of ticks
+	 * @since 1.0
+	 */
+	public void shift(long ticks){
+		this.startTick += ticks;
+	}
+
+	/**
+	 * Returns one field of a hop record
+	 * @param hop the hop, 0 for the first
+	 * @param field 0 router, 1 in-nic, 2 in-label, 3 out-label, 4 queue depth, 5 ticks since the start
+	 * @return the value
+	 * @since 1.0
+	 */
+	public int getField(int hop, int field){
+		return this.records[hop * FIELDS + field];
+	}
+
+	/**
+	 * Returns the hops as router[in-nic:in-label/out-label qdepth @tick], one after another
+	 * @return the hops
+	 * @since 1.0
+	 */
+	public String toString(){
+		StringBuilder hops = new StringBuilder();
+		for (int i = 0; i < this.hops; i ++) {
+			int at = i * FIELDS;
+			if (i > 0) {
+				hops.append(' ');
+			}
+			hops.append(this.records[at]).append('[');
+			hops.append(this.records[at + 1] == NONE ? "-" : String.valueOf(this.records[at + 1])).append(':');
+			hops.append(this.records[at + 2] == NONE ? "-" : String.valueOf(this.records[at + 2])).append('/');
+			hops.append(this.records[at + 3] == NONE ? "-" : String.valueOf(this.records[at + 3]));
+			hops.append(" q").append(this.records[at + 4]);
+			hops.append(" @").append(this.startTick + this.records[at + 5]).append(']');
+		}
+		if (this.lost > 0) {
+			hops.append(" +").append(this.lost).append(" hops lost");
+		}
+		return hops.toString();
+	}
+}
@@ -0,0 +1,45 @@
+package DataTypes;
+
+/**
+ * SimulationClock - the global tick counter of the simulation
+ *
+ * The driver advances the clock once per time unit, elements read it to stamp
+ * what they do (captures, timers, statistics)
+ */
+public class SimulationClock {
+	static private long tick = 0; // the current time unit of the simulation
+
+	/**
+	 * Returns the current tick
+	 * @return the current tick
+	 * @since 1.0
+	 */
+	public static long getTick(){
+		return tick;
+	}
+
+	/**
+	 * Moves the clock forward one time unit
+	 * @since 1.0
+	 */
+	public static void advance(){
+		tick++;
+	}
+
+	/**
+	 * Moves the clock forward several time units at once, used when the network is fast-forwarded
+	 * @param ticks the number of time units
+	 * @since 1.0
+	 */
+	public static void advance(long ticks){
+		tick += ticks;
+	}
+
+	/**
+	 * Sets the clock back to zero, used when a new simulation is started in the same JVM
+	 * @since 1.0
+	 */
+	public static void reset(){
+		tick = 0;
+	}
+}
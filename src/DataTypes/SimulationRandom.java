@@ -0,0 +1,67 @@
+package DataTypes;
+
+import java.util.Random;
+
+/**
+ * SimulationRandom - hands out the random number streams used by the simulation
+ *
+ * All streams are derived from one simulation seed, each router and each nic gets its
+ * own stream so the numbers one element draws do not depend on what the others do.
+ * Two runs with the same seed and the same inputs make the same decisions.
+ */
+public class SimulationRandom {
+	static private long seed = System.nanoTime(); // the simulation seed
+
+	/**
+	 * Sets the simulation seed, must be called before any router is created
+	 * @param newSeed the seed
+	 * @since 1.0
+	 */
+	public static void setSeed(long newSeed){
+		seed = newSeed;
+	}
+
+	/**
+	 * Returns the simulation seed
+	 * @return the simulation seed
+	 * @since 1.0
+	 */
+	public static long getSeed(){
+		return seed;
+	}
+
+	/**
+	 * Returns the random stream of a router
+	 * @param address the address of the router
+	 * @return a random number generator for the router
+	 * @since 1.0
+	 */
+	public static Random forRouter(int address){
+		return new Random(mix(seed, mix(1, address)));
+	}
+
+	/**
+	 * Returns the random stream of a nic
+	 * @param address the address of the router the nic is in
+	 * @param index the position of the nic in its router
+	 * @return a random number generator for the nic
+	 * @since 1.0
+	 */
+	public static Random forNIC(int address, int index){
+		return new Random(mix(seed, mix(mix(2, address), index)));
+	}
+
+	/**
+	 * Combines two values into a well distributed 64 bit value (splitmix64 finalizer)
+	 * @param a the first value
+	 * @param b the second value
+	 * @return the mixed value
+	 * @since 1.0
+	 */
+	public static long mix(long a, long b){
+		long z = a * 0x9e3779b97f4a7c15L + b;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,29 @@
+package DataTypes;
+
+/**
+ * StateChecksum - folds the state of the simulation into a single 64 bit value
+ *
+ * Regression runs compare the checksum of the final state to confirm that two builds
+ * did the same work. Values must be added in a deterministic order.
+ */
+public class StateChecksum {
+	private long value = 0; // the running checksum
+
+	/**
+	 * Adds a value to the checksum
+	 * @param v the value to add
+	 * @since 1.0
+	 */
+	public void update(long v){
+		this.value = SimulationRandom.mix(this.value, v);
+	}
+
+	/**
+	 * Returns the checksum of everything added so far
+	 * @return the checksum
+	 * @since 1.0
+	 */
+	public long getValue(){
+		return this.value;
+	}
+}
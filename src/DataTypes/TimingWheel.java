@@ -0,0 +1,141 @@
+package DataTypes;
+
+import java.util.List;
+
+/**
+ * TimingWheel - a hierarchical timing wheel of items that are due at a given tick
+ *
+ * The wheel has four levels of 256 slots. Level 0 holds the items due in the next 256 ticks,
+ * one slot per tick, each higher level covers 256 times the span of the one below. Whenever
+ * the slot index of a level wraps around, the next slot of the level above is emptied into the
+ * lower levels. Scheduling and expiring an item cost constant time however many are waiting,
+ * and cancelling is done by the owner ignoring the item when it comes due.
+ */
+public class TimingWheel<T> {
+	private static final int BITS = 8; // log2 of the slots per level
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+
+	private Entry<T>[][] wheel; // the first entry of each slot, by level
+	private long now; // the last tick the wheel was advanced to
+	private int size = 0; // number of scheduled items
+
+	/**
+	 * A scheduled item, entries of a slot form a singly linked list
+	 */
+	private static class Entry<T> {
+		T item;
+		long deadline;
+		Entry<T> next;
+	}
+
+	/**
+	 * Creates an empty wheel
+	 * @param now the current tick
+	 * @since 1.0
+	 */
+	public TimingWheel(long now){
+		@SuppressWarnings("unchecked")
+		Entry<T>[][] wheel = (Entry<T>[][]) new Entry<?>[LEVELS][SLOTS];
+		this.wheel = wheel;
+		this.now = now;
+	}
+
+	/**
+	 * Returns the number of items waiting in the wheel
+	 * @return the number of scheduled items
+	 * @since 1.0
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Returns the last tick the wheel was advanced to
+	 * @return the current tick of the wheel
+	 * @since 1.0
+	 */
+	public long getNow(){
+		return this.now;
+	}
+
+	/**
+	 * Returns the earliest deadline of the items waiting in the wheel, cancelled items included.
+	 * Walks every slot, so it is meant for occasional use
+	 * @return the earliest deadline, Long.MAX_VALUE if the wheel is empty
+	 * @since 1.0
+	 */
+	public long nextDeadline(){
+		long next = Long.MAX_VALUE;
+		for (int level = 0; level < LEVELS && this.size > 0; level ++) {
+			for (int slot = 0; slot < SLOTS; slot ++) {
+				for (Entry<T> entry = this.wheel[level][slot]; entry != null; entry = entry.next)
+					next = Math.min(next, entry.deadline);
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Schedules an item, items due now or in the past are returned by the next advance
+	 * @param item the item
+	 * @param deadline the tick the item is due at
+	 * @since 1.0
+	 */
+	public void schedule(T item, long deadline){
+		Entry<T> entry = new Entry<T>();
+		entry.item = item;
+		entry.deadline = Math.max(deadline, this.now + 1);
+		this.insert(entry);
+		this.size++;
+	}
+
+	/**
+	 * Moves the wheel forward and collects every item that came due
+	 * @param tick the tick to advance to
+	 * @param expired the list the due items are added to, in deadline order
+	 * @since 1.0
+	 */
+	public void advance(long tick, List<T> expired){
+		while (this.now < tick) {
+			this.now++;
+			// refill the lower levels from the level above whenever a level wraps around
+			for (int level = 1; level < LEVELS; level ++) {
+				if (((this.now >>> (BITS * (level - 1))) & MASK) != 0)
+					break;
+				int slot = (int) (this.now >>> (BITS * level)) & MASK;
+				Entry<T> entry = this.wheel[level][slot];
+				this.wheel[level][slot] = null;
+				while (entry != null) {
+					Entry<T> next = entry.next;
+					this.insert(entry);
+					entry = next;
+				}
+			}
+			int slot = (int) this.now & MASK;
+			Entry<T> entry = this.wheel[0][slot];
+			this.wheel[0][slot] = null;
+			while (entry != null) {
+				expired.add(entry.item);
+				this.size--;
+				entry = entry.next;
+			}
+		}
+	}
+
+	/**
+	 * Puts an entry in the slot that covers its deadline
+	 */
+	private void insert(Entry<T> entry){
+		long delta = entry.deadline - this.now;
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1))))
+			level++;
+		// items beyond the range of the wheel wait in the top level and are cascaded again
+		long deadline = Math.min(entry.deadline, this.now + (1L << (BITS * LEVELS)) - 1);
+		int slot = (int) (deadline >>> (BITS * level)) & MASK;
+		entry.next = this.wheel[level][slot];
+		this.wheel[level][slot] = entry;
+	}
+}
@@ -0,0 +1,124 @@
+package NetworkElements;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ActorRuntime - runs every router of a network as an actor, without ticks
+ *
+ * The actors share a work stealing pool with one worker per core, so a network with millions
+ * of routers needs no more threads than the machine has cores. In this mode packets move as
+ * fast as the routers can handle them, there is no line rate and no lock step between routers.
+ */
+public class ActorRuntime {
+	private ForkJoinPool pool; // the threads the actors run on
+	private int batchSize = 64; // how many packets an actor handles before it lets others run
+	private AtomicLong inFlight = new AtomicLong(); // packets posted to a mailbox and not yet handled
+	private Object idle = new Object(); // notified when nothing is in flight
+	private ArrayList<LSRActor> actors = new ArrayList<LSRActor>();
+
+	/**
+	 * Creates a runtime with one worker per core
+	 * @since 1.0
+	 */
+	public ActorRuntime(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a runtime
+	 * @param threads the number of worker threads
+	 * @since 1.0
+	 */
+	public ActorRuntime(int threads){
+		this.pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	}
+
+	/**
+	 * Switches a set of routers to actor mode. Must be called before any packet is created
+	 * @param routers the routers
+	 * @param mailboxCapacity the size of each router's mailbox
+	 * @since 1.0
+	 */
+	public void start(List<LSR> routers, int mailboxCapacity){
+		for (int i = 0; i < routers.size(); i ++)
+			this.actors.add(new LSRActor(routers.get(i), this, mailboxCapacity));
+	}
+
+	/**
+	 * Sets how many packets an actor handles each time it is scheduled
+	 * @param batchSize the number of packets
+	 * @since 1.0
+	 */
+	public void setBatchSize(int batchSize){
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns how many packets an actor handles each time it is scheduled
+	 * @return the batch size
+	 * @since 1.0
+	 */
+	public int getBatchSize(){
+		return this.batchSize;
+	}
+
+	/**
+	 * Returns the number of packets dropped because a mailbox was full
+	 * @return the number of rejected packets
+	 * @since 1.0
+	 */
+	public long getRejected(){
+		long rejected = 0;
+		for (int i = 0; i < this.actors.size(); i ++)
+			rejected += this.actors.get(i).getRejected();
+		return rejected;
+	}
+
+	/**
+	 * Waits until every packet in the network has been handled
+	 * @since 1.0
+	 */
+	public void awaitQuiescence() throws InterruptedException{
+		synchronized (this.idle) {
+			while (this.inFlight.get() != 0)
+				this.idle.wait();
+		}
+	}
+
+	/**
+	 * Stops the worker threads
+	 * @since 1.0
+	 */
+	public void shutdown() throws InterruptedException{
+		this.pool.shutdown();
+		this.pool.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Queues an actor on the pool
+	 */
+	void execute(LSRActor actor){
+		this.pool.execute(actor);
+	}
+
+	/**
+	 * Counts a packet posted to a mailbox
+	 */
+	void posted(){
+		this.inFlight.incrementAndGet();
+	}
+
+	/**
+	 * Counts packets that have been handled, waking up awaitQuiescence when none are left
+	 */
+	void processed(int count){
+		if (count > 0 && this.inFlight.addAndGet(-count) == 0) {
+			synchronized (this.idle) {
+				this.idle.notifyAll();
+			}
+		}
+	}
+}
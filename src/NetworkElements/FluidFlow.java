@@ -0,0 +1,126 @@
+package NetworkElements;
+
+import java.util.ArrayList;
+
+import DataTypes.*;
+
+/**
+ * FluidFlow - background traffic described by a rate instead of individual packets
+ *
+ * A flow sends a number of packets per time unit over the LSP from its source to its
+ * destination. The packets never exist, each time unit the rate is offered to every nic on the
+ * LSP in turn, reduced by the fraction the previous nic passed on.
+ */
+public class FluidFlow {
+	private static final int MAX_HOPS = 256; // guards against label loops while following the LSP
+	
+	private LSR source; // the ingress router
+	private int dest, DSCP; // the LSP the flow uses
+	private double rate; // packets per time unit offered at the ingress
+	private ArrayList<LSRNIC> path = new ArrayList<LSRNIC>(); // the output nics along the LSP, empty while it is set up
+	private long pathVersion = -1; // the label table version the path was worked out at
+	private double offered = 0; // fluid packets offered at the ingress so far
+	private double delivered = 0; // fluid packets that reached the destination so far
+	
+	/**
+	 * Creates a fluid flow, the LSP is set up the first time the flow runs
+	 * @param source the ingress router
+	 * @param dest the destination router
+	 * @param DSCP the traffic class
+	 * @param rate the packets per time unit
+	 * @since 1.0
+	 */
+	public FluidFlow(LSR source, int dest, int DSCP, double rate){
+		this.source = source;
+		this.dest = dest;
+		this.DSCP = DSCP;
+		this.rate = rate;
+	}
+	
+	/**
+	 * Offers this time unit's fluid to the nics along the LSP
+	 * @param touched the list the nics that got fluid are added to
+	 * @since 1.0
+	 */
+	public void offer(ArrayList<LSRNIC> touched){
+		NICLabelPair first = this.source.useLSP(this.dest, this.DSCP);
+		if (first == null) {	// the LSP is being set up
+			return;
+		}
+		if (this.pathVersion != LSR.getLabelVersion()) {
+			this.resolve(first);
+		}
+		double current = this.rate;
+		this.offered += current;
+		for (int i = 0; i < this.path.size(); i ++) {
+			LSRNIC nic = this.path.get(i);
+			nic.addFluid(current);
+			touched.add(nic);
+			current *= nic.getFluidPass();
+		}
+		this.delivered += current;
+	}
+	
+	/**
+	 * Follows the labels of the LSP from the ingress to the egress
+	 */
+	private void resolve(NICLabelPair hop){
+		this.path.clear();
+		this.pathVersion = LSR.getLabelVersion();
+		while (hop != null && this.path.size() < MAX_HOPS) {
+			LSRNIC nic = hop.getNIC();
+			this.path.add(nic);
+			LSRNIC peer = nic.getLink() == null ? null : nic.getLink().getPeer(nic);
+			if (peer == null) {	// the far end is in another JVM, the fluid stops here
+				return;
+			}
+			hop = peer.getParent().switchLabel(hop.getVC());
+			if (hop != null && hop.getNIC() == null) {	// reached the egress
+				return;
+			}
+		}
+	}
+	
+	public LSR getSource(){
+		return this.source;
+	}
+	
+	public int getDest(){
+		return this.dest;
+	}
+	
+	public int getDSCP(){
+		return this.DSCP;
+	}
+	
+	public double getRate(){
+		return this.rate;
+	}
+	
+	/**
+	 * Changes the packets per time unit the flow offers from the next time unit on
+	 * @param rate the new rate
+	 * @since 1.0
+	 */
+	public void setRate(double rate){
+		this.rate = rate;
+	}
+	
+	/**
+	 * Returns the fluid packets offered at the ingress so far
+	 * @return the packets offered
+	 * @since 1.0
+	 */
+	public double getOffered(){
+		return this.offered;
+	}
+	
+	/**
+	 * Returns the fluid packets that reached the destination so far
+	 * @return the packets delivered
+	 * @since 1.0
+	 */
+	public double getDelivered(){
+		return this.delivered;
+	}
+}
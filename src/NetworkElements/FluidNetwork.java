@@ -0,0 +1,71 @@
+package NetworkElements;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * FluidNetwork - the fluid flows of a simulation and the nics they load
+ *
+ * advance is called once per time unit before the packets are sent. It offers the rate of every
+ * flow along its LSP and then lets each loaded nic serve its fluid, which takes line capacity and
+ * raises the RED drop probability seen by the real packets. Only the flows and the nics they
+ * load are visited, nics keep being served until their fluid backlog drains.
+ */
+public class FluidNetwork {
+	private ArrayList<FluidFlow> flows = new ArrayList<FluidFlow>(); // all flows, in the order they were added
+	private ArrayList<LSRNIC> touched = new ArrayList<LSRNIC>(); // nics offered fluid this time unit, may repeat
+	private ArrayList<LSRNIC> loaded = new ArrayList<LSRNIC>(); // nics with fluid to serve, each once
+	private IdentityHashMap<LSRNIC, Boolean> isLoaded = new IdentityHashMap<LSRNIC, Boolean>(); // the nics in loaded
+	
+	/**
+	 * Adds a fluid flow
+	 * @param source the ingress router
+	 * @param dest the destination router
+	 * @param DSCP the traffic class
+	 * @param rate the packets per time unit
+	 * @return the flow, its rate can be changed later
+	 * @since 1.0
+	 */
+	public FluidFlow addFlow(LSR source, int dest, int DSCP, double rate){
+		ScenarioRecorder.fluidFlowAdded(source, dest, DSCP, rate);
+		FluidFlow flow = new FluidFlow(source, dest, DSCP, rate);
+		this.flows.add(flow);
+		return flow;
+	}
+	
+	/**
+	 * Returns the fluid flows, in the order they were added
+	 * @return the flows
+	 * @since 1.0
+	 */
+	public ArrayList<FluidFlow> getFlows(){
+		return this.flows;
+	}
+	
+	/**
+	 * Offers one time unit of fluid along every flow and serves it at the nics
+	 * @since 1.0
+	 */
+	public void advance(){
+		for (int i = 0; i < this.flows.size(); i ++)
+			this.flows.get(i).offer(this.touched);
+		for (int i = 0; i < this.touched.size(); i ++) {
+			LSRNIC nic = this.touched.get(i);
+			if (this.isLoaded.put(nic, Boolean.TRUE) == null)
+				this.loaded.add(nic);
+		}
+		this.touched.clear();
+		
+		// serve the fluid, nics whose backlog drained leave the loaded set
+		int kept = 0;
+		for (int i = 0; i < this.loaded.size(); i ++) {
+			LSRNIC nic = this.loaded.get(i);
+			if (nic.runFluid())
+				this.loaded.set(kept++, nic);
+			else
+				this.isLoaded.remove(nic);
+		}
+		while (this.loaded.size() > kept)
+			this.loaded.remove(this.loaded.size() - 1);
+	}
+}
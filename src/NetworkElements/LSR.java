@@ -1,25 +1,72 @@
 package NetworkElements;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import DataTypes.*;
 
 public class LSR{
 	private int address; // The AS address of this router
-	private ArrayList<LSRNIC> nics = new ArrayList<LSRNIC>(); // all of the nics in this router
-	private TreeMap<Integer, LSRNIC> nextHop = new TreeMap<Integer, LSRNIC>(); // a map of which interface to use to get to a given router on the network
-	private TreeMap<Integer, NICLabelPair> LabeltoLabel = new TreeMap<Integer, NICLabelPair>(); // a map of input VC to output nic and new VC number
-	private HashMap<DestDSCPPair, Integer> destDSCPtoLabel = new HashMap<DestDSCPPair, Integer>();
-	private HashMap<DestDSCPPair, Integer> destDSCPtoBW = new HashMap<DestDSCPPair, Integer>();	// map between traffic class and its allocated bandwidth
+	private LSRNIC[] nics = NO_NICS; // all of the nics in this router, in the order they were added
+	private static final LSRNIC[] NO_NICS = new LSRNIC[0]; // the nics of a router nothing was connected to yet
+	private int freeFrom = 1; // every label below this one is in the label table, the search for a free label starts here
+	private FECTable nextHop = new FECTable(); // the index of the nic to use to get to a given router on the network, by address, filled in as routers are asked for
+	private TreeMap<Integer, NICLabelPair> LabeltoLabel = new TreeMap<Integer, NICLabelPair>(); // a map of input VC to output nic and new VC number, only used by the control plane
+	private volatile ForwardingTable forwarding = ForwardingTable.EMPTY; // the published snapshot of LabeltoLabel, read by the data plane
+	private FECTable destDSCPtoLabel = new FECTable();	// the label of the LSP to each destination and class this router sends on, by LSPState.key, SETTING_UP while it is signaled
+	private FECTable destDSCPtoBW = new FECTable();	// map between traffic class and its allocated bandwidth, by LSPState.key
+	private static final int SETTING_UP = -1;	// the label of an LSP whose PATH has been sent and whose RESV has not come back
 	private ArrayList<Packet> waitList = new ArrayList<Packet>();	// packets waiting to be send due to path setting up
+	// the maps below that start out as Collections.emptyMap get a map of their own when the first entry is put, most routers of a large network never need one
+	private Map<Long, FECLatency> latency = Collections.emptyMap();	// latency of the packets delivered here, by LSPState.key
+	private Map<Long, FECLatency> treeLatency = Collections.emptyMap();	// latency of the P2MP packets delivered here, by LSPState.key of source, group and DSCP
+	private Map<Long, LSPState> lspStates = Collections.emptyMap();	// the LSPs passing through this router, by LSPState.key
+	private Set<Long> resetups = Collections.emptySet();	// the LSPs a refresh set up again from this router on, by LSPState.key of source, destination and DSCP, until their RESV is back
+	private SortedMap<Integer, LabelBranches> treeLabels = Collections.emptySortedMap();	// the P2MP labels this router allocated and their branches, only used by the control plane
+	private Map<Long, Integer> treeSessions = Collections.emptyMap();	// the P2MP label of each tree passing through this router, by LSPState.key of source, group and DSCP
+	private Map<Long, LabelBranches> trees = Collections.emptyMap();	// the first branches of each tree this router is the root of, by LSPState.key of this router, group and DSCP
+	private int nextTreeLabel = TREE_LABELS;	// the next P2MP label to allocate
+	private Map<Long, LSPState> tunnels = Collections.emptyMap();	// the explicitly routed LSPs passing through this router, by LSPState.tunnelKey
+	private FECTable ingressTunnels = new FECTable();	// the tunnel this router sends each destination and class on, by LSPState.key, missing for a hop by hop LSP
+	private FECTable reroutes = new FECTable();	// the tunnel being set up to take over each LSP this router re-routes, by LSPState.key
+	private int nextTunnel = 1;	// the next tunnel number to give out
+	private static final int TREE_LABELS = 1 << 20;	// P2MP labels are allocated from here up, clear of the unicast labels
 	
-	private boolean trace = false; // should we print out debug code?
-	private int traceID = (int) (Math.random() * 100000); // create a random trace id for cells
+	// soft state timers of all routers, a router that is not refreshed releases the LSP
+	private static TimingWheel<LSPState> timers = new TimingWheel<LSPState>(SimulationClock.getTick());
+	private static ArrayList<LSPState> expiredTimers = new ArrayList<LSPState>();
+	private static int refreshInterval = 30;	// ticks between the PATH refreshes an ingress sends
+	private static int lifetime = 105;	// ticks an LSP lives at a router without a refresh, 3.5 refresh intervals
+	private static int idleTimeout = 90;	// ticks without traffic after which the ingress tears an LSP down
+	private static boolean bundling = false;	// are the PATH, RESV and RESVCONF messages towards the same neighbour sent as bundles?
+	private static final int BUNDLE_SIZE = 64;	// messages one bundle carries at most
+	private static ArrayList<LSR> signaling = new ArrayList<LSR>();	// routers with messages waiting to be bundled
+	private static AtomicLong labelVersion = new AtomicLong();	// changes whenever an LSP is set up or released anywhere
+	
+	private volatile boolean trace = false; // should we print out debug code?
+	private int traceID; // a random trace id for cells, drawn from this router's random stream
 	private LSRNIC currentConnAttemptNIC = null; // The nic that is currently trying to setup a connection
-	private boolean displayCommands = true; // should we output the commands that are received?
-	private boolean isStart = true;	// used for deciding if setting up nexthop table
+	private volatile boolean displayCommands = true; // should we output the commands that are received?
 	
-	private int remainBandwidth = 50;	// for bandwidth reservation
+	private int remainBandwidth = 50;	// for bandwidth reservation, guarded by this router's lock as it can be changed over JMX
+	private long delivered = 0;	// number of data packets that reached the end at this router
+	private long refused = 0;	// number of packets createPacket refused because the first hop was full
+	private LSRActor actor = null;	// runs this router in actor mode, null when driven by ticks
+	private boolean releasePending = false;	// has an LSP come up that packets in the wait list are waiting for?
+	private static ArrayList<LSR> releasing = new ArrayList<LSR>();	// routers whose wait list the data plane has to send
+	private ArrayList<Packet> batchData = new ArrayList<Packet>();	// the data packets of the batch being forwarded
+	@SuppressWarnings("unchecked")
+	private ArrayList<Packet>[] batchOut = NO_BATCHES;	// the packets of the batch for each output nic, by nic index
+	@SuppressWarnings("rawtypes")
+	private static final ArrayList[] NO_BATCHES = new ArrayList[0];	// the batch lists of a router that has not forwarded a batch yet
+	@SuppressWarnings("unchecked")
+	private ArrayList<Packet>[] signals = NO_BATCHES;	// the messages waiting to be bundled for each nic, by nic index
+	private boolean signalsPending = false;	// are there messages waiting to be bundled?
+	private boolean inBundle = false;	// are the messages of a bundle being handled?
+	private boolean publishPending = false;	// has the label table changed since it was last published?
+	private List<Packet> held = Collections.emptyList();	// a teardown and the signaling behind it, handled after the data that arrived with them
+	private List<LSRNIC> heldNICs = Collections.emptyList();	// the nic each held message arrived on
+	private static ArrayList<LSR> holding = new ArrayList<LSR>();	// routers holding signaling for the end of the data phase
 	
 	/**
 	 * The default constructor for an ATM router
@@ -28,8 +75,9 @@ public class LSR{
 	 */
 	public LSR(int address){
 		this.address = address;
-		GraphInfo.graph.put(this.address, new ArrayList<Integer>());
-		GraphInfo.nics.put(this.address, new ArrayList<LSRNIC>());
+		this.traceID = SimulationRandom.forRouter(address).nextInt(100000);
+		GraphInfo.addRouter(this.address);
+		ScenarioRecorder.routerCreated(this);
 	}
 	
 	/**
@@ -46,64 +94,160 @@ public class LSR{
 	 * @since 1.0
 	 */
 	public void addNIC(LSRNIC nic){
-		this.nics.add(nic);
+		this.nics = Arrays.copyOf(this.nics, this.nics.length + 1);
+		this.nics[this.nics.length - 1] = nic;
+	}
+	
+	/**
+	 * Returns the number of nics in this router
+	 * @return the number of nics
+	 * @since 1.0
+	 */
+	public int getNICCount(){
+		return this.nics.length;
+	}
+	
+	/**
+	 * Returns a nic of this router
+	 * @param index the position of the nic, in the order the nics were added
+	 * @return the nic
+	 * @since 1.0
+	 */
+	public LSRNIC getNIC(int index){
+		return this.nics[index];
+	}
+	
+	/**
+	 * Returns the number of data packets that reached their destination at this router
+	 * @return the number of packets delivered
+	 * @since 1.0
+	 */
+	public long getDelivered(){
+		return this.delivered;
 	}
 	
 	/**
-	 * This method processes data and OAM cells that arrive from any nic with this router as a destination
+	 * Returns the number of packets createPacket refused because of backpressure
+	 * @return the number of refused packets
+	 * @since 1.0
+	 */
+	public long getRefused(){
+		return this.refused;
+	}
+	
+	/**
+	 * This method processes data and OAM cells that arrive from any nic with this router as a destination.
+	 * The handling of OAM cells is reported to Flight Recorder as packet.Signaling events when that
+	 * event is enabled, for example with
+	 * java -XX:StartFlightRecording:+packet.Signaling#enabled=true,filename=run.jfr example
 	 * @param currentPacket the packet that arrived at this router
 	 * @param nic the nic that the cell arrived on
 	 * @since 1.0
 	 */
 	public void receivePacket(Packet currentPacket, LSRNIC nic){
-		if (this.isStart) {
-			this.calculateNextHop();
-			this.isStart = false;
+		if (currentPacket.getIsOAM() && SignalingEvent.PROBE.isEnabled()) {
+			SignalingEvent event = new SignalingEvent();
+			event.begin();
+			this.handlePacket(currentPacket, nic);
+			event.end();
+			if (event.shouldCommit()) {
+				event.router = this.address;
+				event.message = SignalingEvent.messageOf(currentPacket);
+				event.source = currentPacket.getSource();
+				event.dest = currentPacket.getDest();
+				event.DSCP = currentPacket.getDSCP();
+				event.tick = SimulationClock.getTick();
+				event.commit();
+			}
+			return;
 		}
-
+		this.handlePacket(currentPacket, nic);
+	}
+	
+	/**
+	 * Processes a packet that arrived at this router
+	 */
+	private void handlePacket(Packet currentPacket, LSRNIC nic){
 		if(currentPacket.getIsOAM()){	// OAM packet
 			int toAddress = currentPacket.getDest();
 			
+			// the messages of several FECs bundled by the neighbour
+			if (currentPacket.getBundle() != null) {
+				this.receiveBundle(currentPacket, nic);
+			}
+			
+			// PATH and RESV of a point to multipoint tree
+			else if (currentPacket.getGroup() >= 0 && (currentPacket.getIsPath() || currentPacket.getIsResv())) {
+				this.signalTree(currentPacket, nic);
+			}
+			
+			// PATH, RESV and PATHTEAR of an explicitly routed LSP
+			else if (currentPacket.getTunnel() != 0
+					&& (currentPacket.getIsPath() || currentPacket.getIsResv() || currentPacket.getIsPathTear())) {
+				this.signalTunnel(currentPacket, nic);
+			}
+			
 			// PATH
-			if (currentPacket.getIsPath()) {					
+			else if (currentPacket.getIsPath()) {					
+				this.receivedPath(currentPacket);
+				LSPState state = this.lspStates.get(LSPState.key(toAddress, currentPacket.getDSCP()));
+				boolean resetup = false;	// does the router upstream already send on a label of a state that timed out here?
+				if (currentPacket.getIsRefresh()) {
+					if (state != null) {	// keep the LSP alive
+						state.setExpires(SimulationClock.getTick() + lifetime);
+						if (!state.hasUpstream(nic.getIndex())) {	// set up again here since this neighbour last heard of it
+							this.mergePath(currentPacket, state, nic);
+						}
+					}
+					else {	// the LSP timed out here, set it up again from this router on
+						currentPacket.setIsRefresh(false);
+						resetup = true;
+					}
+				}
+				
+				if (state != null && !currentPacket.getIsRefresh()) {	// merge into the LSP that is already here
+					this.mergePath(currentPacket, state, nic);
+				}
 				
-				if (this.address == toAddress) {	// dest address match
-					this.receivedPath(currentPacket);
+				else if (this.address == toAddress) {	// dest address match
+					if (currentPacket.getIsRefresh()) {	// nothing to set up
+						return;
+					}
 					
 					// send RESV
-					int thisLabel;
-					if (!this.LabeltoLabel.isEmpty()) {
-						thisLabel = this.LabeltoLabel.lastKey() + 1;
-					}
-					else {
-						thisLabel = 1;
-					}
+					int thisLabel = this.freeLabel();
 					if (trace) {
 						System.out.println("Trace (ATMRouter): First free LSP = " + thisLabel);
 					}
-					this.LabeltoLabel.put(thisLabel, new NICLabelPair(nic, thisLabel));
+					this.installLabel(thisLabel, new NICLabelPair(null, thisLabel));	// no nic, the packets end here whichever nic they arrive on
+					this.addState(currentPacket.getDest(), currentPacket.getDSCP(), thisLabel, 0, nic);
 					
 					Packet resv = new Packet(this.getAddress(), currentPacket.getSource(), currentPacket.getDSCP());
 					resv.setIsOAM(true);
 					resv.setIsResv(true);
+					resv.setIsRefresh(resetup);
 					resv.addMPLSheader(new MPLS(thisLabel, 0, 1));
 					resv.setTraceID(this.getTraceID());
 					resv.setBandwidth(currentPacket.getBandwidth());
 					this.sentResv(resv);
-					nic.sendPacket(resv, this);					
+					this.signal(nic, resv);
 				}
 				
 				else {	// not dest address
-					if (this.nics.size() <= 1) {	// invalid end point
+					if (this.nics.length <= 1) {	// invalid end point
 						System.out.println("Nowhere to forward");
 						return;
 					}						
 					currentConnAttemptNIC = nic;						
-					this.receivedPath(currentPacket);				
-					if (this.nextHop.containsKey(toAddress)) {
-						LSRNIC nicSent = this.nextHop.get(toAddress);
+					LSRNIC nicSent = this.nextHop(toAddress);
+					if (nicSent != null) {
+						if (resetup) {	// the RESV coming back is passed upstream as a refresh
+							if (this.resetups.isEmpty())
+								this.resetups = new HashSet<Long>();
+							this.resetups.add(LSPState.key(currentPacket.getSource(), toAddress, currentPacket.getDSCP()));
+						}
 						this.sentPath(currentPacket);
-						nicSent.sendPacket(currentPacket, this);
+						this.signal(nicSent, currentPacket);
 						//this.currentConnAttemptNIC = nicSent;
 					}
 					else {	// can't find dest addr in nexthop, send PATHERR
@@ -148,7 +292,7 @@ public class LSR{
 				}
 				else {	// forward RESVERR
 					this.sentResvErr(currentPacket);
-					LSRNIC fwdnic = this.nextHop.get(currentPacket.getSource());
+					LSRNIC fwdnic = this.nextHop(currentPacket.getSource());
 					fwdnic.sendPacket(currentPacket, this);
 				}
 			}
@@ -158,22 +302,23 @@ public class LSR{
 				int inLabel = currentPacket.getFirstMPLS().getLabel();
 				int outLabel = 1;
 				this.receivedResv(currentPacket);
+				LSPState state = this.lspStates.get(LSPState.key(currentPacket.getSource(), currentPacket.getDSCP()));
+				NICLabelPair next = new NICLabelPair(nic, inLabel);
 				
-				if (!this.LabeltoLabel.isEmpty()) {
-					outLabel = this.LabeltoLabel.lastKey() + 1;
-					for (int i = 1; i < this.LabeltoLabel.lastKey(); i ++) {
-						if (!this.LabeltoLabel.containsKey(i)) {
-							outLabel = i;
-							break;
-						}
-					}
+				if (state != null && !next.equals(this.LabeltoLabel.get(state.getLabel()))) {	// set up again downstream, switch onto it
+					this.installLabel(state.getLabel(), next);
+					labelVersion.incrementAndGet();
+				}
+				if (state != null && currentPacket.getIsRefresh()) {	// answers a refresh, this router is a user downstream already
+					return;
 				}
 				
-				// Allocate Bandwidth
-				if (this.remainBandwidth >= currentPacket.getBandwidth()) {
-					this.remainBandwidth -= currentPacket.getBandwidth();
+				if (state == null) {
+					outLabel = this.freeLabel();
 				}
-				else {	// unable to reserve, send RESVERR
+				
+				// Allocate Bandwidth
+				if (!this.reserveBandwidth(currentPacket.getBandwidth())) {	// unable to reserve, send RESVERR
 					Packet resverr = new Packet(currentPacket.getDest(), currentPacket.getSource(), currentPacket.getDSCP());
 					resverr.setIsOAM(true);
 					resverr.setIsResvErr(true);
@@ -185,23 +330,37 @@ public class LSR{
 					return;
 				}
 				
+				// downstream counts this router once however many sources it merges, the upstream neighbour likewise
+				LSRNIC upstream = currentPacket.getDest() == this.getAddress() ? null : this.nextHop(currentPacket.getDest());
+				if (state != null) {	// another source merged here while this RESV was on its way
+					outLabel = state.getLabel();
+					this.addUser(state, upstream);
+					state.setBandwidth(state.getBandwidth() + currentPacket.getBandwidth());
+					state.setExpires(SimulationClock.getTick() + lifetime);
+				}
+				else {
+					this.installLabel(outLabel, next);
+					state = this.addState(currentPacket.getSource(), currentPacket.getDSCP(), outLabel, currentPacket.getBandwidth(), upstream);
+				}
+				
 				// forward RESV
 				if (currentPacket.getDest() != this.getAddress()) {
 					Packet resv = new Packet(currentPacket.getSource(), currentPacket.getDest(), currentPacket.getDSCP());
 					resv.setIsOAM(true);
 					resv.setIsResv(true);
+					// set up again from here, the router upstream still has the LSP and only switches onto the new label
+					resv.setIsRefresh(this.resetups.remove(LSPState.key(currentPacket.getDest(), currentPacket.getSource(), currentPacket.getDSCP())));
 					resv.setTraceID(this.getTraceID());
+					resv.setBandwidth(currentPacket.getBandwidth());
 					resv.addMPLSheader(currentPacket.getFirstMPLS());
 					resv.getFirstMPLS().setLabel(outLabel);
 					this.sentResv(resv);
-					LSRNIC fwdnic = this.nextHop.get(currentPacket.getDest());
-					fwdnic.sendPacket(resv, this);
-					this.LabeltoLabel.put(outLabel, new NICLabelPair(nic, inLabel));
+					this.signal(upstream, resv);
 					this.currentConnAttemptNIC = null;
 				}
 				else {	// RESV reaches the SOURCE node
-					this.destDSCPtoLabel.put(new DestDSCPPair(currentPacket.getSource(), currentPacket.getDSCP()), outLabel);
-					this.LabeltoLabel.put(outLabel, new NICLabelPair(nic, inLabel));
+					state.setIngress(true);
+					this.destDSCPtoLabel.put(LSPState.key(currentPacket.getSource(), currentPacket.getDSCP()), outLabel);
 					if (trace) {
 						System.out.println("The connection is setup on LSP " + outLabel);
 					}
@@ -212,26 +371,10 @@ public class LSR{
 					conf.setIsResvConf(true);
 					conf.setTraceID(this.getTraceID());
 					this.sentResvConf(conf);
-					nic.sendPacket(conf, this);
+					this.signal(nic, conf);
 														
-					// send packets in the waiting list
-					ArrayList<Integer> deleteID = new ArrayList<Integer>();
-					for (int i = 0; i < this.waitList.size(); i ++) {
-						Packet packet = this.waitList.get(i);
-						if (this.destDSCPtoLabel.containsKey(new DestDSCPPair(packet.getDest(), packet.getDSCP())) 
-								&& this.destDSCPtoLabel.get(new DestDSCPPair(packet.getDest(), packet.getDSCP())) != -1) {
-							packet.addMPLSheader(new MPLS(inLabel, 0, 1));
-							nic.sendPacket(packet, this);
-							if (trace) {
-								System.out.println("Sending packet " + packet.getTraceID() + " from router " + this.getAddress());
-							}
-							deleteID.add(i);
-						}
-					}
-					for (int i = deleteID.size() - 1; i >= 0; i --) {
-						int tmp = deleteID.get(i);
-						this.waitList.remove(tmp);
-					}					
+					// the data plane sends the packets in the waiting list
+					this.scheduleRelease();
 					return;
 				}
 			}
@@ -240,8 +383,35 @@ public class LSR{
 			else if (currentPacket.getIsResvConf()) {
 				this.receivedResvConf(currentPacket);
 				if (this.getAddress() != currentPacket.getDest()) {
-					LSRNIC fwdnic = this.nextHop.get(currentPacket.getDest());
-					fwdnic.sendPacket(currentPacket, this);
+					this.signal(this.nextHop(currentPacket.getDest()), currentPacket);
+				}
+			}
+			
+			// PATHTEAR, follows the LSP downstream behind its packets, releasing it at every router
+			else if (currentPacket.getIsPathTear()) {
+				this.receivedPathTear(currentPacket);
+				LSPState state = this.lspStates.get(LSPState.key(currentPacket.getDest(), currentPacket.getDSCP()));
+				if (state == null || !state.removeUpstream(nic.getIndex())) {	// the router upstream is no user
+					return;
+				}
+				NICLabelPair pair = this.leaveState(state, currentPacket.getBandwidth(), currentPacket.getSource());
+				if (pair != null) {	// the last user is gone and this is not the egress, keep tearing down
+					currentPacket.setBandwidth(state.getBandwidth());
+					this.sentPathTear(currentPacket);
+					pair.getNIC().sendAfterData(currentPacket, this);
+				}
+			}
+			
+			// RESVTEAR, travels upstream to the source releasing the LSP at every router
+			else if (currentPacket.getIsResvTear()) {
+				this.receivedResvTear(currentPacket);
+				LSPState state = this.lspStates.get(LSPState.key(currentPacket.getSource(), currentPacket.getDSCP()));
+				if (state != null) {
+					this.releaseState(state);
+				}
+				if (currentPacket.getDest() != this.getAddress()) {
+					this.sentResvTear(currentPacket);
+					this.nextHop(currentPacket.getDest()).sendPacket(currentPacket, this);
 				}
 			}
 			
@@ -254,17 +424,30 @@ public class LSR{
 		else {	
 			// find the nic and new LSP number to forward the packet on
 			// otherwise the packet has nowhere to go. output to the console and drop the packet
-			if (this.LabeltoLabel.isEmpty()) {
+			ForwardingTable forwarding = this.table();
+			if (forwarding.isEmpty()) {
 				System.out.println("Error: vc lookup table is empty.");
+				PacketTracer.dropped(currentPacket, this.address, "no label");
 				return;
 			}
-			if (!this.LabeltoLabel.containsKey(currentPacket.getFirstMPLS().getLabel())) {
-				System.out.println("Error: No VC found.");
+			NICLabelPair pair = forwarding.lookup(currentPacket.getFirstMPLS().getLabel());
+			if (pair == null) {
+				LabelBranches tree = forwarding.lookupBranches(currentPacket.getFirstMPLS().getLabel());
+				if (tree == null) {
+					System.out.println("Error: No VC found.");
+					PacketTracer.dropped(currentPacket, this.address, "no label");
+					return;
+				}
+				this.forwardTree(currentPacket, tree, nic, null);
 				return;
 			}
-			int outLabel = this.LabeltoLabel.get(currentPacket.getFirstMPLS().getLabel()).getVC();
-			LSRNIC outNIC = this.LabeltoLabel.get(currentPacket.getFirstMPLS().getLabel()).getNIC();
-			if (outNIC != nic) {
+			int outLabel = pair.getVC();
+			LSRNIC outNIC = pair.getNIC();
+			if (outNIC != null) {
+				if (currentPacket.getTrace() != null || PacketTracer.isEnabled()) {
+					PacketTracer.hop(currentPacket, this.address, nic.getIndex(), currentPacket.getFirstMPLS().getLabel(), outLabel,
+							outNIC.getOutputQueueLength());
+				}
 				currentPacket.getFirstMPLS().setLabel(outLabel);
 				outNIC.sendPacket(currentPacket, this);
 				if (this.trace) {
@@ -272,30 +455,379 @@ public class LSR{
 				}
 			}
 			else {
-				if (trace) {
-					System.out.println("Packet " + currentPacket.getTraceID() + " reaches the end at " + this.getAddress());
-				}
+				this.deliver(currentPacket, nic);
 			}
 			
 		}	
 	}
 	
 	/**
-	 * This method creates a packet with the specified type of service field and sends it to a destination
+	 * Processes all packets that arrived on a nic in one go. Stage one hands the OAM packets to
+	 * receivePacket and collects the data packets. Stage two looks up and swaps the label of every
+	 * data packet in a tight loop, staging them per output nic, and then appends each nic's packets
+	 * to its output buffer in bulk. OAM packets are handled before the data packets that arrived
+	 * with them, so data never waits behind the signaling it depends on. A PATHTEAR or RESVTEAR
+	 * and the OAM packets behind it are handled last, so the labels it releases are still there
+	 * for the data that arrived before it
+	 * @param packets the packets, in arrival order. The list is left unchanged
+	 * @param nic the nic the packets arrived on
+	 * @since 1.0
+	 */
+	public void receivePacketBatch(ArrayList<Packet> packets, LSRNIC nic){
+		// stage one, control before data
+		ArrayList<Packet> data = this.batchData;
+		int tearAt = -1;
+		for (int i = 0; i < packets.size(); i ++) {
+			Packet currentPacket = packets.get(i);
+			if (!currentPacket.getIsOAM())
+				data.add(currentPacket);
+			else if (tearAt < 0 && !isTeardown(currentPacket))
+				this.receivePacket(currentPacket, nic);
+			else if (tearAt < 0)
+				tearAt = i;
+		}
+		if (data.isEmpty()) {
+			this.receiveTeardowns(packets, tearAt, nic);
+			return;
+		}
+		
+		// stage two, label lookup and swap
+		if (this.batchOut.length < this.nics.length) {
+			this.batchOut = Arrays.copyOf(this.batchOut, this.nics.length);
+		}
+		ArrayList<Packet>[] out = this.batchOut;
+		boolean trace = this.trace;
+		boolean sampling = PacketTracer.isEnabled();
+		ForwardingTable forwarding = this.table();
+		for (int i = 0; i < data.size(); i ++) {
+			Packet currentPacket = data.get(i);
+			MPLS header = currentPacket.getFirstMPLS();
+			NICLabelPair pair = forwarding.lookup(header.getLabel());
+			if (pair == null) {
+				LabelBranches tree = forwarding.lookupBranches(header.getLabel());
+				if (tree == null) {
+					System.out.println(forwarding.isEmpty() ? "Error: vc lookup table is empty." : "Error: No VC found.");
+					PacketTracer.dropped(currentPacket, this.address, "no label");
+				}
+				else {
+					this.forwardTree(currentPacket, tree, nic, out);
+				}
+				continue;
+			}
+			LSRNIC outNIC = pair.getNIC();
+			if (outNIC == null) {
+				this.deliver(currentPacket, nic);
+				continue;
+			}
+			int index = outNIC.getIndex();
+			if (out[index] == null) {
+				out[index] = new ArrayList<Packet>();
+			}
+			if (sampling || currentPacket.getTrace() != null) {	// the packets staged for the nic will be ahead of it
+				PacketTracer.hop(currentPacket, this.address, nic.getIndex(), header.getLabel(), pair.getVC(),
+						outNIC.getOutputQueueLength() + out[index].size());
+			}
+			header.setLabel(pair.getVC());
+			out[index].add(currentPacket);
+			if (trace) {
+				System.out.println("Sending packet " + currentPacket.getTraceID() + " from router " + this.getAddress() + " to " + currentPacket.getDest());
+			}
+		}
+		data.clear();
+		
+		// bulk append to the output buffers
+		for (int i = 0; i < out.length; i ++) {
+			if (out[i] != null && !out[i].isEmpty()) {
+				this.nics[i].sendPacketBatch(out[i], this);
+				out[i].clear();
+			}
+		}
+		this.receiveTeardowns(packets, tearAt, nic);
+	}
+	
+	/**
+	 * Handles the OAM packets of a batch from its first teardown on, after its data
+	 */
+	private void receiveTeardowns(ArrayList<Packet> packets, int from, LSRNIC nic){
+		for (int i = from; i >= 0 && i < packets.size(); i ++) {
+			if (packets.get(i).getIsOAM())
+				this.receivePacket(packets.get(i), nic);
+		}
+	}
+	
+	/**
+	 * Returns whether an OAM packet releases labels
+	 */
+	static boolean isTeardown(Packet currentPacket){
+		return currentPacket.getIsPathTear() || currentPacket.getIsResvTear();
+	}
+	
+	/**
+	 * Keeps a signaling message back until the data plane has forwarded the packets of the time
+	 * unit. A nic holds a teardown and every message that arrived behind it, so the data that
+	 * arrived before a teardown still finds its labels and the signaling keeps its order
+	 * @param currentPacket the OAM packet
+	 * @param nic the nic it arrived on
+	 * @since 1.0
+	 */
+	void holdControl(Packet currentPacket, LSRNIC nic){
+		if (this.held.isEmpty()) {	// lists of its own only while something is held, most routers never hold anything
+			this.held = new ArrayList<Packet>();
+			this.heldNICs = new ArrayList<LSRNIC>();
+			synchronized (holding) {
+				holding.add(this);
+			}
+		}
+		this.held.add(currentPacket);
+		this.heldNICs.add(nic);
+	}
+	
+	/**
+	 * Handles the signaling this router kept back, in the order it arrived. In lossless mode a nic
+	 * whose data is still blocked in its input buffer keeps its messages back until it has drained
+	 */
+	private void receiveHeld(){
+		List<Packet> held = this.held;
+		List<LSRNIC> heldNICs = this.heldNICs;
+		this.held = Collections.emptyList();
+		this.heldNICs = Collections.emptyList();
+		for (int i = 0; i < held.size(); i ++) {
+			LSRNIC nic = heldNICs.get(i);
+			if (nic.isLossless() && nic.getInputQueueLength() > 0) {	// data that arrived before it is still blocked
+				this.holdControl(held.get(i), nic);
+			}
+			else {
+				this.receivePacket(held.get(i), nic);
+			}
+		}
+		this.publishChanges();
+	}
+	
+	/**
+	 * Handles the signaling every router kept back for the end of the data phase. Called by the
+	 * data plane once the packets of a time unit have been forwarded
+	 * @since 1.0
+	 */
+	public static void receiveHeldControl(){
+		if (holding.isEmpty()) {
+			return;
+		}
+		ArrayList<LSR> routers;
+		synchronized (holding) {
+			routers = new ArrayList<LSR>(holding);
+			holding.clear();
+		}
+		for (int i = 0; i < routers.size(); i ++) {
+			if (!routers.get(i).held.isEmpty()) {
+				routers.get(i).receiveHeld();
+			}
+		}
+	}
+	
+	/**
+	 * Counts a data packet that reached the end of its LSP at this router
+	 * @param nic the nic the packet arrived on, null if it was created here
+	 */
+	private void deliver(Packet currentPacket, LSRNIC nic){
+		this.delivered++;
+		if (currentPacket.getInjectedAt() >= 0) {
+			this.latencyOf(currentPacket).record(currentPacket, SimulationClock.getTick());
+		}
+		if (currentPacket.getTrace() != null || PacketTracer.isEnabled()) {
+			PacketTracer.hop(currentPacket, this.address, nic == null ? PacketTrace.NONE : nic.getIndex(),
+					nic == null ? PacketTrace.NONE : currentPacket.getFirstMPLS().getLabel(), PacketTrace.NONE, 0);
+			PacketTracer.delivered(currentPacket, this.address);
+		}
+		if (trace) {
+			System.out.println("Packet " + currentPacket.getTraceID() + " reaches the end at " + this.getAddress());
+		}
+	}
+	
+	/**
+	 * Returns the latency entry a delivered packet is recorded in, creating it for the first
+	 * packet of its class. A P2MP packet ends at every leaf and is kept apart by group, so a tree
+	 * and a unicast LSP from the same source to this router never share an entry
+	 */
+	private FECLatency latencyOf(Packet currentPacket) {
+		int group = currentPacket.getGroup();
+		if (group < 0) {
+			long key = LSPState.key(currentPacket.getSource(), currentPacket.getDest(), currentPacket.getDSCP());
+			FECLatency fec = this.latency.get(key);
+			if (fec == null) {
+				if (this.latency.isEmpty())
+					this.latency = new HashMap<Long, FECLatency>();
+				fec = new FECLatency(currentPacket.getSource(), currentPacket.getDest(), currentPacket.getDSCP());
+				this.latency.put(key, fec);
+			}
+			return fec;
+		}
+		long key = LSPState.key(currentPacket.getSource(), group, currentPacket.getDSCP());
+		FECLatency fec = this.treeLatency.get(key);
+		if (fec == null) {
+			if (this.treeLatency.isEmpty())
+				this.treeLatency = new HashMap<Long, FECLatency>();
+			fec = new FECLatency(currentPacket.getSource(), this.address, currentPacket.getDSCP(), group);
+			this.treeLatency.put(key, fec);
+		}
+		return fec;
+	}
+	
+	/**
+	 * Sends a packet down every branch of a point to multipoint tree and delivers it here if this
+	 * router is a leaf. The packet itself goes down the last branch, the other branches get a
+	 * replica with its own header, so a packet is only copied where the tree branches
+	 * @param nic the nic the packet arrived on, null if it was created here
+	 * @param out the packets of the batch for each output nic, or null to send each packet right away
+	 */
+	private void forwardTree(Packet currentPacket, LabelBranches tree, LSRNIC nic, ArrayList<Packet>[] out){
+		int count = tree.getBranchCount();
+		if (tree.isLocal()) {	// a traced packet that also goes on reports the path to here on its own
+			this.deliver(count > 0 && currentPacket.getTrace() != null ? currentPacket.replicate() : currentPacket, nic);
+		}
+		boolean sampling = currentPacket.getTrace() != null || PacketTracer.isEnabled();
+		int inNIC = nic == null ? PacketTrace.NONE : nic.getIndex();
+		int inLabel = nic == null ? PacketTrace.NONE : currentPacket.getFirstMPLS().getLabel();
+		for (int i = 0; i < count; i ++) {
+			NICLabelPair branch = tree.getBranch(i);
+			Packet copy = i == count - 1 ? currentPacket : currentPacket.replicate();
+			copy.getFirstMPLS().setLabel(branch.getVC());
+			int index = branch.getNIC().getIndex();
+			if (out != null && out[index] == null) {
+				out[index] = new ArrayList<Packet>();
+			}
+			if (sampling) {
+				PacketTracer.hop(copy, this.address, inNIC, inLabel, branch.getVC(),
+						branch.getNIC().getOutputQueueLength() + (out == null ? 0 : out[index].size()));
+			}
+			if (out == null) {
+				branch.getNIC().sendPacket(copy, this);
+			}
+			else {
+				out[index].add(copy);
+			}
+			if (this.trace) {
+				System.out.println("Sending packet " + copy.getTraceID() + " of group " + copy.getGroup() + " from router " + this.getAddress() + " on nic " + branch.getNIC().getIndex());
+			}
+		}
+	}
+	
+	/**
+	 * This method creates a packet with the specified type of service field and sends it to a destination.
+	 * When the nic towards the destination is lossless and its buffer is full, no packet is created
 	 * @param destination the distination router
 	 * @param DSCP the differentiated services code point field
+	 * @return false if the packet was refused because the network is pushing back
 	 * @since 1.0
 	 */
-	public void createPacket(int destination, int DSCP) {
-		if (this.isStart) {
-			this.calculateNextHop();
-			this.isStart = false;
-		}
+	public boolean createPacket(int destination, int DSCP) {
+		ScenarioRecorder.packetCreated(this, destination, DSCP);
 		Packet newPacket= new Packet(this.getAddress(), destination, DSCP);
+		newPacket.setInjectedAt(SimulationClock.getTick());
+		if (this.actor != null) {	// the packet is sent by the actor's thread
+			return this.actor.post(newPacket, null);
+		}
+		LSRNIC nic = this.firstHop(destination, DSCP);
+		if (nic != null && nic.isLossless() && !nic.hasRoom()) {
+			this.refused++;
+			return false;
+		}
+		this.originatePacket(newPacket);
+		return true;
+	}
+	
+	/**
+	 * Sends a packet created at this router into the network
+	 * @param newPacket the packet, without a trace id yet
+	 * @since 1.0
+	 */
+	void originatePacket(Packet newPacket) {
 		newPacket.setTraceID(this.getTraceID());
 		this.sendPacket(newPacket);				
 	}
 
+	/**
+	 * Adds a leaf to a point to multipoint tree rooted at this router by sending a PATH towards it.
+	 * The RESV coming back grafts the leaf onto the tree at the first router the tree already
+	 * passes through, so every link carries the packets of the tree once however many leaves
+	 * are below it
+	 * @param group the group the tree delivers
+	 * @param leaf the router to add
+	 * @param DSCP the traffic class of the tree
+	 * @since 1.0
+	 */
+	public void addP2MPLeaf(int group, int leaf, int DSCP) {
+		ScenarioRecorder.p2mpLeafAdded(this, group, leaf, DSCP);
+		if (this.nextHop(leaf) == null) {
+			System.out.println("Error: router " + leaf + " can not be reached from " + this.getAddress());
+			return;
+		}
+		Packet path = new Packet(this.getAddress(), leaf, DSCP);
+		path.setIsOAM(true);
+		path.setIsPath(true);
+		path.setGroup(group);
+		path.setTraceID(this.getTraceID());
+		this.sentPath(path);
+		this.nextHop(leaf).sendPacket(path, this);
+	}
+	
+	/**
+	 * This method creates a packet for a point to multipoint group and sends it down the tree of
+	 * the group. Packets created before the first leaf has joined wait for it. When a first hop
+	 * of the tree is lossless and its buffer is full, no packet is created
+	 * @param group the group
+	 * @param DSCP the differentiated services code point field
+	 * @return false if the packet was refused because the network is pushing back
+	 * @since 1.0
+	 */
+	public boolean createP2MPPacket(int group, int DSCP) {
+		ScenarioRecorder.p2mpPacketCreated(this, group, DSCP);
+		Packet newPacket = new Packet(this.getAddress(), -1, DSCP);
+		newPacket.setGroup(group);
+		newPacket.setInjectedAt(SimulationClock.getTick());
+		if (this.actor != null) {	// the packet is sent by the actor's thread
+			return this.actor.post(newPacket, null);
+		}
+		LabelBranches tree = this.trees.get(LSPState.key(this.address, group, DSCP));
+		if (tree != null) {
+			for (int i = 0; i < tree.getBranchCount(); i ++) {
+				LSRNIC nic = tree.getBranch(i).getNIC();
+				if (nic.isLossless() && !nic.hasRoom()) {
+					this.refused++;
+					return false;
+				}
+			}
+		}
+		this.originatePacket(newPacket);
+		return true;
+	}
+	
+	/**
+	 * Returns whether a packet arriving on a nic could be forwarded without overflowing the
+	 * output buffer it goes to. Used by lossless nics before they hand a data packet over
+	 * @param currentPacket the data packet
+	 * @param nic the nic the packet arrived on
+	 * @return false if the packet has to wait
+	 * @since 1.0
+	 */
+	public boolean canForward(Packet currentPacket, LSRNIC nic) {
+		MPLS header = currentPacket.getFirstMPLS();
+		ForwardingTable forwarding = this.table();
+		NICLabelPair pair = header == null ? null : forwarding.lookup(header.getLabel());
+		if (pair == null && header != null) {	// a P2MP packet waits until every branch has room
+			LabelBranches tree = forwarding.lookupBranches(header.getLabel());
+			for (int i = 0; tree != null && i < tree.getBranchCount(); i ++) {
+				if (!tree.getBranch(i).getNIC().hasRoom()) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (pair == null || pair.getNIC() == null) {	// dropped or delivered here, nothing to wait for
+			return true;
+		}
+		return pair.getNIC().hasRoom();
+	}
+	
 	/**
 	 * This method allocates bandwidth for a specific traffic class from the current router to the destination router
 	 * @param dest destination router id
@@ -305,6 +837,7 @@ public class LSR{
 	 * @since 1.0
 	 */
 	public void allocateBandwidth(int dest, int PHB, int Class, int Bandwidth) {
+		ScenarioRecorder.bandwidthAllocated(this, dest, PHB, Class, Bandwidth);
 		int DSCP = 0;
 		if (PHB == 1) {
 			DSCP = Class;
@@ -312,7 +845,7 @@ public class LSR{
 		if (PHB == 2) {
 			DSCP = 5;
 		}
-		this.destDSCPtoBW.put(new DestDSCPPair(dest, DSCP), Bandwidth);
+		this.destDSCPtoBW.put(LSPState.key(dest, DSCP), Bandwidth);
 	}
 	
 	/**
@@ -323,183 +856,1599 @@ public class LSR{
 	public void sendPacket(Packet newPacket) {
 		
 		//This method should send the packet to the correct NIC.]
+		if (newPacket.getGroup() >= 0) {
+			this.sendTree(newPacket);
+			return;
+		}
 		int dest = newPacket.getDest();
 		int DSCP = newPacket.getDSCP();
-		DestDSCPPair pair = new DestDSCPPair(dest, DSCP);
-		LSRNIC nic = this.nextHop.get(dest);
+		int inLabel = this.destDSCPtoLabel.get(LSPState.key(dest, DSCP));
+		NICLabelPair first = null;	// the first hop of a tunnel need not be the next hop
+		if (inLabel != FECTable.NONE && inLabel != SETTING_UP) {
+			first = this.ingressHop(dest, DSCP, inLabel);	// null if the LSP was released meanwhile, it is then signaled again
+		}
 		
-		if (this.destDSCPtoLabel.containsKey(pair) && this.destDSCPtoLabel.get(pair) != -1) {
-			int inLabel = this.destDSCPtoLabel.get(pair);
-			int outLabel = this.LabeltoLabel.get(inLabel).getVC();
-			newPacket.addMPLSheader(new MPLS(outLabel, 0, 1));
-			nic.sendPacket(newPacket, this);
+		if (first != null) {
+			newPacket.addMPLSheader(new MPLS(first.getVC(), 0, 1));
+			if (newPacket.getTrace() != null || PacketTracer.isEnabled()) {
+				PacketTracer.hop(newPacket, this.address, PacketTrace.NONE, PacketTrace.NONE, first.getVC(),
+						first.getNIC().getOutputQueueLength());
+			}
+			first.getNIC().sendPacket(newPacket, this);
+			LSPState state = this.ingressState(LSPState.key(dest, DSCP));
+			if (state != null) {
+				state.setLastUsed(SimulationClock.getTick());
+			}
 			if (this.trace) {
 				System.out.println("Sending packet " + newPacket.getTraceID() + " from router " + this.getAddress());
 			}
 		}
 		
-		else if (!this.destDSCPtoLabel.containsKey(pair)) {
-			this.destDSCPtoLabel.put(pair, -1);
+		else if (inLabel == FECTable.NONE) {
+			newPacket.markWaiting(SimulationClock.getTick());
 			this.waitList.add(newPacket);
-			Packet path = new Packet(this.getAddress(), newPacket.getDest(), newPacket.getDSCP());
-			path.setIsOAM(true);
-			path.setIsPath(true);
-			path.setTraceID(this.getTraceID());
-			if (this.destDSCPtoBW.containsKey(new DestDSCPPair(newPacket.getDest(), newPacket.getDSCP()))) {
-				path.setBandwidth(this.destDSCPtoBW.get(new DestDSCPPair(newPacket.getDest(), newPacket.getDSCP())));
-			}
-			this.sentPath(path);
-			nic.sendPacket(path, this);
+			this.signalPath(dest, DSCP);
 		}		
 		else {
+			newPacket.markWaiting(SimulationClock.getTick());
 			this.waitList.add(newPacket);
 		}
 		
 	}
 
 	/**
-	 * Makes each nic move its cells from the output buffer across the link to the next router's nic
-	 * @since 1.0
-	 */
-	public void sendPackets(){
-		for(int i=0; i<this.nics.size(); i++)
-			this.nics.get(i).sendPackets();
-	}
-	
-	/**
-	 * Makes each nic move all of its cells from the input buffer to the output buffer
-	 * @since 1.0
-	 */
-	public void recievePackets(){
-		for(int i=0; i<this.nics.size(); i++)
-			this.nics.get(i).recievePackets();
-	}
-	
-	/**
-	 * Tells the router the nic to use to get towards a given router on the network
-	 * @param destAddress the destination address of the ATM router
-	 * @param outInterface the interface to use to connect to that router
-	 * @since 1.0
+	 * Sends a packet created at this router down the tree of its group, or puts it in the wait
+	 * list until the first leaf has joined
 	 */
-	public void addNextHopInterface(int destAddress, LSRNIC outInterface){
-		this.nextHop.put(destAddress, outInterface);
+	private void sendTree(Packet newPacket) {
+		LabelBranches tree = this.trees.get(LSPState.key(this.address, newPacket.getGroup(), newPacket.getDSCP()));
+		if (tree == null || tree.getBranchCount() == 0) {
+			newPacket.markWaiting(SimulationClock.getTick());
+			this.waitList.add(newPacket);
+			return;
+		}
+		newPacket.addMPLSheader(new MPLS(0, 0, 1));	// each branch sets its own label
+		this.forwardTree(newPacket, tree, null, null);
 	}
 	
 	/**
-	 * Using Dijkstra algorithm to calculate this.nexthop
-	 * @since 1.0
+	 * Handles the PATH and RESV of a point to multipoint tree. A PATH travels to its leaf like a
+	 * unicast PATH. The RESV of a leaf travels back towards the root until it reaches a router the
+	 * tree already passes through, that router only adds a branch to its P2MP label and confirms
+	 * the leaf, so the tree is signaled once on every link
 	 */
-	public void calculateNextHop(){
-		int origin = this.getAddress();
-		int v0 = 0;		// the origin node
-		ArrayList<Integer> nodes = new ArrayList<Integer>();
-		
-		for (Integer node : GraphInfo.graph.keySet()) {
-			nodes.add(node);
-			if (node == origin) {
-				v0 = nodes.size() - 1;
-			}		
-		}
-		
-		int n = nodes.size();	
-		ArrayList<Integer> dist = new ArrayList<Integer>();	// distance to origin node
-		ArrayList<Integer> path = new ArrayList<Integer>();	// path to origin node
-		ArrayList<Boolean> visited = new ArrayList<Boolean>();
-		ArrayList<LSRNIC> niclist = GraphInfo.nics.get(origin);
-		ArrayList<Integer> neighborlist = GraphInfo.graph.get(origin);
+	private void signalTree(Packet currentPacket, LSRNIC nic) {
+		int group = currentPacket.getGroup();
+		int DSCP = currentPacket.getDSCP();
 		
-		for (int i = 0; i < n; i ++) {
-			dist.add(0);
-			path.add(-1);
-			visited.add(false);
-		}
-		for (int i = 0; i < n; i ++) {
-			if (neighborlist.contains(nodes.get(i)) 
-					&& nodes.get(i) != origin) {
-				dist.set(i, 1);
-				path.set(i, v0);
-			}
-			else {
-				dist.set(i, Integer.MAX_VALUE);
-				path.set(i, -1);
-			}
-			visited.set(i, false);
-			path.set(v0, v0);
-			dist.set(v0, 0);
-		}
-		visited.set(v0, true);
-		for (int i = 1; i < n; i ++) {
-			int min = Integer.MAX_VALUE;
-			int u = 0;
-			for (int j = 0; j < n; j ++) {
-				if (visited.get(j) == false && dist.get(j) < min) {
-					min = dist.get(j);
-					u = j;
+		if (currentPacket.getIsPath()) {
+			this.receivedPath(currentPacket);
+			int leaf = currentPacket.getDest();
+			if (leaf != this.address) {	// on the way to the leaf
+				if (this.nextHop(leaf) == null) {
+					System.out.println("Nowhere to forward");
+					return;
 				}
+				this.sentPath(currentPacket);
+				this.nextHop(leaf).sendPacket(currentPacket, this);
+				return;
 			}
-			visited.set(u, true);
-			for (int k = 0; k < n; k ++) {
-				if (visited.get(k) == false 
-						&& GraphInfo.graph.get(nodes.get(u)).contains(nodes.get(k))
-						&& min + 1 < dist.get(k)) {
-					dist.set(k, min + 1);
-					path.set(k, u);
+			long key = LSPState.key(currentPacket.getSource(), group, DSCP);
+			Integer label = this.treeSessions.get(key);
+			if (label != null) {	// the tree already passes through, deliver here as well
+				this.installTree(label, this.treeLabels.get(label).withLocal());
+				if (trace) {
+					System.out.println("Router " + this.getAddress() + " joins group " + group + " on P2MP label " + label);
 				}
+				return;
 			}
+			label = this.nextTreeLabel++;
+			if (this.treeSessions.isEmpty())
+				this.treeSessions = new HashMap<Long, Integer>();
+			this.treeSessions.put(key, label);
+			this.installTree(label, LabelBranches.EMPTY.withLocal());
+			Packet resv = new Packet(this.getAddress(), currentPacket.getSource(), DSCP);
+			resv.setIsOAM(true);
+			resv.setIsResv(true);
+			resv.setGroup(group);
+			resv.addMPLSheader(new MPLS(label, 0, 1));
+			resv.setTraceID(this.getTraceID());
+			this.sentResv(resv);
+			this.nextHop(currentPacket.getSource()).sendPacket(resv, this);
+			return;
 		}
 		
-		for (int i = 0; i < n; i ++) {
-			if (i == v0) {
-				continue;
+		// RESV, the label is the one the router below allocated for the tree
+		this.receivedResv(currentPacket);
+		int root = currentPacket.getDest();
+		NICLabelPair branch = new NICLabelPair(nic, currentPacket.getFirstMPLS().getLabel());
+		if (root == this.address) {	// RESV reaches the root, graft the first hop
+			long key = LSPState.key(this.address, group, DSCP);
+			LabelBranches tree = this.trees.get(key);
+			if (tree == null) {
+				tree = LabelBranches.EMPTY;
 			}
-			int tmp = i;
-			while (path.get(tmp) != v0) {
-				tmp = path.get(tmp);
+			if (this.trees.isEmpty())
+				this.trees = new HashMap<Long, LabelBranches>();
+			this.trees.put(key, tree.withBranch(branch));
+			if (trace) {
+				System.out.println("Router " + currentPacket.getSource() + " joins group " + group + " of router " + this.getAddress());
 			}
-			int id;
-			for (id = 0; id < neighborlist.size(); id ++) {
-				if (neighborlist.get(id) == nodes.get(tmp)) {
-					break;
-				}
-			}
-			
-			this.nextHop.put(nodes.get(i), niclist.get(id));
+			this.confirmTree(currentPacket, nic);
+			// the data plane sends the packets in the waiting list
+			this.scheduleRelease();
+			return;
 		}
-
-		return;
+		long key = LSPState.key(root, group, DSCP);
+		Integer label = this.treeSessions.get(key);
+		if (label != null) {	// a branch point, the tree is already signaled upstream
+			this.installTree(label, this.treeLabels.get(label).withBranch(branch));
+			this.confirmTree(currentPacket, nic);
+			return;
+		}
+		label = this.nextTreeLabel++;
+		if (this.treeSessions.isEmpty())
+			this.treeSessions = new HashMap<Long, Integer>();
+		this.treeSessions.put(key, label);
+		this.installTree(label, LabelBranches.EMPTY.withBranch(branch));
+		Packet resv = new Packet(currentPacket.getSource(), root, DSCP);
+		resv.setIsOAM(true);
+		resv.setIsResv(true);
+		resv.setGroup(group);
+		resv.addMPLSheader(new MPLS(label, 0, 1));
+		resv.setTraceID(this.getTraceID());
+		this.sentResv(resv);
+		this.nextHop(root).sendPacket(resv, this);
 	}
 	
-	
-	
-	
 	/**
-	 * This method returns a sequentially increasing random trace ID, so that we can
-	 * differentiate cells in the network
-	 * @return the trace id for the next cell
-	 * @since 1.0
+	 * Sends a RESVCONF back to the leaf whose RESV was merged into a tree
 	 */
-	public int getTraceID(){
-		int ret = this.traceID;
-		this.traceID++;
-		return ret;
+	private void confirmTree(Packet resv, LSRNIC nic) {
+		Packet conf = new Packet(resv.getDest(), resv.getSource(), resv.getDSCP());
+		conf.setIsOAM(true);
+		conf.setIsResvConf(true);
+		conf.setTraceID(this.getTraceID());
+		this.sentResvConf(conf);
+		nic.sendPacket(conf, this);
 	}
 	
 	/**
-	 * Outputs to the console that a PATH message has been sent
-	 * @since 1.0
+	 * Starts setting up an LSP by sending a PATH towards the destination
 	 */
-	private void sentPath(Packet packet){
-		if(this.displayCommands)
-		System.out.println("Router " +this.address+ " sent a PATH to Router " + packet.getDest());
+	private void signalPath(int dest, int DSCP) {
+		long fec = LSPState.key(dest, DSCP);
+		this.destDSCPtoLabel.put(fec, SETTING_UP);
+		Packet path = new Packet(this.getAddress(), dest, DSCP);
+		path.setIsOAM(true);
+		path.setIsPath(true);
+		path.setTraceID(this.getTraceID());
+		int bandwidth = this.destDSCPtoBW.get(fec);
+		if (bandwidth != FECTable.NONE) {
+			path.setBandwidth(bandwidth);
+		}
+		this.sentPath(path);
+		this.signal(this.nextHop(dest), path);
 	}
 	
 	/**
-	 * Outputs to the console that a PATH message has been received
-	 * @since 1.0
+	 * Returns the nic the packets to a destination and class leave on, the first hop of their LSP
+	 * once it is up
 	 */
-	private void receivedPath(Packet packet){
-		if(this.displayCommands)
-		System.out.println("Router " +this.address+ " received a PATH from Router " + packet.getSource());
+	private LSRNIC firstHop(int dest, int DSCP) {
+		int label = this.destDSCPtoLabel.get(LSPState.key(dest, DSCP));
+		NICLabelPair first = label == FECTable.NONE || label == SETTING_UP ? null : this.table().lookup(label);
+		if (first != null) {
+			return first.getNIC();
+		}
+		return this.nextHop(dest);
+	}
+	
+	/**
+	 * Returns the LSP this router sends the packets of a destination and class on, the tunnel it
+	 * was re-routed onto or else the hop by hop LSP it is a source of
+	 * @return the state, null if this router is no source of such an LSP
+	 */
+	private LSPState ingressState(long fec) {
+		int tunnel = this.ingressTunnels.get(fec);
+		if (tunnel != FECTable.NONE) {
+			return this.tunnels.get(LSPState.tunnelKey(this.address, tunnel));
+		}
+		LSPState state = this.lspStates.get(fec);
+		return state != null && state.isIngress() ? state : null;
+	}
+	
+	/**
+	 * Moves the LSP from this router to a destination onto an explicit route, make before break.
+	 * A tunnel is signaled along the route while the packets keep flowing on the old path. Once
+	 * its RESV is back at this router the packets are sent on the tunnel, and the old path is
+	 * torn down behind the packets already sent on it
+	 * @param dest the destination of the LSP
+	 * @param DSCP the traffic class of the LSP
+	 * @param route the addresses of the routers after this one, ending with the destination
+	 * @return false if there is no LSP up to the destination yet or the route does not start at a neighbour
+	 * @since 1.0
+	 */
+	public boolean rerouteLSP(int dest, int DSCP, int[] route) {
+		long fec = LSPState.key(dest, DSCP);
+		int label = this.destDSCPtoLabel.get(fec);
+		LSRNIC first = route.length == 0 ? null : this.neighborNIC(route[0]);
+		if (label == FECTable.NONE || label == SETTING_UP || first == null || route[route.length - 1] != dest) {
+			return false;
+		}
+		ScenarioRecorder.lspRerouted(this, dest, DSCP, route);	// only re-routes that start signaling are replayed
+		
+		// a re-route still being set up is given up, its RESV tears it down when it comes back
+		int tunnel = this.nextTunnel++;
+		this.reroutes.put(fec, tunnel);
+		Packet path = new Packet(this.address, dest, DSCP);
+		path.setIsOAM(true);
+		path.setIsPath(true);
+		path.setTraceID(this.getTraceID());
+		path.setTunnel(tunnel);
+		path.setRoute(route.clone());
+		int bandwidth = this.destDSCPtoBW.get(fec);
+		if (bandwidth != FECTable.NONE) {
+			path.setBandwidth(bandwidth);
+		}
+		LSPState old = this.ingressState(fec);
+		if (old != null) {	// the routers the old path shares with the tunnel only reserve the difference
+			path.setShared(old.getTunnel() != 0 ? old.getRoute() : this.hopByHopRoute(dest), old.getTunnel());
+		}
+		this.sentPath(path);
+		first.sendPacket(path, this);
+		return true;
+	}
+	
+	/**
+	 * Returns the routers the hop by hop LSP from this router to a destination passes, each of
+	 * them picking its next hop the way this router does
+	 * @return the addresses of the routers after this one up to the destination, null if it is not reached
+	 */
+	private int[] hopByHopRoute(int dest) {
+		ArrayList<Integer> hops = new ArrayList<Integer>();
+		int at = this.address;
+		while (at != dest && hops.size() < GraphInfo.getRouterCount()) {
+			int edge = GraphInfo.findFirstHops(at, dest, new FECTable());
+			if (edge < 0) {
+				return null;
+			}
+			at = GraphInfo.getEdgeTarget(edge);
+			hops.add(at);
+		}
+		int[] route = new int[hops.size()];
+		for (int i = 0; i < route.length; i ++)
+			route[i] = hops.get(i);
+		return route;
+	}
+	
+	/**
+	 * Handles the PATH, RESV and PATHTEAR of a tunnel. The PATH follows the explicit route it
+	 * carries and the RESV retraces it, allocating a label at every router. A tunnel is never
+	 * merged, so its labels are only used by the ingress that set it up
+	 */
+	private void signalTunnel(Packet currentPacket, LSRNIC nic) {
+		int tunnel = currentPacket.getTunnel();
+		int[] route = currentPacket.getRoute();	// only PATH and RESV carry the route
+		int hop = route == null ? -1 : this.routeIndex(route);
+		
+		if (currentPacket.getIsPath()) {
+			this.receivedPath(currentPacket);
+			LSPState state = this.tunnels.get(LSPState.tunnelKey(currentPacket.getSource(), tunnel));
+			long now = SimulationClock.getTick();
+			if (currentPacket.getIsRefresh() && state == null) {	// the tunnel timed out here, set it up again from this router on
+				currentPacket.setIsRefresh(false);
+			}
+			else if (state != null) {
+				state.setExpires(now + lifetime);
+				if (!currentPacket.getIsRefresh()) {	// set up again upstream, hand back the label of the tunnel
+					this.sendTunnelResv(currentPacket, state.getLabel(), nic);
+					return;
+				}
+			}
+			
+			if (this.address == currentPacket.getDest()) {
+				if (!currentPacket.getIsRefresh()) {
+					int label = this.freeLabel();
+					this.installLabel(label, new NICLabelPair(null, label));
+					this.addTunnelState(currentPacket.getSource(), tunnel, currentPacket.getDest(), currentPacket.getDSCP(), label, 0, false);
+					this.sendTunnelResv(currentPacket, label, nic);
+				}
+				return;
+			}
+			LSRNIC next = hop + 1 < route.length ? this.neighborNIC(route[hop + 1]) : null;
+			if (next == null) {
+				System.out.println("Error: Router " + this.address + " has no link along the route of tunnel " + tunnel
+						+ " from Router " + currentPacket.getSource());
+				return;
+			}
+			this.sentPath(currentPacket);
+			next.sendPacket(currentPacket, this);
+		}
+		
+		else if (currentPacket.getIsResv()) {
+			this.receivedResv(currentPacket);
+			int ingress = currentPacket.getDest();
+			LSPState state = this.tunnels.get(LSPState.tunnelKey(ingress, tunnel));
+			NICLabelPair next = new NICLabelPair(nic, currentPacket.getFirstMPLS().getLabel());
+			if (state != null) {	// set up again downstream, switch onto it
+				if (!next.equals(this.LabeltoLabel.get(state.getLabel()))) {
+					this.installLabel(state.getLabel(), next);
+					labelVersion.incrementAndGet();
+				}
+				return;
+			}
+			
+			long fec = LSPState.key(currentPacket.getSource(), currentPacket.getDSCP());
+			boolean wanted = ingress != this.address || (this.reroutes.get(fec) == tunnel
+					&& this.destDSCPtoLabel.get(fec) != FECTable.NONE && this.destDSCPtoLabel.get(fec) != SETTING_UP);
+			LSPState old = this.sharedState(currentPacket, ingress, fec);
+			int shared = old == null ? 0 : Math.min(currentPacket.getBandwidth(), old.getBandwidth());
+			if (!wanted || !this.reserveBandwidth(currentPacket.getBandwidth() - shared)) {	// release what was set up downstream
+				if (wanted) {
+					System.out.println("Error: Router " + this.address + " has no bandwidth left for tunnel " + tunnel + " from Router " + ingress);
+				}
+				if (ingress == this.address && this.reroutes.get(fec) == tunnel) {
+					this.reroutes.remove(fec);
+				}
+				Packet tear = new Packet(ingress, currentPacket.getSource(), currentPacket.getDSCP());
+				tear.setIsOAM(true);
+				tear.setIsPathTear(true);
+				tear.setTraceID(this.getTraceID());
+				tear.setTunnel(tunnel);
+				this.sentPathTear(tear);
+				nic.sendPacket(tear, this);
+				return;
+			}
+			int label = this.freeLabel();
+			this.installLabel(label, next);
+			state = this.addTunnelState(ingress, tunnel, currentPacket.getSource(), currentPacket.getDSCP(), label,
+					currentPacket.getBandwidth(), ingress == this.address);
+			if (shared > 0) {
+				state.setShared(old, shared);
+			}
+			
+			if (ingress != this.address) {	// forward RESV back along the route
+				currentPacket.getFirstMPLS().setLabel(label);
+				this.sentResv(currentPacket);
+				this.neighborNIC(hop > 0 ? route[hop - 1] : ingress).sendPacket(currentPacket, this);
+				return;
+			}
+			
+			// the new path is up, move the packets onto it. The old path is torn down behind the
+			// packets already sent on it and hands the bandwidth it shares over to the tunnel
+			state.setRoute(route);
+			old = this.ingressState(fec);
+			this.reroutes.remove(fec);
+			this.destDSCPtoLabel.put(fec, label);
+			this.ingressTunnels.put(fec, tunnel);
+			labelVersion.incrementAndGet();
+			if (old != null) {
+				this.leaveIngress(old);
+			}
+			if (this.displayCommands) {
+				System.out.println("Router " + this.address + " moved the LSP to Router " + currentPacket.getSource() + " onto tunnel " + tunnel);
+			}
+		}
+		
+		else {	// PATHTEAR
+			this.receivedPathTear(currentPacket);
+			LSPState state = this.tunnels.get(LSPState.tunnelKey(currentPacket.getSource(), tunnel));
+			if (state == null) {
+				return;
+			}
+			NICLabelPair pair = this.leaveState(state, currentPacket.getBandwidth(), currentPacket.getSource());
+			if (pair != null) {
+				currentPacket.setBandwidth(state.getBandwidth());
+				this.sentPathTear(currentPacket);
+				pair.getNIC().sendAfterData(currentPacket, this);
+			}
+		}
+	}
+	
+	/**
+	 * Answers the PATH of a tunnel with a RESV carrying the label this router allocated for it
+	 */
+	private void sendTunnelResv(Packet path, int label, LSRNIC nic) {
+		Packet resv = new Packet(path.getDest(), path.getSource(), path.getDSCP());
+		resv.setIsOAM(true);
+		resv.setIsResv(true);
+		resv.addMPLSheader(new MPLS(label, 0, 1));
+		resv.setTraceID(this.getTraceID());
+		resv.setBandwidth(path.getBandwidth());
+		resv.setTunnel(path.getTunnel());
+		resv.setRoute(path.getRoute());
+		resv.setShared(path.getSharedRoute(), path.getSharedTunnel());
+		this.sentResv(resv);
+		nic.sendPacket(resv, this);
+	}
+	
+	/**
+	 * Remembers a tunnel that was set up through this router and starts its soft state timer
+	 */
+	private LSPState addTunnelState(int source, int tunnel, int dest, int DSCP, int label, int bandwidth, boolean ingress) {
+		LSPState state = new LSPState(this, dest, DSCP);
+		state.setTunnel(source, tunnel);
+		state.setLabel(label);
+		state.setBandwidth(bandwidth);
+		state.setIngress(ingress);
+		long now = SimulationClock.getTick();
+		state.setLastUsed(now);
+		state.setExpires(now + lifetime);
+		if (this.tunnels.isEmpty())
+			this.tunnels = new HashMap<Long, LSPState>();
+		this.tunnels.put(state.getKey(), state);
+		labelVersion.incrementAndGet();
+		scheduleTimer(state, ingress ? now + refreshInterval : state.getExpires());
+		return state;
+	}
+	
+	/**
+	 * Returns the state of the path a tunnel being set up takes over, if that path passes through
+	 * this router. The tunnel shares the bandwidth reserved for it here
+	 * @return the state, null if the tunnel takes over no path here
+	 */
+	private LSPState sharedState(Packet resv, int ingress, long fec) {
+		int[] route = resv.getSharedRoute();
+		if (route == null || (ingress != this.address && this.routeIndex(route) < 0)) {
+			return null;
+		}
+		LSPState old = resv.getSharedTunnel() == 0 ? this.lspStates.get(fec)
+				: this.tunnels.get(LSPState.tunnelKey(ingress, resv.getSharedTunnel()));
+		return old != null && old.isActive() ? old : null;
+	}
+	
+	/**
+	 * Returns where this router is on an explicit route
+	 * @return the index of this router in the route, -1 for the ingress, which is not part of it
+	 */
+	private int routeIndex(int[] route) {
+		for (int i = 0; i < route.length; i ++)
+			if (route[i] == this.address)
+				return i;
+		return -1;
+	}
+	
+	/**
+	 * Returns the nic of the link to a neighbour, or null if no link leads there
+	 */
+	private LSRNIC neighborNIC(int neighbor) {
+		return GraphInfo.getNICTo(this.address, neighbor);
+	}
+	
+	/**
+	 * Returns the lowest label not in the label table
+	 */
+	private int freeLabel() {
+		while (this.LabeltoLabel.containsKey(this.freeFrom)) {
+			this.freeFrom++;
+		}
+		return this.freeFrom;
+	}
+	
+	/**
+	 * Returns the first hop of the LSP from this router to a destination and marks the LSP as in
+	 * use. Starts setting the LSP up if there is none yet
+	 * @param dest the destination
+	 * @param DSCP the traffic class
+	 * @return the nic and label of the first hop, or null while the LSP is being set up
+	 */
+	NICLabelPair useLSP(int dest, int DSCP) {
+		int inLabel = this.destDSCPtoLabel.get(LSPState.key(dest, DSCP));
+		if (inLabel == FECTable.NONE) {
+			this.signalPath(dest, DSCP);
+			return null;
+		}
+		if (inLabel == SETTING_UP) {
+			return null;
+		}
+		NICLabelPair first = this.ingressHop(dest, DSCP, inLabel);
+		LSPState state = this.ingressState(LSPState.key(dest, DSCP));
+		if (first != null && state != null) {
+			state.setLastUsed(SimulationClock.getTick());
+		}
+		return first;
+	}
+	
+	/**
+	 * Returns the first hop of the LSP an ingress label leads onto. A label released since the
+	 * LSP came up is forgotten and the LSP is signaled again, the packets wait for it meanwhile
+	 * @return the nic and label of the first hop, or null if the LSP is being set up again
+	 */
+	private NICLabelPair ingressHop(int dest, int DSCP, int inLabel) {
+		NICLabelPair first = this.table().lookup(inLabel);
+		if (first == null) {
+			long fec = LSPState.key(dest, DSCP);
+			this.destDSCPtoLabel.remove(fec);
+			this.ingressTunnels.remove(fec);
+			this.signalPath(dest, DSCP);
+		}
+		return first;
+	}
+	
+	/**
+	 * Returns the label of each LSP this router sends on, by LSPState.key of destination and
+	 * class. The table is the router's own and must not be changed
+	 * @return the ingress labels, SETTING_UP for an LSP being set up
+	 */
+	FECTable getIngressLabels() {
+		return this.destDSCPtoLabel;
+	}
+	
+	/**
+	 * Returns where a label arriving at this router is switched to
+	 * @param label the label
+	 * @return the nic and label it is switched to, or null if the label is unknown
+	 */
+	NICLabelPair switchLabel(int label) {
+		return this.table().lookup(label);
+	}
+	
+	/**
+	 * Returns a number that changes whenever an LSP is set up or released at any router, so
+	 * paths worked out from the label tables can be kept until it changes
+	 * @return the label table version
+	 * @since 1.0
+	 */
+	public static long getLabelVersion() {
+		return labelVersion.get();
+	}
+	
+	/**
+	 * Makes each nic move its cells from the output buffer across the link to the next router's nic
+	 * @since 1.0
+	 */
+	public void sendPackets(){
+		if (TickPhaseEvent.PROBE.isEnabled()) {
+			TickPhaseEvent event = new TickPhaseEvent();
+			int queued = this.getOutputQueueLength();
+			event.begin();
+			for(int i=0; i<this.nics.length; i++)
+				this.nics[i].sendPackets();
+			event.end();
+			event.router = this.address;
+			event.phase = "send";
+			event.packets = queued - this.getOutputQueueLength();
+			event.tick = SimulationClock.getTick();
+			event.commit();
+			return;
+		}
+		for(int i=0; i<this.nics.length; i++)
+			this.nics[i].sendPackets();
+	}
+	
+	/**
+	 * Makes each nic move all of its cells from the input buffer to the output buffer
+	 * @since 1.0
+	 */
+	public void recievePackets(){
+		if (TickPhaseEvent.PROBE.isEnabled()) {
+			TickPhaseEvent event = new TickPhaseEvent();
+			int queued = this.getInputQueueLength();
+			event.begin();
+			this.recieveAll();
+			event.end();
+			event.router = this.address;
+			event.phase = "receive";
+			event.packets = queued - this.getInputQueueLength();
+			event.tick = SimulationClock.getTick();
+			event.commit();
+			return;
+		}
+		this.recieveAll();
+	}
+	
+	/**
+	 * Handles the signaling that arrived on every nic, then sends the packets it released from the
+	 * wait list and forwards the data packets, and finally handles the teardowns held back for them
+	 */
+	private void recieveAll(){
+		for(int i=0; i<this.nics.length; i++)
+			this.nics[i].recieveControlPackets();
+		if (this.releasePending) {
+			this.releaseWaiting();
+		}
+		for(int i=0; i<this.nics.length; i++)
+			this.nics[i].recievePackets();
+		if (!this.held.isEmpty()) {
+			this.receiveHeld();
+		}
+	}
+	
+	/**
+	 * Hands the wait list of this router to the data plane, which sends the packets whose LSP is up
+	 * before it forwards the next packets
+	 */
+	private void scheduleRelease() {
+		if (this.releasePending) {
+			return;
+		}
+		this.releasePending = true;
+		if (this.actor == null) {	// actors send their wait list when they flush
+			synchronized (releasing) {
+				releasing.add(this);
+			}
+		}
+	}
+	
+	/**
+	 * Sends the packets in the wait list whose LSP has come up
+	 */
+	private void releaseWaiting() {
+		this.releasePending = false;
+		if (this.waitList.isEmpty()) {
+			return;
+		}
+		ArrayList<Packet> waiting = this.waitList;
+		this.waitList = new ArrayList<Packet>();
+		long tick = SimulationClock.getTick();
+		for (int i = 0; i < waiting.size(); i ++) {
+			Packet packet = waiting.get(i);
+			boolean up;
+			if (packet.getGroup() >= 0) {
+				LabelBranches tree = this.trees.get(LSPState.key(this.address, packet.getGroup(), packet.getDSCP()));
+				up = tree != null && tree.getBranchCount() > 0;
+			}
+			else {
+				int label = this.destDSCPtoLabel.get(LSPState.key(packet.getDest(), packet.getDSCP()));
+				up = label != FECTable.NONE && label != SETTING_UP;
+			}
+			if (up) {
+				packet.markReleased(tick);
+				this.sendPacket(packet);
+			}
+			else {
+				this.waitList.add(packet);
+			}
+		}
+	}
+	
+	/**
+	 * Sends the wait lists the control plane has released since the last call, in the order the
+	 * LSPs came up. Called by the data plane before it forwards the packets of a time unit
+	 * @since 1.0
+	 */
+	public static void releaseWaitingPackets() {
+		if (releasing.isEmpty()) {
+			return;
+		}
+		ArrayList<LSR> routers;
+		synchronized (releasing) {
+			routers = new ArrayList<LSR>(releasing);
+			releasing.clear();
+		}
+		for (int i = 0; i < routers.size(); i ++) {
+			if (routers.get(i).releasePending) {
+				routers.get(i).releaseWaiting();
+			}
+		}
+	}
+	
+	/**
+	 * Sends the messages every router has queued for bundling since the last call. Called by the
+	 * data plane before the nics send and at the end of each phase that hands packets to routers
+	 * @since 1.0
+	 */
+	public static void sendBundles() {
+		if (signaling.isEmpty()) {
+			return;
+		}
+		ArrayList<LSR> routers;
+		synchronized (signaling) {
+			routers = new ArrayList<LSR>(signaling);
+			signaling.clear();
+		}
+		for (int i = 0; i < routers.size(); i ++) {
+			if (routers.get(i).signalsPending) {
+				routers.get(i).sendSignals();
+			}
+		}
+	}
+	
+	/**
+	 * Sends a PATH, RESV or RESVCONF to a neighbour. With bundling on, the messages of hop by
+	 * hop LSPs are queued and go out together with the others for the same nic when the data
+	 * plane calls sendBundles, in the same phase they would have been sent in on their own
+	 */
+	private void signal(LSRNIC nic, Packet packet) {
+		if (!isBundled(packet)) {
+			nic.sendPacket(packet, this);
+			return;
+		}
+		int index = nic.getIndex();
+		if (this.signals.length < this.nics.length) {
+			this.signals = Arrays.copyOf(this.signals, this.nics.length);
+		}
+		if (this.signals[index] == null) {
+			this.signals[index] = new ArrayList<Packet>();
+		}
+		this.signals[index].add(packet);
+		if (!this.signalsPending) {
+			this.signalsPending = true;
+			if (this.actor == null) {	// actors send their bundles when they flush
+				synchronized (signaling) {
+					signaling.add(this);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether a message is queued for bundling rather than sent on its own. Trees and
+	 * tunnels are signaled along their own paths and are never bundled
+	 */
+	private static boolean isBundled(Packet packet) {
+		return bundling && packet.getGroup() < 0 && packet.getTunnel() == 0 && packet.getBundle() == null;
+	}
+	
+	/**
+	 * Sends the queued messages, one bundle per nic and kind of message and BUNDLE_SIZE messages
+	 * at most in a bundle. A message that is alone of its kind goes out as it is
+	 */
+	private void sendSignals() {
+		this.signalsPending = false;
+		ArrayList<Packet> messages = new ArrayList<Packet>();
+		for (int i = 0; i < this.signals.length; i ++) {
+			ArrayList<Packet> queued = this.signals[i];
+			if (queued == null || queued.isEmpty()) {
+				continue;
+			}
+			for (int kind = 0; kind < 3; kind ++) {
+				messages.clear();
+				for (int j = 0; j < queued.size(); j ++) {
+					Packet packet = queued.get(j);
+					if ((kind == 0 && packet.getIsPath()) || (kind == 1 && packet.getIsResv()) || (kind == 2 && packet.getIsResvConf())) {
+						messages.add(packet);
+					}
+				}
+				for (int from = 0; from < messages.size(); from += BUNDLE_SIZE) {
+					int count = Math.min(BUNDLE_SIZE, messages.size() - from);
+					if (count == 1) {
+						this.sentSignal(messages.get(from));
+						this.nics[i].sendPacket(messages.get(from), this);
+						continue;
+					}
+					Packet bundle = new Packet(this.address, this.neighborOf(this.nics[i]), 0);
+					bundle.setIsOAM(true);
+					bundle.setIsPath(kind == 0);
+					bundle.setIsResv(kind == 1);
+					bundle.setIsResvConf(kind == 2);
+					bundle.setTraceID(this.getTraceID());
+					bundle.setBundle(messages.subList(from, from + count).toArray(new Packet[count]));
+					this.sentBundle(bundle);
+					this.nics[i].sendPacket(bundle, this);
+				}
+			}
+			queued.clear();
+		}
+	}
+	
+	/**
+	 * Handles the messages of a bundle one by one, as if each had arrived on its own
+	 */
+	private void receiveBundle(Packet bundle, LSRNIC nic) {
+		this.receivedBundle(bundle);
+		Packet[] messages = bundle.getBundle();
+		this.inBundle = true;
+		for (int i = 0; i < messages.length; i ++) {
+			this.handlePacket(messages[i], nic);
+		}
+		this.inBundle = false;
+	}
+	
+	/**
+	 * Returns the address of the router at the other end of a nic's link, -1 if it is not known
+	 */
+	private int neighborOf(LSRNIC nic) {
+		for (int edge = GraphInfo.getFirstEdge(this.address); edge >= 0; edge = GraphInfo.getNextEdge(edge)) {
+			if (GraphInfo.getEdgeNIC(edge) == nic) {
+				return GraphInfo.getEdgeTarget(edge);
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the number of packets waiting in the output buffers of all nics
+	 * @return the total output queue length
+	 * @since 1.0
+	 */
+	public int getOutputQueueLength(){
+		int length = 0;
+		for(int i=0; i<this.nics.length; i++)
+			length += this.nics[i].getOutputQueueLength();
+		return length;
+	}
+	
+	/**
+	 * Returns the number of packets waiting in the input buffers of all nics
+	 * @return the total input queue length
+	 * @since 1.0
+	 */
+	public int getInputQueueLength(){
+		int length = 0;
+		for(int i=0; i<this.nics.length; i++)
+			length += this.nics[i].getInputQueueLength();
+		return length;
+	}
+	
+	/**
+	 * Makes each nic send everything in its output buffer, regardless of the line rate.
+	 * Used in actor mode where there are no time units
+	 * @since 1.0
+	 */
+	public void flushPackets(){
+		this.publishChanges();
+		if (this.releasePending) {
+			this.releaseWaiting();
+		}
+		if (this.signalsPending) {
+			this.sendSignals();
+		}
+		for(int i=0; i<this.nics.length; i++)
+			this.nics[i].flushPackets();
+	}
+	
+	/**
+	 * Runs this router as an actor, packets arriving at its nics are posted to the actor
+	 * @param actor the actor, or null to go back to being driven by ticks
+	 * @since 1.0
+	 */
+	public void setActor(LSRActor actor){
+		this.actor = actor;
+	}
+	
+	/**
+	 * Returns the actor running this router
+	 * @return the actor, null when driven by ticks
+	 * @since 1.0
+	 */
+	public LSRActor getActor(){
+		return this.actor;
+	}
+	
+	/**
+	 * Tells the router the nic to use to get towards a given router on the network
+	 * @param destAddress the destination address of the ATM router
+	 * @param outInterface the interface to use to connect to that router
+	 * @since 1.0
+	 */
+	public void addNextHopInterface(int destAddress, LSRNIC outInterface){
+		this.nextHop.put(destAddress, outInterface.getIndex());
+	}
+	
+	/**
+	 * Works out the nic to use to get to every router on the network at once, instead of one
+	 * router at a time as they are first asked for
+	 * @since 1.0
+	 */
+	public void calculateNextHop(){
+		FECTable firstHops = new FECTable();
+		GraphInfo.findFirstHops(this.address, -1, firstHops);
+		for (int slot = 0; slot < firstHops.capacity(); slot ++) {
+			if (firstHops.keyAt(slot) >= 0 && firstHops.valueAt(slot) >= 0) {
+				this.nextHop.put(firstHops.keyAt(slot), GraphInfo.getEdgeNIC(firstHops.valueAt(slot)).getIndex());
+			}
+		}
+	}
+	
+	/**
+	 * Returns the nic to use to get to a router, with a search of the graph up to that router
+	 * the first time it is asked for. Only the routers this router sends towards are kept, so
+	 * the table of a router stays small however large the network
+	 * @return the nic, null if the router can not be reached
+	 */
+	private LSRNIC nextHop(int dest) {
+		int index = this.nextHop.get(dest);
+		if (index == FECTable.NONE) {
+			int edge = GraphInfo.findFirstHops(this.address, dest, new FECTable());
+			if (edge < 0) {
+				return null;
+			}
+			index = GraphInfo.getEdgeNIC(edge).getIndex();
+			this.nextHop.put(dest, index);
+		}
+		return this.nics[index];
+	}
+	
+		/**
+	 * This method returns a sequentially increasing random trace ID, so that we can
+	 * differentiate cells in the network
+	 * @return the trace id for the next cell
+	 * @since 1.0
+	 */
+	public int getTraceID(){
+		int ret = this.traceID;
+		this.traceID++;
+		return ret;
+	}
+	
+	/**
+	 * Tears down the LSP from this router to a destination, giving back its labels and bandwidth
+	 * at every router along it. The next packet for the destination sets up a new LSP
+	 * @param dest the destination of the LSP
+	 * @param DSCP the traffic class of the LSP
+	 * @since 1.0
+	 */
+	public void tearDownLSP(int dest, int DSCP) {
+		ScenarioRecorder.lspTornDown(this, dest, DSCP);
+		this.tearDown(dest, DSCP);
+	}
+	
+	/**
+	 * Stops sending on an LSP this router is an ingress of. The LSP is released and a PATHTEAR
+	 * sent along it unless sources upstream still use it
+	 */
+	private void tearDown(int dest, int DSCP) {
+		long fec = LSPState.key(dest, DSCP);
+		LSPState state = this.ingressState(fec);
+		if (state == null) {
+			return;
+		}
+		this.destDSCPtoLabel.remove(fec);
+		this.ingressTunnels.remove(fec);
+		this.leaveIngress(state);
+	}
+	
+	/**
+	 * Takes this router off an LSP as one of its sources. The LSP is released and a PATHTEAR
+	 * sent along it, behind the packets already queued on it, unless sources upstream still use it
+	 */
+	private void leaveIngress(LSPState state) {
+		state.setIngress(false);
+		int bandwidth = this.destDSCPtoBW.get(LSPState.key(state.getDest(), state.getDSCP()));
+		if (bandwidth == FECTable.NONE) {
+			bandwidth = 0;
+		}
+		NICLabelPair pair = this.leaveState(state, bandwidth, this.address);
+		if (pair != null) {
+			Packet tear = this.pathTear(state);
+			this.sentPathTear(tear);
+			pair.getNIC().sendAfterData(tear, this);
+		}
+	}
+	
+	/**
+	 * Returns a PATHTEAR for the part of an LSP downstream of this router
+	 */
+	private Packet pathTear(LSPState state) {
+		Packet tear = new Packet(state.getTunnel() == 0 ? this.address : state.getSource(), state.getDest(), state.getDSCP());
+		tear.setIsOAM(true);
+		tear.setIsPathTear(true);
+		tear.setTraceID(this.getTraceID());
+		tear.setBandwidth(state.getBandwidth());
+		tear.setTunnel(state.getTunnel());
+		return tear;
+	}
+	
+	/**
+	 * Returns the latency of the packets delivered at this router, one entry per forwarding
+	 * equivalence class, the unicast LSPs first and then the P2MP trees. Entries of different
+	 * routers for the same class can be merged
+	 * @return the latency of each class
+	 * @since 1.0
+	 */
+	public Collection<FECLatency> getLatency() {
+		if (this.treeLatency.isEmpty()) {
+			return this.latency.values();
+		}
+		ArrayList<FECLatency> all = new ArrayList<FECLatency>(this.latency.values());
+		all.addAll(this.treeLatency.values());
+		return all;
+	}
+	
+	/**
+	 * Merges the latency recorded by several routers
+	 * @param routers the routers
+	 * @return the latency of each forwarding equivalence class, ordered by source, destination and
+	 * DSCP, followed by the P2MP trees ordered by group and then the same
+	 * @since 1.0
+	 */
+	public static Collection<FECLatency> mergeLatency(List<LSR> routers) {
+		TreeMap<Long, FECLatency> merged = new TreeMap<Long, FECLatency>();
+		TreeMap<Integer, TreeMap<Long, FECLatency>> trees = new TreeMap<Integer, TreeMap<Long, FECLatency>>();
+		for (int i = 0; i < routers.size(); i ++) {
+			for (FECLatency fec : routers.get(i).getLatency()) {
+				long key = LSPState.key(fec.getSource(), fec.getDest(), fec.getDSCP());
+				TreeMap<Long, FECLatency> entries = merged;
+				if (fec.getGroup() >= 0) {
+					if (!trees.containsKey(fec.getGroup())) {
+						trees.put(fec.getGroup(), new TreeMap<Long, FECLatency>());
+					}
+					entries = trees.get(fec.getGroup());
+				}
+				if (!entries.containsKey(key)) {
+					entries.put(key, new FECLatency(fec.getSource(), fec.getDest(), fec.getDSCP(), fec.getGroup()));
+				}
+				entries.get(key).merge(fec);
+			}
+		}
+		ArrayList<FECLatency> all = new ArrayList<FECLatency>(merged.values());
+		for (TreeMap<Long, FECLatency> tree : trees.values()) {
+			all.addAll(tree.values());
+		}
+		return all;
+	}
+	
+	/**
+	 * Returns the number of LSPs this router holds state for
+	 * @return the number of live LSPs at this router
+	 * @since 1.0
+	 */
+	public int getLSPCount() {
+		return this.lspStates.size() + this.tunnels.size();
+	}
+	
+	/**
+	 * Sets the soft state timers of all routers. An LSP lives 3.5 refresh intervals without a refresh
+	 * @param refreshTicks ticks between the PATH refreshes an ingress sends
+	 * @param idleTicks ticks without traffic after which the ingress tears an LSP down
+	 * @since 1.0
+	 */
+	public static void setSoftStateTimers(int refreshTicks, int idleTicks) {
+		refreshInterval = refreshTicks;
+		lifetime = refreshTicks * 7 / 2;
+		idleTimeout = idleTicks;
+	}
+	
+	/**
+	 * Returns the number of ticks between the PATH refreshes an ingress sends
+	 * @return the refresh interval
+	 * @since 1.0
+	 */
+	public static int getRefreshInterval() {
+		return refreshInterval;
+	}
+	
+	/**
+	 * Returns the number of ticks without traffic after which the ingress tears an LSP down
+	 * @return the idle timeout
+	 * @since 1.0
+	 */
+	public static int getIdleTimeout() {
+		return idleTimeout;
+	}
+	
+	/**
+	 * Turns bundling of the PATH, RESV and RESVCONF messages of hop by hop LSPs on or off. With
+	 * bundling on, the messages a router sends to the same neighbour in one phase of a time unit
+	 * travel as one packet, and the neighbour allocates the labels of a bundle in one pass
+	 * @param bundle true to bundle
+	 * @since 1.0
+	 */
+	public static void setBundling(boolean bundle) {
+		bundling = bundle;
+	}
+	
+	/**
+	 * Returns whether signaling messages are bundled
+	 * @return true if bundling is on
+	 * @since 1.0
+	 */
+	public static boolean isBundling() {
+		return bundling;
+	}
+	
+	/**
+	 * Handles the soft state timers of all routers that are due, called once per time unit
+	 * after the clock has been advanced
+	 * @since 1.0
+	 */
+	public static void runTimers() {
+		synchronized (timers) {
+			timers.advance(SimulationClock.getTick(), expiredTimers);
+		}
+		for (int i = 0; i < expiredTimers.size(); i ++) {
+			LSPState state = expiredTimers.get(i);
+			state.getRouter().timerExpired(state);
+		}
+		expiredTimers.clear();
+	}
+	
+	/**
+	 * Returns the tick the next soft state timer of any router is due at. The network can not be
+	 * fast-forwarded past it, as the timer sends a refresh or tears an LSP down
+	 * @return the deadline, Long.MAX_VALUE if no timer is running
+	 * @since 1.0
+	 */
+	public static long nextTimerDeadline() {
+		synchronized (timers) {
+			return timers.nextDeadline();
+		}
+	}
+	
+	/**
+	 * Schedules a soft state timer, routers running as actors may call this from several threads
+	 */
+	private static void scheduleTimer(LSPState state, long deadline) {
+		synchronized (timers) {
+			timers.schedule(state, deadline);
+		}
+	}
+	
+	/**
+	 * Remembers an LSP that was set up through this router, with one user, and starts its soft
+	 * state timer
+	 * @param upstream the nic the user is reached on, null if the user is this router as a source
+	 */
+	private LSPState addState(int dest, int DSCP, int label, int bandwidth, LSRNIC upstream) {
+		boolean ingress = upstream == null;
+		LSPState state = new LSPState(this, dest, DSCP);
+		state.setLabel(label);
+		state.setBandwidth(bandwidth);
+		state.setIngress(ingress);
+		if (!ingress) {
+			state.addUpstream(upstream.getIndex());
+		}
+		long now = SimulationClock.getTick();
+		state.setLastUsed(now);
+		state.setExpires(now + lifetime);
+		if (this.lspStates.isEmpty())
+			this.lspStates = new HashMap<Long, LSPState>();
+		this.lspStates.put(state.getKey(), state);
+		labelVersion.incrementAndGet();
+		scheduleTimer(state, ingress ? now + refreshInterval : state.getExpires());
+		return state;
+	}
+	
+	/**
+	 * Merges a new source into the LSP to the same destination and class that already passes
+	 * through this router. The PATH goes no further, the RESV sent back carries the label of the
+	 * LSP so the routers upstream switch onto it. A refresh from a neighbour that is no user yet,
+	 * one still sending on a label of a state that timed out here, gets a RESV marked as a refresh,
+	 * which only switches the neighbour onto the label
+	 */
+	private void mergePath(Packet path, LSPState state, LSRNIC nic) {
+		int bandwidth = state.getDest() == this.address ? 0 : path.getBandwidth();	// the egress reserves nothing
+		if (!this.reserveBandwidth(bandwidth)) {
+			System.out.println("Error: Router " + this.address + " has no bandwidth left to merge the LSP from Router " + path.getSource());
+			return;
+		}
+		this.addUser(state, nic);
+		state.setBandwidth(state.getBandwidth() + bandwidth);
+		state.setExpires(SimulationClock.getTick() + lifetime);
+		if (trace) {
+			System.out.println("Router " + this.address + " merges the LSP from Router " + path.getSource() + " onto LSP " + state.getLabel());
+		}
+		
+		Packet resv = new Packet(state.getDest(), path.getSource(), path.getDSCP());
+		resv.setIsOAM(true);
+		resv.setIsResv(true);
+		resv.setIsRefresh(path.getIsRefresh());
+		resv.addMPLSheader(new MPLS(state.getLabel(), 0, 1));
+		resv.setTraceID(this.getTraceID());
+		resv.setBandwidth(path.getBandwidth());
+		this.sentResv(resv);
+		this.signal(nic, resv);
+	}
+	
+	/**
+	 * Counts a user of an LSP unless it is one already
+	 * @param upstream the nic the router upstream is reached on, null for this router as a source
+	 */
+	private void addUser(LSPState state, LSRNIC upstream) {
+		boolean added = upstream == null ? !state.isIngress() : state.addUpstream(upstream.getIndex());
+		if (added) {
+			state.setUsers(state.getUsers() + 1);
+		}
+	}
+	
+	/**
+	 * Takes one user off an LSP and gives back the bandwidth it reserved, but for what a tunnel of
+	 * the same ingress taking the LSP over shares. The LSP is released with its last user, the
+	 * routers downstream then lose a user as well
+	 * @param source the ingress the PATHTEAR comes from
+	 * @return the next hop the PATHTEAR has to go on to, null if the LSP is still used or this is the egress
+	 */
+	private NICLabelPair leaveState(LSPState state, int bandwidth, int source) {
+		state.setUsers(state.getUsers() - 1);
+		if (state.getUsers() > 0) {
+			bandwidth = Math.min(bandwidth, state.getBandwidth());
+			state.setBandwidth(state.getBandwidth() - bandwidth);
+			this.releaseBandwidth(Math.max(0, bandwidth - this.handOver(state, source)));
+			return null;
+		}
+		NICLabelPair pair = this.LabeltoLabel.get(state.getLabel());
+		this.releaseState(state);
+		return pair == null || pair.getNIC() == null ? null : pair;
+	}
+	
+	/**
+	 * Hands the bandwidth tunnels share with a path over to the tunnels, as the path is torn down
+	 * @param source the ingress whose tunnels take over, negative for all of them
+	 * @return the bandwidth handed over, it stays reserved
+	 */
+	private int handOver(LSPState old, int source) {
+		int handed = 0;
+		if (this.tunnels.isEmpty()) {
+			return handed;
+		}
+		for (LSPState tunnel : this.tunnels.values()) {
+			if (tunnel.getSharedWith() == old && (source < 0 || tunnel.getSource() == source)) {
+				handed += tunnel.getShared();
+				tunnel.setShared(null, 0);
+			}
+		}
+		return handed;
+	}
+	
+	/**
+	 * Adds a label to the control plane's label table, to be published to the data plane
+	 */
+	private void installLabel(int label, NICLabelPair pair) {
+		this.LabeltoLabel.put(label, pair);
+		this.publish();
+	}
+	
+	/**
+	 * Sets the branches of a P2MP label, to be published to the data plane
+	 */
+	private void installTree(int label, LabelBranches tree) {
+		if (this.treeLabels.isEmpty())
+			this.treeLabels = new TreeMap<Integer, LabelBranches>();
+		this.treeLabels.put(label, tree);
+		this.publish();
+	}
+	
+	/**
+	 * Removes a label from the control plane's label table, to be published to the data plane
+	 */
+	private void removeLabel(int label) {
+		if (this.LabeltoLabel.remove(label) != null) {
+			if (label < this.freeFrom) {
+				this.freeFrom = label;
+			}
+			this.publish();
+		}
+	}
+	
+	/**
+	 * Marks the label table to be published. The snapshot is built once for all the changes the
+	 * control plane makes in a batch of signaling, however many labels a setup storm brings
+	 */
+	private void publish() {
+		this.publishPending = true;
+	}
+	
+	/**
+	 * Publishes the label table to the data plane if it has changed since it was last published.
+	 * Called when a nic has handed over its signaling and before the data plane reads the table
+	 * @since 1.0
+	 */
+	void publishChanges() {
+		if (this.publishPending) {
+			this.publishPending = false;
+			this.forwarding = new ForwardingTable(this.LabeltoLabel, this.treeLabels);
+		}
+	}
+	
+	/**
+	 * Returns the label table for the data plane of this router to forward with, with the
+	 * changes the control plane has made so far
+	 */
+	private ForwardingTable table() {
+		this.publishChanges();
+		return this.forwarding;
+	}
+	
+	/**
+	 * Returns the label table the data plane currently forwards with. The table never changes,
+	 * the changes of a batch of signaling are published together as a new one
+	 * @return the forwarding snapshot
+	 * @since 1.0
+	 */
+	public ForwardingTable getForwardingTable() {
+		return this.forwarding;
+	}
+	
+	/**
+	 * Forgets an LSP, giving back its label and the bandwidth no tunnel taking it over shares
+	 */
+	private void releaseState(LSPState state) {
+		state.setActive(false);
+		labelVersion.incrementAndGet();
+		if (state.getTunnel() == 0) {
+			this.lspStates.remove(state.getKey());
+		}
+		else {
+			this.tunnels.remove(state.getKey());
+		}
+		this.removeLabel(state.getLabel());
+		int bandwidth = state.getBandwidth() - state.getShared();	// released before it took over, the old path keeps the shared part
+		state.setShared(null, 0);
+		this.releaseBandwidth(Math.max(0, bandwidth - this.handOver(state, -1)));
+		long fec = LSPState.key(state.getDest(), state.getDSCP());
+		if (state.isIngress() && this.destDSCPtoLabel.get(fec) == state.getLabel()) {	// not moved onto another path meanwhile
+			this.destDSCPtoLabel.remove(fec);
+			this.ingressTunnels.remove(fec);
+		}
+	}
+	
+	/**
+	 * Called when the soft state timer of an LSP is due. The ingress refreshes the LSP or tears it
+	 * down when it has been idle, every other router releases it unless it was refreshed meanwhile
+	 */
+	private void timerExpired(LSPState state) {
+		if (!state.isActive()) {	// already torn down
+			return;
+		}
+		long now = SimulationClock.getTick();
+		if (state.isIngress()) {
+			if (now - state.getLastUsed() >= idleTimeout) {
+				this.tearDown(state.getDest(), state.getDSCP());
+				if (state.isActive()) {	// still used by sources upstream, expires like any other
+					scheduleTimer(state, state.getExpires());
+				}
+				return;
+			}
+			Packet refresh = new Packet(this.address, state.getDest(), state.getDSCP());
+			refresh.setIsOAM(true);
+			refresh.setIsPath(true);
+			refresh.setIsRefresh(true);
+			refresh.setTraceID(this.getTraceID());
+			int bandwidth = this.destDSCPtoBW.get(LSPState.key(state.getDest(), state.getDSCP()));
+			if (bandwidth != FECTable.NONE) {	// reserved again where the LSP has to be set up again
+				refresh.setBandwidth(bandwidth);
+			}
+			LSRNIC first = this.nextHop(state.getDest());
+			if (state.getTunnel() != 0) {	// a tunnel is refreshed along its route
+				refresh.setTunnel(state.getTunnel());
+				refresh.setRoute(state.getRoute());
+				first = this.LabeltoLabel.get(state.getLabel()).getNIC();
+			}
+			this.sentPath(refresh);
+			this.signal(first, refresh);
+			scheduleTimer(state, now + refreshInterval);
+		}
+		else if (state.getExpires() > now) {	// refreshed since the timer was set
+			scheduleTimer(state, state.getExpires());
+		}
+		else {	// expired, the routers downstream lose a user. Upstream the next refresh sets the LSP up again
+			NICLabelPair pair = this.LabeltoLabel.get(state.getLabel());
+			this.releaseState(state);
+			if (this.displayCommands) {
+				System.out.println("Router " + this.address + " timed out the LSP to Router " + state.getDest());
+			}
+			if (pair != null && pair.getNIC() != null) {
+				Packet pathTear = this.pathTear(state);
+				this.sentPathTear(pathTear);
+				pair.getNIC().sendAfterData(pathTear, this);
+			}
+		}
+	}
+	
+	/**
+	 * Takes bandwidth from what is left for reservations
+	 * @return false if not enough bandwidth is left
+	 */
+	private synchronized boolean reserveBandwidth(int bandwidth) {
+		if (this.remainBandwidth < bandwidth) {
+			return false;
+		}
+		this.remainBandwidth -= bandwidth;
+		return true;
+	}
+	
+	/**
+	 * Gives reserved bandwidth back
+	 */
+	private synchronized void releaseBandwidth(int bandwidth) {
+		this.remainBandwidth += bandwidth;
+	}
+	
+	/**
+	 * Returns the bandwidth left for reservations
+	 * @return the remaining bandwidth
+	 * @since 1.0
+	 */
+	public synchronized int getRemainBandwidth() {
+		return this.remainBandwidth;
+	}
+	
+	/**
+	 * Sets the bandwidth left for reservations, LSPs already set up keep what they reserved
+	 * @param remainBandwidth the remaining bandwidth
+	 * @since 1.0
+	 */
+	public synchronized void setRemainBandwidth(int remainBandwidth) {
+		this.remainBandwidth = remainBandwidth;
+	}
+	
+	/**
+	 * Returns whether debug output is printed
+	 * @return true if tracing
+	 * @since 1.0
+	 */
+	public boolean getTrace() {
+		return this.trace;
+	}
+	
+	/**
+	 * Turns debug output on or off, takes effect with the next packet
+	 * @param trace true to print debug output
+	 * @since 1.0
+	 */
+	public void setTrace(boolean trace) {
+		this.trace = trace;
+	}
+	
+	/**
+	 * Returns whether the signaling messages this router sends and receives are printed
+	 * @return true if printing
+	 * @since 1.0
+	 */
+	public boolean getDisplayCommands() {
+		return this.displayCommands;
+	}
+	
+	/**
+	 * Turns printing of signaling messages on or off, takes effect with the next message
+	 * @param displayCommands true to print the messages
+	 * @since 1.0
+	 */
+	public void setDisplayCommands(boolean displayCommands) {
+		this.displayCommands = displayCommands;
+	}
+	
+	/**
+	 * Returns the number of entries in the published label table
+	 * @return the label table size
+	 * @since 1.0
+	 */
+	public int getLabelTableSize() {
+		return this.forwarding.size();
+	}
+	
+	/**
+	 * Returns whether the control plane of this router is idle: no packets wait for an LSP, no
+	 * signaling waits to be bundled or for the data ahead of it and the router is driven by ticks
+	 * @return true if only data packets keep the router busy
+	 * @since 1.0
+	 */
+	boolean isQuiet() {
+		return this.waitList.isEmpty() && !this.releasePending && !this.signalsPending && this.held.isEmpty() && this.actor == null;
+	}
+	
+	/**
+	 * Returns the trace id the next packet created here gets, without using it up
+	 * @return the next trace id
+	 * @since 1.0
+	 */
+	int peekTraceID() {
+		return this.traceID;
+	}
+	
+	/**
+	 * Repeats one tick of data plane work a number of times in bulk. The router and its nics
+	 * count what the tick delivered and sent once for every tick skipped, the packets in the nic
+	 * buffers are moved later in time, and the LSPs used in the tick stay in use
+	 * @param ticks the number of ticks skipped
+	 * @param traceIDs the trace ids the router gave out in the tick
+	 * @param delivered the data packets delivered here in the tick
+	 * @param refused the packets createPacket refused in the tick
+	 * @param latency the latency of the packets delivered in the tick, by class
+	 * @param sent the packets each nic sent in the tick, by nic index
+	 * @since 1.0
+	 */
+	void fastForward(long ticks, int traceIDs, long delivered, long refused, Collection<FECLatency> latency, long[] sent) {
+		this.traceID += (int) (traceIDs * ticks);
+		this.delivered += delivered * ticks;
+		this.refused += refused * ticks;
+		for (FECLatency fec : latency) {
+			if (fec.getGroup() < 0) {
+				this.latency.get(LSPState.key(fec.getSource(), fec.getDest(), fec.getDSCP())).merge(fec, ticks);
+			}
+			else {
+				this.treeLatency.get(LSPState.key(fec.getSource(), fec.getGroup(), fec.getDSCP())).merge(fec, ticks);
+			}
+		}
+		long now = SimulationClock.getTick();
+		for (LSPState state : this.lspStates.values()) {
+			if (state.getLastUsed() == now) {
+				state.setLastUsed(now + ticks);
+			}
+		}
+		for (LSPState state : this.tunnels.values()) {
+			if (state.getLastUsed() == now) {
+				state.setLastUsed(now + ticks);
+			}
+		}
+		for (int i = 0; i < this.nics.length; i ++) {
+			this.nics[i].fastForward(ticks, sent[i]);
+		}
+	}
+	
+	/**
+	 * Returns the number of packets waiting for an LSP to be set up. Read from another thread the
+	 * value may be a tick old
+	 * @return the wait list length
+	 * @since 1.0
+	 */
+	public int getWaitListLength() {
+		return this.waitList.size();
+	}
+	
+	/**
+	 * Adds the state of this router and its nics to a checksum of the simulation
+	 * @param checksum the checksum to add to
+	 * @since 1.0
+	 */
+	public void addToChecksum(StateChecksum checksum){
+		checksum.update(this.address);
+		checksum.update(this.traceID);
+		checksum.update(this.getRemainBandwidth());
+		checksum.update(this.delivered);
+		checksum.update(this.waitList.size());
+		checksum.update(this.lspStates.size() + this.tunnels.size());
+		for (Map.Entry<Integer, NICLabelPair> entry : this.LabeltoLabel.entrySet()) {
+			checksum.update(entry.getKey());
+			checksum.update(entry.getValue().getNIC() == null ? -1 : entry.getValue().getNIC().getIndex());
+			checksum.update(entry.getValue().getVC());
+		}
+		for (Map.Entry<Integer, LabelBranches> entry : this.treeLabels.entrySet()) {
+			checksum.update(entry.getKey());
+			checksum.update(entry.getValue().isLocal() ? 1 : 0);
+			for (int i = 0; i < entry.getValue().getBranchCount(); i ++) {
+				checksum.update(entry.getValue().getBranch(i).getNIC().getIndex());
+				checksum.update(entry.getValue().getBranch(i).getVC());
+			}
+		}
+		// the slot order of the table depends on its history, so fold its entries order independently
+		long fec = 0;
+		for (int i = 0; i < this.destDSCPtoLabel.capacity(); i ++) {
+			if (this.destDSCPtoLabel.keyAt(i) >= 0) {
+				fec += SimulationRandom.mix(this.destDSCPtoLabel.keyAt(i), this.destDSCPtoLabel.valueAt(i));
+			}
+		}
+		checksum.update(fec);
+		for (int i = 0; i < this.nics.length; i ++) {
+			this.nics[i].addToChecksum(checksum);
+		}
+	}
+	
+	/**
+	 * Outputs to the console that a PATH message has been sent
+	 * @since 1.0
+	 */
+	private void sentPath(Packet packet){
+		if(this.displayCommands && !isBundled(packet))
+		System.out.println("Router " +this.address+ " sent a PATH to Router " + packet.getDest());
+	}
+	
+	/**
+	 * Outputs to the console that a message queued for bundling went out on its own
+	 * @since 1.0
+	 */
+	private void sentSignal(Packet packet){
+		if(this.displayCommands)
+		System.out.println("Router " +this.address+ " sent a " + SignalingEvent.messageOf(packet) + " to Router " + packet.getDest());
+	}
+	
+	/**
+	 * Outputs to the console that a bundle has been sent
+	 * @since 1.0
+	 */
+	private void sentBundle(Packet bundle){
+		if(this.displayCommands)
+		System.out.println("Router " +this.address+ " sent a " + SignalingEvent.messageOf(bundle) + " of " + bundle.getBundle().length + " messages to Router " + bundle.getDest());
+	}
+	
+	/**
+	 * Outputs to the console that a bundle has been received
+	 * @since 1.0
+	 */
+	private void receivedBundle(Packet bundle){
+		if(this.displayCommands)
+		System.out.println("Router " +this.address+ " received a " + SignalingEvent.messageOf(bundle) + " of " + bundle.getBundle().length + " messages from Router " + bundle.getSource());
+	}
+	
+	/**
+	 * Outputs to the console that a PATH message has been received
+	 * @since 1.0
+	 */
+	private void receivedPath(Packet packet){
+		if(this.displayCommands && !this.inBundle)
+		System.out.println("Router " +this.address+ " received a PATH from Router " + packet.getSource());
 	}
 	
 	/**
@@ -507,7 +2456,7 @@ public class LSR{
 	 * @since 1.0
 	 */
 	private void sentResv(Packet packet){
-		if(this.displayCommands)
+		if(this.displayCommands && !isBundled(packet))
 		System.out.println("Router " +this.address+ " sent a RESV to Router " + packet.getDest());
 	}
 	
@@ -516,7 +2465,7 @@ public class LSR{
 	 * @since 1.0
 	 */
 	private void receivedResv(Packet packet){
-		if(this.displayCommands)
+		if(this.displayCommands && !this.inBundle)
 		System.out.println("Router " +this.address+ " received a RESV from Router " + packet.getSource());
 	}
 	
@@ -556,12 +2505,48 @@ public class LSR{
 		System.out.println("Router " +this.address+ " received a RESVERR from Router " + packet.getSource());
 	}
 	
+	/**
+	 * Outputs to the console that a PATHTEAR message has been sent
+	 * @since 1.0
+	 */
+	private void sentPathTear(Packet packet){
+		if(this.displayCommands)
+		System.out.println("Router " +this.address+ " sent a PATHTEAR to Router " + packet.getDest());
+	}
+	
+	/**
+	 * Outputs to the console that a PATHTEAR message has been received
+	 * @since 1.0
+	 */
+	private void receivedPathTear(Packet packet){
+		if(this.displayCommands)
+		System.out.println("Router " +this.address+ " received a PATHTEAR from Router " + packet.getSource());
+	}
+	
+	/**
+	 * Outputs to the console that a RESVTEAR message has been sent
+	 * @since 1.0
+	 */
+	private void sentResvTear(Packet packet){
+		if(this.displayCommands)
+		System.out.println("Router " +this.address+ " sent a RESVTEAR to Router " + packet.getDest());
+	}
+	
+	/**
+	 * Outputs to the console that a RESVTEAR message has been received
+	 * @since 1.0
+	 */
+	private void receivedResvTear(Packet packet){
+		if(this.displayCommands)
+		System.out.println("Router " +this.address+ " received a RESVTEAR from Router " + packet.getSource());
+	}
+	
 	/**
 	 * Outputs to the console that a RESVCONF message has been sent
 	 * @since 1.0
 	 */
 	private void sentResvConf(Packet packet){
-		if(this.displayCommands)
+		if(this.displayCommands && !isBundled(packet))
 		System.out.println("Router " +this.address+ " sent a RESVCONF to Router " + packet.getDest());
 	}
 	
@@ -570,7 +2555,7 @@ public class LSR{
 	 * @since 1.0
 	 */
 	private void receivedResvConf(Packet packet){
-		if(this.displayCommands)
+		if(this.displayCommands && !this.inBundle)
 		System.out.println("Router " +this.address+ " received a RESVCONF from Router " + packet.getSource());
 	}
 	
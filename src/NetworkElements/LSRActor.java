@@ -0,0 +1,86 @@
+package NetworkElements;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import DataTypes.*;
+
+/**
+ * LSRActor - runs one router as an actor in free running mode
+ *
+ * Nics post the packets they receive to the router's mailbox instead of their input buffer.
+ * Whenever the mailbox has packets the actor is scheduled on the runtime's pool, hands the
+ * packets to the router one after another and then sends everything the router queued on its
+ * nics. At most one thread runs an actor at a time, so the router's state needs no locks.
+ */
+public class LSRActor implements Runnable {
+	private LSR router; // the router this actor runs
+	private ActorRuntime runtime; // the pool and counters shared by all actors
+	private Mailbox mailbox; // packets waiting for the router
+	private AtomicBoolean scheduled = new AtomicBoolean(false); // is the actor queued or running on the pool?
+	private AtomicLong rejected = new AtomicLong(); // packets dropped because the mailbox was full
+
+	/**
+	 * Creates the actor for a router and attaches it to the router
+	 * @param router the router to run
+	 * @param runtime the runtime the actor runs on
+	 * @param capacity the size of the mailbox
+	 * @since 1.0
+	 */
+	public LSRActor(LSR router, ActorRuntime runtime, int capacity){
+		this.router = router;
+		this.runtime = runtime;
+		this.mailbox = new Mailbox(capacity);
+		router.setActor(this);
+	}
+
+	/**
+	 * Posts a packet to the router, may be called from any thread
+	 * @param packet the packet
+	 * @param nic the nic the packet arrived on, null if it was created at the router
+	 * @return false if the mailbox was full and the packet was dropped
+	 * @since 1.0
+	 */
+	public boolean post(Packet packet, LSRNIC nic){
+		this.runtime.posted();
+		if (!this.mailbox.offer(packet, nic)) {
+			this.rejected.incrementAndGet();
+			PacketTracer.dropped(packet, this.router.getAddress(), "mailbox full");
+			this.runtime.processed(1);
+			return false;
+		}
+		this.schedule();
+		return true;
+	}
+
+	/**
+	 * Returns the number of packets dropped because the mailbox was full
+	 * @return the number of rejected packets
+	 * @since 1.0
+	 */
+	public long getRejected(){
+		return this.rejected.get();
+	}
+
+	/**
+	 * Handles a batch of packets from the mailbox, called by the pool
+	 * @since 1.0
+	 */
+	public void run(){
+		int handled = this.mailbox.drainTo(this.router, this.runtime.getBatchSize());
+		this.router.flushPackets();
+		this.scheduled.set(false);
+		// count the batch only after its packets are on the links, so quiescence can not be seen early
+		this.runtime.processed(handled);
+		if (!this.mailbox.isEmpty())
+			this.schedule();
+	}
+
+	/**
+	 * Queues the actor on the pool unless it is already queued or running
+	 */
+	private void schedule(){
+		if (this.scheduled.compareAndSet(false, true))
+			this.runtime.execute(this);
+	}
+}
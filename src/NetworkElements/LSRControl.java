@@ -0,0 +1,134 @@
+package NetworkElements;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * LSRControl - exposes the settings of a router as a JMX MBean
+ *
+ * Each router is registered as NetworkElements:type=LSR,address=a and each of its nics as
+ * NetworkElements:type=LSRNIC,router=a,nic=i, so a JMX console such as jconsole can tune
+ * buffering and switch console output on and off while a long run goes on. The sizes are
+ * read without stopping the simulation, so they may be a tick old.
+ */
+public class LSRControl implements LSRControlMBean {
+	private LSR router; // the router managed
+
+	/**
+	 * Creates the MBean of a router
+	 * @param router the router to manage
+	 * @since 1.0
+	 */
+	public LSRControl(LSR router){
+		this.router = router;
+	}
+
+	/**
+	 * Registers the MBeans of routers and their nics with the platform MBean server
+	 * @param routers the routers to register
+	 * @since 1.0
+	 */
+	public static void register(List<LSR> routers){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try{
+			for (int i = 0; i < routers.size(); i ++) {
+				LSR router = routers.get(i);
+				server.registerMBean(new LSRControl(router), nameOf(router));
+				for (int j = 0; j < router.getNICCount(); j ++)
+					server.registerMBean(new LSRNICControl(router.getNIC(j)), nameOf(router.getNIC(j)));
+			}
+		}
+		catch(JMException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Removes the MBeans of routers and their nics from the platform MBean server
+	 * @param routers the routers to unregister
+	 * @since 1.0
+	 */
+	public static void unregister(List<LSR> routers){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try{
+			for (int i = 0; i < routers.size(); i ++) {
+				LSR router = routers.get(i);
+				if (server.isRegistered(nameOf(router)))
+					server.unregisterMBean(nameOf(router));
+				for (int j = 0; j < router.getNICCount(); j ++) {
+					if (server.isRegistered(nameOf(router.getNIC(j))))
+						server.unregisterMBean(nameOf(router.getNIC(j)));
+				}
+			}
+		}
+		catch(JMException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the name a router is registered under
+	 */
+	private static ObjectName nameOf(LSR router) throws JMException{
+		return new ObjectName("NetworkElements:type=LSR,address=" + router.getAddress());
+	}
+
+	/**
+	 * Returns the name a nic is registered under
+	 */
+	private static ObjectName nameOf(LSRNIC nic) throws JMException{
+		return new ObjectName("NetworkElements:type=LSRNIC,router=" + nic.getParent().getAddress() + ",nic=" + nic.getIndex());
+	}
+
+	public int getAddress(){
+		return this.router.getAddress();
+	}
+
+	public int getRemainBandwidth(){
+		return this.router.getRemainBandwidth();
+	}
+
+	public void setRemainBandwidth(int remainBandwidth){
+		this.router.setRemainBandwidth(remainBandwidth);
+	}
+
+	public boolean getTrace(){
+		return this.router.getTrace();
+	}
+
+	public void setTrace(boolean trace){
+		this.router.setTrace(trace);
+	}
+
+	public boolean getDisplayCommands(){
+		return this.router.getDisplayCommands();
+	}
+
+	public void setDisplayCommands(boolean displayCommands){
+		this.router.setDisplayCommands(displayCommands);
+	}
+
+	public int getQueueDepth(){
+		return this.router.getOutputQueueLength();
+	}
+
+	public int getLabelTableSize(){
+		return this.router.getLabelTableSize();
+	}
+
+	public int getWaitListLength(){
+		return this.router.getWaitListLength();
+	}
+
+	public int getLSPCount(){
+		return this.router.getLSPCount();
+	}
+
+	public long getDelivered(){
+		return this.router.getDelivered();
+	}
+}
@@ -0,0 +1,30 @@
+package NetworkElements;
+
+/**
+ * LSRControlMBean - the management interface of a router
+ */
+public interface LSRControlMBean {
+	public int getAddress();
+
+	public int getRemainBandwidth();
+
+	public void setRemainBandwidth(int remainBandwidth);
+
+	public boolean getTrace();
+
+	public void setTrace(boolean trace);
+
+	public boolean getDisplayCommands();
+
+	public void setDisplayCommands(boolean displayCommands);
+
+	public int getQueueDepth();
+
+	public int getLabelTableSize();
+
+	public int getWaitListLength();
+
+	public int getLSPCount();
+
+	public long getDelivered();
+}
@@ -6,13 +6,52 @@ import java.util.*;
 
 public class LSRNIC {
 	private LSR parent; // The router or computer that this nic is in
+	private int index; // The position of this nic in its router
 	private OtoOLink link; // The link connected to this nic
-	private boolean trace = false; // should we print out debug statements?
+	private volatile boolean trace = false; // should we print out debug statements?
 	private ArrayList<Packet> inputBuffer = new ArrayList<Packet>(); // Where packets are put between the parent and nic
 	private ArrayList<Packet> outputBuffer = new ArrayList<Packet>(); // Where packets are put to be sent
-	private int maximumBuffer = 100; // the maximum number of packets in the output buffer
-	private int startDropAt = 20; // the minimum number of packets in the output buffer before we start dropping packets
-	private int linerate = 50;  //number of packets we can send during each time interval
+	private ArrayList<Packet> controlInput = new ArrayList<Packet>(); // OAM packets received, handled before any data
+	private ArrayList<Packet> controlOutput = new ArrayList<Packet>(); // OAM packets to be sent, sent before any data and never dropped by RED
+	private int maximumControlBuffer = 1000; // the maximum number of packets in the control output queue
+	private long controlDropped = 0; // OAM packets dropped because the control output queue was full
+	private List<Packet> fenced = Collections.emptyList(); // OAM packets waiting for the data queued before them to be sent
+	private List<Long> fencedAt = Collections.emptyList(); // for each of them, the data packets sent once that data is gone
+	private long sentData = 0; // data packets moved from the output buffer to the line so far
+	// the buffer settings can be changed over JMX while the simulation runs
+	private volatile int maximumBuffer = 100; // the maximum number of packets in the output buffer
+	private volatile int startDropAt = 20; // the minimum number of packets in the output buffer before we start dropping packets
+	private volatile int linerate = 50;  //number of packets we can send during each time interval
+	private Random random = null; // this nic's random stream, used by RED, created at the first drop decision
+	private long dropped = 0; // number of packets dropped by RED
+	private int peakBuffer = 0; // the largest number of packets held in the output buffer so far
+	private int arrivalPeak = 0; // the longest output buffer RED has seen a packet arrive at since takeArrivalPeak
+	private boolean lossless = false; // use credit based flow control instead of RED?
+	private int credits = 0; // in lossless mode, how many packets the nic at the other end of the link can still take
+	private PcapWriter ingressCapture = null; // where packets received from the link are captured, null if not capturing
+	private PcapWriter egressCapture = null; // where packets sent onto the link are captured, null if not capturing
+	private double fluidArrival = 0; // fluid packets per time unit offered to the output buffer this time unit
+	private double fluidBacklog = 0; // fluid packets waiting in the output buffer, counted by RED like real packets
+	private double fluidPass = 1; // fraction of the fluid offered last time unit that was sent on
+	private double fluidDropped = 0; // fluid packets dropped by RED so far
+	private double packetCredit = 0; // line capacity left for real packets after the fluid was served
+	private boolean fluidActive = false; // does fluid share the line this time unit?
+	private int serial; // the order this nic was created in, active nics are handled in this order
+	private boolean isSending = false; // is this nic in the sending set?
+	private boolean isReceiving = false; // is this nic in the receiving set?
+	private boolean isControlReceiving = false; // is this nic in the control receiving set?
+	
+	// the nics with packets in their output or input buffer, only these are visited each time unit
+	private static ArrayList<LSRNIC> sending = new ArrayList<LSRNIC>();
+	private static ArrayList<LSRNIC> receiving = new ArrayList<LSRNIC>();
+	private static ArrayList<LSRNIC> controlReceiving = new ArrayList<LSRNIC>(); // the nics with OAM packets received
+	private static ArrayList<LSRNIC> spare = new ArrayList<LSRNIC>(); // reused to swap out the set being handled
+	private static int created = 0; // number of nics created so far
+	private static final Comparator<LSRNIC> CREATION_ORDER = new Comparator<LSRNIC>() {
+		public int compare(LSRNIC a, LSRNIC b) {
+			return a.serial < b.serial ? -1 : (a.serial == b.serial ? 0 : 1);
+		}
+	};
 	
 	/**
 	 * Default constructor for an ATM NIC
@@ -21,7 +60,12 @@ public class LSRNIC {
 	 */
 	public LSRNIC(LSR parent){
 		this.parent = parent;
+		this.index = parent.getNICCount();
+		synchronized (LSRNIC.class) {
+			this.serial = created++;
+		}
 		this.parent.addNIC(this);
+		ScenarioRecorder.nicCreated(this);
 	}
 	
 	/**
@@ -43,11 +87,76 @@ public class LSRNIC {
 		}		
 		
 		//parent.sendPacket(currentPacket);
-		this.runRED(currentPacket);
+		if(currentPacket.getIsOAM()){	// signaling has its own queue, so data congestion never drops it
+			if(this.controlOutput.size() < this.maximumControlBuffer)
+				this.controlOutput.add(currentPacket);
+			else {
+				this.controlDropped++;
+				if(this.trace)
+					System.out.println("The OAM packet " + currentPacket.getTraceID() + " was dropped, the control queue is full");
+			}
+			if(!this.isSending)
+				this.activateSending();
+			return;
+		}
+		currentPacket.markEnqueued(SimulationClock.getTick());
+		if(this.lossless){	// the router only forwards to us when there is room, never drop
+			this.outputBuffer.add(currentPacket);
+			this.peakBuffer = Math.max(this.peakBuffer, this.outputBuffer.size());
+			if(!this.isSending)
+				this.activateSending();
+		}
+		else
+			this.runRED(currentPacket);
 		
 	}
 	
 	
+	/**
+	 * Sends an OAM packet behind the data packets already in the output buffer. It goes on the
+	 * control queue once they have been sent, so a teardown never overtakes the packets on the
+	 * LSP it releases
+	 * @param currentPacket the OAM packet
+	 * @param parent the router the packet came from
+	 * @since 1.0
+	 */
+	public void sendAfterData(Packet currentPacket, LSR parent){
+		if(this.outputBuffer.isEmpty() && this.fenced.isEmpty()){
+			this.sendPacket(currentPacket, parent);
+			return;
+		}
+		if(this.fenced.isEmpty()){	// lists of its own only while something waits, most nics never hold anything back
+			this.fenced = new ArrayList<Packet>();
+			this.fencedAt = new ArrayList<Long>();
+		}
+		this.fenced.add(currentPacket);
+		this.fencedAt.add(this.sentData + this.outputBuffer.size());
+		if(!this.isSending)
+			this.activateSending();
+	}
+	
+	/**
+	 * Places a batch of packets in the output buffer, with the same effect as calling sendPacket
+	 * for each of them in order
+	 * @param packets the packets to be sent
+	 * @param parent the router the packets came from
+	 * @since 1.0
+	 */
+	public void sendPacketBatch(ArrayList<Packet> packets, LSR parent){
+		if(this.trace || this.lossless){	// the rare cases go through the single packet path
+			for(int i=0; i<packets.size(); i++)
+				this.sendPacket(packets.get(i), parent);
+			return;
+		}
+		long tick = SimulationClock.getTick();
+		this.outputBuffer.ensureCapacity(this.outputBuffer.size() + packets.size());
+		for(int i=0; i<packets.size(); i++){
+			Packet currentPacket = packets.get(i);
+			currentPacket.markEnqueued(tick);
+			this.runRED(currentPacket);
+		}
+	}
+	
 	/**
 	 * Runs Random early detection on the packet
 	 * @param currentPacket the packet to be added/dropped from the queue
@@ -56,36 +165,139 @@ public class LSRNIC {
 	private void runRED(Packet currentPacket){
 			
 		boolean packetDropped = false;
-		double dropProbability = 0.0;
-		
-		if (outputBuffer.size() > this.startDropAt) {
-			if (outputBuffer.size() < this.maximumBuffer) {
-				dropProbability = (outputBuffer.size() - this.startDropAt) 
-						/ (double)(this.maximumBuffer - this.startDropAt);
-			}
-			else {
-				dropProbability = 1;
-			}
-		}
+		if (this.outputBuffer.size() > this.arrivalPeak)
+			this.arrivalPeak = this.outputBuffer.size();
+		double dropProbability = this.dropProbability(outputBuffer.size() + this.fluidBacklog);
 		
 		if (dropProbability > 0) {
-			double r = Math.random() * 1.0 / dropProbability;
+			if (this.random == null)
+				this.random = SimulationRandom.forNIC(this.parent.getAddress(), this.index);
+			double r = this.random.nextDouble() * 1.0 / dropProbability;
 			if (r <= 1.0) {
 				packetDropped = true;
 			}
 		}
 		
 		// Output to the console what happened
-		if(packetDropped)
+		if(packetDropped) {
+			this.dropped++;
+			if(REDDropEvent.PROBE.isEnabled()){
+				REDDropEvent event = new REDDropEvent();
+				event.router = this.parent.getAddress();
+				event.nic = this.index;
+				event.queueLength = this.outputBuffer.size();
+				event.probability = dropProbability;
+				event.traceID = currentPacket.getTraceID();
+				event.tick = SimulationClock.getTick();
+				event.commit();
+			}
 			System.out.println("The packet " + currentPacket.getTraceID() + " was dropped with probability " + dropProbability);
+			PacketTracer.dropped(currentPacket, this.parent.getAddress(), "RED on nic " + this.index);
+		}
 		else {
 			outputBuffer.add(currentPacket);
+			this.peakBuffer = Math.max(this.peakBuffer, this.outputBuffer.size());
+			if(!this.isSending)
+				this.activateSending();
 			if(this.trace)
 				System.out.println("The packet " + currentPacket.getTraceID() + " was added to the output queue");
 		}
 	}
 	
 	
+	/**
+	 * Returns the probability RED drops a packet arriving at a queue
+	 * @param queue the number of packets in the output buffer, real and fluid
+	 * @return the drop probability
+	 */
+	private double dropProbability(double queue){
+		double dropProbability = 0.0;
+		int startDropAt = this.startDropAt, maximumBuffer = this.maximumBuffer;	// read once, they may change meanwhile
+		
+		if (queue > startDropAt) {
+			if (queue < maximumBuffer) {
+				dropProbability = (queue - startDropAt) 
+						/ (double)(maximumBuffer - startDropAt);
+			}
+			else {
+				dropProbability = 1;
+			}
+		}
+		return dropProbability;
+	}
+	
+	/**
+	 * Offers fluid traffic to this nic for the current time unit
+	 * @param rate the fluid packets per time unit
+	 * @since 1.0
+	 */
+	public void addFluid(double rate){
+		this.fluidArrival += rate;
+	}
+	
+	/**
+	 * Serves the fluid offered this time unit. RED drops the same fraction of the fluid as it would
+	 * of real packets arriving at the queue, real and fluid packets share the line rate in proportion
+	 * to what each has waiting, and the capacity the fluid takes is not available to sendPackets
+	 * @return false once this nic has no fluid left to serve
+	 * @since 1.0
+	 */
+	public boolean runFluid(){
+		double dropProbability = this.dropProbability(this.outputBuffer.size() + this.fluidBacklog);
+		double admitted = this.fluidArrival * (1 - dropProbability);
+		this.fluidDropped += this.fluidArrival - admitted;
+		this.fluidBacklog += admitted;
+		double waiting = this.fluidBacklog + this.outputBuffer.size();
+		double served = waiting > 0 ? Math.min(this.fluidBacklog, this.linerate * this.fluidBacklog / waiting) : 0;
+		this.fluidBacklog -= served;
+		if (this.fluidBacklog < 1e-9)
+			this.fluidBacklog = 0;
+		this.fluidPass = this.fluidArrival > 0 ? Math.min(1, served / this.fluidArrival) : 1;
+		this.packetCredit = Math.min(this.linerate, this.packetCredit + this.linerate - served);
+		if (this.link != null)
+			this.link.carryFluid(this, served);
+		this.fluidArrival = 0;
+		this.fluidActive = served > 0 || this.fluidBacklog > 0;
+		return this.fluidActive;
+	}
+	
+	/**
+	 * Returns the fraction of the fluid offered last time unit that was sent on, flows scale their
+	 * rate by it for the next hop
+	 * @return the fraction passed on, 1 if no fluid was offered
+	 * @since 1.0
+	 */
+	public double getFluidPass(){
+		return this.fluidPass;
+	}
+	
+	/**
+	 * Returns the fluid packets waiting in the output buffer
+	 * @return the fluid backlog
+	 * @since 1.0
+	 */
+	public double getFluidBacklog(){
+		return this.fluidBacklog;
+	}
+	
+	/**
+	 * Returns the fluid packets RED has dropped at this nic
+	 * @return the fluid dropped so far
+	 * @since 1.0
+	 */
+	public double getFluidDropped(){
+		return this.fluidDropped;
+	}
+	
+	/**
+	 * Returns the link connected to this nic
+	 * @return the link, null if not connected
+	 * @since 1.0
+	 */
+	public OtoOLink getLink(){
+		return this.link;
+	}
+	
 	/**
 	 * This method connects a link to this nic
 	 * @param link the link to connect to this nic
@@ -101,37 +313,576 @@ public class LSRNIC {
 	 * @since 1.0
 	 */
 	public void receivePacket(Packet currentPacket){
+		if(this.ingressCapture!=null)
+			this.ingressCapture.capture(currentPacket, this.parent.getAddress());
+		LSRActor actor = this.parent.getActor();
+		if(actor!=null){	// in actor mode the router takes packets straight from its mailbox
+			actor.post(currentPacket, this);
+			return;
+		}
+		if(currentPacket.getIsOAM()){
+			this.controlInput.add(currentPacket);
+			if(!this.isControlReceiving)
+				this.activateControlReceiving();
+			return;
+		}
 		this.inputBuffer.add(currentPacket);
+		if(!this.isReceiving)
+			this.activateReceiving();
 		//this.runRED(currentPacket);
 	}
 	
+	/**
+	 * Adds this nic to the control receiving set
+	 */
+	private void activateControlReceiving(){
+		synchronized (LSRNIC.class) {
+			this.isControlReceiving = true;
+			controlReceiving.add(this);
+		}
+	}
+	
+	/**
+	 * Runs the control plane for one time unit: hands the OAM packets every nic has received to its
+	 * router, in the order the nics were created. Called before recieveActivePackets so signaling is
+	 * never held up by data. Teardowns are held until recieveActivePackets has forwarded the data,
+	 * so they never release a label before the packets that arrived with them have used it
+	 * @return the number of nics visited
+	 * @since 1.0
+	 */
+	public static int recieveActiveControl(){
+		ArrayList<LSRNIC> active = controlReceiving;
+		controlReceiving = new ArrayList<LSRNIC>();
+		Collections.sort(active, CREATION_ORDER);
+		for(int i=0; i<active.size(); i++){
+			LSRNIC nic = active.get(i);
+			nic.isControlReceiving = false;
+			nic.recieveControlPackets();
+		}
+		LSR.sendBundles();
+		return active.size();
+	}
+	
+	/**
+	 * Adds this nic to the sending set. Actors of different routers may do this at the same time
+	 */
+	private void activateSending(){
+		synchronized (LSRNIC.class) {
+			this.isSending = true;
+			sending.add(this);
+		}
+	}
+	
+	/**
+	 * Adds this nic to the receiving set
+	 */
+	private void activateReceiving(){
+		synchronized (LSRNIC.class) {
+			this.isReceiving = true;
+			receiving.add(this);
+		}
+	}
+	
+	/**
+	 * Makes every nic with packets in its output buffer move them across its link, in the order
+	 * the nics were created. Nics whose output buffer drains leave the sending set, so a time unit
+	 * costs time in proportion to the busy nics rather than to all nics
+	 * @return the number of nics visited
+	 * @since 1.0
+	 */
+	public static int sendActivePackets(){
+		TickPhaseEvent event = TickPhaseEvent.PROBE.isEnabled() ? new TickPhaseEvent() : null;
+		if(event!=null)
+			event.begin();
+		LSR.sendBundles();	// the signaling queued for bundling since the last phase
+		ArrayList<LSRNIC> active = sending;
+		sending = spare;
+		Collections.sort(active, CREATION_ORDER);
+		int moved = 0;
+		for(int i=0; i<active.size(); i++){
+			LSRNIC nic = active.get(i);
+			int queued = nic.outputBuffer.size();
+			nic.isSending = false;
+			nic.sendPackets();
+			moved += queued - nic.outputBuffer.size();
+			if((!nic.outputBuffer.isEmpty() || !nic.controlOutput.isEmpty() || !nic.fenced.isEmpty()) && !nic.isSending)
+				nic.activateSending();
+		}
+		int visited = active.size();
+		if(event!=null){	// reported for all routers at once
+			event.end();
+			event.router = -1;
+			event.phase = "send";
+			event.packets = moved;
+			event.tick = SimulationClock.getTick();
+			event.commit();
+		}
+		active.clear();
+		spare = active;
+		return visited;
+	}
+	
+	/**
+	 * Makes every nic with packets in its input buffer hand them to its router, in the order the
+	 * nics were created so each router handles its nics in the same order as recievePackets.
+	 * Nics whose input buffer drains leave the receiving set
+	 * @return the number of nics visited
+	 * @since 1.0
+	 */
+	public static int recieveActivePackets(){
+		TickPhaseEvent event = TickPhaseEvent.PROBE.isEnabled() ? new TickPhaseEvent() : null;
+		if(event!=null)
+			event.begin();
+		LSR.releaseWaitingPackets();	// the control plane may have brought up LSPs packets are waiting for
+		ArrayList<LSRNIC> active = receiving;
+		receiving = spare;
+		Collections.sort(active, CREATION_ORDER);
+		int moved = 0;
+		for(int i=0; i<active.size(); i++){
+			LSRNIC nic = active.get(i);
+			int queued = nic.inputBuffer.size();
+			nic.isReceiving = false;
+			nic.recievePackets();
+			moved += queued - nic.inputBuffer.size();
+			if(!nic.inputBuffer.isEmpty() && !nic.isReceiving)
+				nic.activateReceiving();
+		}
+		LSR.receiveHeldControl();	// the teardowns that arrived with the data forwarded
+		LSR.sendBundles();	// released wait lists may have started setting up LSPs
+		int visited = active.size();
+		if(event!=null){	// reported for all routers at once
+			event.end();
+			event.router = -1;
+			event.phase = "receive";
+			event.packets = moved;
+			event.tick = SimulationClock.getTick();
+			event.commit();
+		}
+		active.clear();
+		spare = active;
+		return visited;
+	}
+	
 	/**
 	 * Moves the packets from the output buffer to the line (then they get moved to the next nic's input buffer)
 	 * @since 1.0
 	 */
 	public void sendPackets(){
-		for(int i=0; i<Math.min(linerate,this.outputBuffer.size()); i++)
+		int linerate = this.linerate;
+		if(!this.controlOutput.isEmpty()){	// signaling goes first and takes its share of the line
+			int control = Math.min(linerate, this.controlOutput.size());
+			for(int i=0; i<control; i++){
+				if(this.egressCapture!=null)
+					this.egressCapture.capture(this.controlOutput.get(i), this.parent.getAddress());
+				this.link.sendPacket(this.controlOutput.get(i), this);
+			}
+			this.controlOutput.subList(0, control).clear();
+			linerate -= control;
+		}
+		int count = Math.min(linerate,this.outputBuffer.size());
+		if(this.fluidActive){	// the fluid took part of the line
+			count = Math.min(count, (int) this.packetCredit);
+			this.packetCredit -= count;
+		}
+		if(this.lossless){	// only send what the other end has advertised room for
+			count = Math.min(count, this.credits);
+			this.credits -= count;
+		}
+		for(int i=0; i<count; i++){
+			if(this.egressCapture!=null)
+				this.egressCapture.capture(this.outputBuffer.get(i), this.parent.getAddress());
+			this.outputBuffer.get(i).markDequeued(SimulationClock.getTick());
 			this.link.sendPacket(this.outputBuffer.get(i), this);
+		}
 		ArrayList<Packet> temp = new ArrayList<Packet>();
-		for(int i=Math.min(linerate,this.outputBuffer.size()); i<this.outputBuffer.size(); i++)
+		for(int i=count; i<this.outputBuffer.size(); i++)
 			temp.add((Packet)this.outputBuffer.get(i));
 		this.outputBuffer.clear();
 		this.outputBuffer=temp;
+		this.sentData += count;
+		if(!this.fenced.isEmpty())
+			this.releaseFenced();
 	}
 	
 	/**
-	 * Moves packets from this nics input buffer to its output buffer
+	 * Moves the OAM packets whose data has been sent to the control queue, they go out next time unit
+	 */
+	private void releaseFenced(){
+		int released = 0;
+		while(released < this.fenced.size() && this.fencedAt.get(released) <= this.sentData){
+			this.sendPacket(this.fenced.get(released), this.parent);
+			released++;
+		}
+		if(released == this.fenced.size()){
+			this.fenced = Collections.emptyList();
+			this.fencedAt = Collections.emptyList();
+		}
+		else if(released > 0){
+			this.fenced.subList(0, released).clear();
+			this.fencedAt.subList(0, released).clear();
+		}
+	}
+	
+	/**
+	 * Moves every packet in the output buffer to the line, regardless of the line rate
+	 * @since 1.0
+	 */
+	public void flushPackets(){
+		for(int i=0; i<this.controlOutput.size(); i++){
+			if(this.egressCapture!=null)
+				this.egressCapture.capture(this.controlOutput.get(i), this.parent.getAddress());
+			this.link.sendPacket(this.controlOutput.get(i), this);
+		}
+		this.controlOutput.clear();
+		for(int i=0; i<this.outputBuffer.size(); i++){
+			if(this.egressCapture!=null)
+				this.egressCapture.capture(this.outputBuffer.get(i), this.parent.getAddress());
+			this.outputBuffer.get(i).markDequeued(SimulationClock.getTick());
+			this.link.sendPacket(this.outputBuffer.get(i), this);
+		}
+		this.sentData += this.outputBuffer.size();
+		this.outputBuffer.clear();
+		for(int i=0; i<this.fenced.size(); i++){	// all the data went ahead of them
+			if(this.egressCapture!=null)
+				this.egressCapture.capture(this.fenced.get(i), this.parent.getAddress());
+			this.link.sendPacket(this.fenced.get(i), this);
+		}
+		this.fenced = Collections.emptyList();
+		this.fencedAt = Collections.emptyList();
+	}
+	
+	/**
+	 * Hands the OAM packets received to the router. A teardown and the packets behind it are held
+	 * by the router until the data of the time unit has been forwarded
+	 * @since 1.0
+	 */
+	public void recieveControlPackets(){
+		if(this.controlInput.isEmpty())
+			return;
+		ArrayList<Packet> control = this.controlInput;
+		this.controlInput = new ArrayList<Packet>();
+		boolean holding = false;
+		for(int i=0; i<control.size(); i++){
+			holding = holding || LSR.isTeardown(control.get(i));
+			if(holding)
+				this.parent.holdControl(control.get(i), this);
+			else
+				this.parent.receivePacket(control.get(i), this);
+		}
+		this.parent.publishChanges();	// the labels the batch brought go to the data plane at once
+	}
+	
+	/**
+	 * Moves packets from this nics input buffer to its output buffer, the OAM packets first
 	 * @since 1.0
 	 */
 	public void recievePackets(){
-		for(int i=0; i<this.inputBuffer.size(); i++)
-			this.parent.receivePacket(this.inputBuffer.get(i), this);
+		this.recieveControlPackets();
+		if(this.lossless){
+			this.recievePacketsLossless();
+			return;
+		}
+		this.parent.receivePacketBatch(this.inputBuffer, this);
 		this.inputBuffer.clear();
 	}
 	
+	/**
+	 * Moves packets from the input buffer to the router while the nics they are forwarded to have
+	 * room. A data packet that can not move blocks the data packets behind it, OAM packets are
+	 * always handled so signaling never waits for data. The space freed in the input buffer is
+	 * advertised to the other end of the link as credits
+	 */
+	private void recievePacketsLossless(){
+		ArrayList<Packet> blocked = new ArrayList<Packet>();
+		for(int i=0; i<this.inputBuffer.size(); i++){
+			Packet currentPacket = this.inputBuffer.get(i);
+			if(!currentPacket.getIsOAM() && (!blocked.isEmpty() || !this.parent.canForward(currentPacket, this)))
+				blocked.add(currentPacket);
+			else
+				this.parent.receivePacket(currentPacket, this);
+		}
+		int freed = this.inputBuffer.size() - blocked.size();
+		this.inputBuffer = blocked;
+		if(freed > 0)
+			this.link.returnCredits(this, freed);
+	}
+	
+	/**
+	 * Returns whether this nic only carries data: no OAM packets wait in either direction and no
+	 * fluid shares the line
+	 * @return true if the nic has no control work
+	 * @since 1.0
+	 */
+	boolean isQuiet(){
+		return this.controlOutput.isEmpty() && this.controlInput.isEmpty() && this.fenced.isEmpty() && !this.fluidActive;
+	}
+	
+	/**
+	 * Returns the longest output buffer RED has seen a packet arrive at since the last call, and
+	 * starts over. While it stays at or below the RED threshold no packet can be dropped
+	 * @return the longest buffer, 0 if no packet arrived
+	 * @since 1.0
+	 */
+	int takeArrivalPeak(){
+		int peak = this.arrivalPeak;
+		this.arrivalPeak = 0;
+		return peak;
+	}
+	
+	/**
+	 * Repeats one tick of sending a number of times in bulk. The buffers hold the same number of
+	 * packets after every tick, so only the link counter moves and the packets held are moved
+	 * later in time
+	 * @param ticks the number of ticks skipped
+	 * @param sent the packets the nic sent in the tick
+	 * @since 1.0
+	 */
+	void fastForward(long ticks, long sent){
+		for(int i=0; i<this.outputBuffer.size(); i++)
+			this.outputBuffer.get(i).shiftTiming(ticks);
+		for(int i=0; i<this.inputBuffer.size(); i++)
+			this.inputBuffer.get(i).shiftTiming(ticks);
+		if(this.link!=null)
+			this.link.countPackets(this, sent * ticks);
+	}
+	
+	/**
+	 * Switches this nic and the nic at the other end of its link between RED and credit based
+	 * flow control. Credits are only given back by a lossless receiver, so both ends of a link
+	 * always use the same mode. In lossless mode a nic starts with as many credits as the nic at
+	 * the other end of the link can buffer. A nic whose other end is in another JVM gets no
+	 * credits back, so it is never held back
+	 * @param lossless true for credit based flow control, false for RED
+	 * @since 1.0
+	 */
+	public void setLossless(boolean lossless) {
+		LSRNIC peer = this.link == null ? null : this.link.getPeer(this);
+		this.configureLossless(lossless, peer);
+		if(peer != null)
+			peer.configureLossless(lossless, this);
+	}
+	
+	/**
+	 * Sets the flow control of this nic alone, with the credits the nic at the other end has room for
+	 */
+	private void configureLossless(boolean lossless, LSRNIC peer) {
+		this.lossless = lossless;
+		this.credits = peer == null ? Integer.MAX_VALUE : peer.maximumBuffer - peer.inputBuffer.size();
+	}
+	
+	/**
+	 * Returns whether this nic uses credit based flow control
+	 * @return true in lossless mode
+	 * @since 1.0
+	 */
+	public boolean isLossless() {
+		return this.lossless;
+	}
+	
+	/**
+	 * Returns whether the output buffer can take another packet without exceeding its size
+	 * @return true if there is room in the output buffer
+	 * @since 1.0
+	 */
+	public boolean hasRoom() {
+		return this.outputBuffer.size() < this.maximumBuffer;
+	}
+	
+	/**
+	 * Called by the link when the nic at the other end has freed space in its input buffer
+	 * @param count the number of packets that can be sent in addition
+	 * @since 1.0
+	 */
+	public void addCredits(int count) {
+		this.credits += count;
+	}
+	
+	/**
+	 * Returns the number of packets this nic may still send in lossless mode
+	 * @return the credits held
+	 * @since 1.0
+	 */
+	public int getCredits() {
+		return this.credits;
+	}
+	
+	/**
+	 * Returns the number of packets waiting in the output buffer
+	 * @return the output queue length
+	 * @since 1.0
+	 */
+	public int getOutputQueueLength() {
+		return this.outputBuffer.size();
+	}
+	
+	/**
+	 * Returns the number of packets waiting in the input buffer
+	 * @return the input queue length
+	 * @since 1.0
+	 */
+	public int getInputQueueLength() {
+		return this.inputBuffer.size();
+	}
+	
+	/**
+	 * Returns the number of OAM packets waiting to be sent, including those waiting for data
+	 * @return the control output queue length
+	 * @since 1.0
+	 */
+	public int getControlQueueLength() {
+		return this.controlOutput.size() + this.fenced.size();
+	}
+	
+	/**
+	 * Returns the number of OAM packets dropped because the control output queue was full
+	 * @return the number of dropped OAM packets
+	 * @since 1.0
+	 */
+	public long getControlDropped() {
+		return this.controlDropped;
+	}
+	
+	/**
+	 * Returns the number of packets this nic can send during each time unit
+	 * @return the line rate
+	 * @since 1.0
+	 */
+	public int getLinerate() {
+		return this.linerate;
+	}
+	
+	/**
+	 * Sets the number of packets this nic can send during each time unit, takes effect with the next time unit
+	 * @param linerate the line rate, at least 1
+	 * @since 1.0
+	 */
+	public void setLinerate(int linerate) {
+		if (linerate < 1)
+			throw new IllegalArgumentException("(LSR NIC) Error: the line rate must be at least 1");
+		this.linerate = linerate;
+	}
+	
+	/**
+	 * Returns the maximum number of packets in the output buffer
+	 * @return the buffer size
+	 * @since 1.0
+	 */
+	public int getMaximumBuffer() {
+		return this.maximumBuffer;
+	}
+	
+	/**
+	 * Sets the maximum number of packets in the output buffer. Packets already buffered above a
+	 * smaller maximum are still sent
+	 * @param maximumBuffer the buffer size, above the RED threshold
+	 * @since 1.0
+	 */
+	public synchronized void setMaximumBuffer(int maximumBuffer) {
+		if (maximumBuffer <= this.startDropAt)
+			throw new IllegalArgumentException("(LSR NIC) Error: the buffer must be larger than the RED threshold " + this.startDropAt);
+		this.maximumBuffer = maximumBuffer;
+	}
+	
+	/**
+	 * Returns the number of packets in the output buffer above which RED starts dropping
+	 * @return the RED threshold
+	 * @since 1.0
+	 */
+	public int getStartDropAt() {
+		return this.startDropAt;
+	}
+	
+	/**
+	 * Sets the number of packets in the output buffer above which RED starts dropping
+	 * @param startDropAt the RED threshold, below the buffer size
+	 * @since 1.0
+	 */
+	public synchronized void setStartDropAt(int startDropAt) {
+		if (startDropAt < 0 || startDropAt >= this.maximumBuffer)
+			throw new IllegalArgumentException("(LSR NIC) Error: the RED threshold must be between 0 and the buffer size " + this.maximumBuffer);
+		this.startDropAt = startDropAt;
+	}
+	
+	/**
+	 * Returns whether debug output is printed
+	 * @return true if tracing
+	 * @since 1.0
+	 */
+	public boolean getTrace() {
+		return this.trace;
+	}
+	
+	/**
+	 * Turns debug output on or off, takes effect with the next packet
+	 * @param trace true to print debug output
+	 * @since 1.0
+	 */
+	public void setTrace(boolean trace) {
+		this.trace = trace;
+	}
+	
+	/**
+	 * Returns the largest number of packets held in the output buffer so far
+	 * @return the peak output buffer occupancy
+	 * @since 1.0
+	 */
+	public int getPeakBuffer() {
+		return this.peakBuffer;
+	}
+	
 	public LSR getParent() {
 		return this.parent;
 	}
 	
+	/**
+	 * Returns the position of this nic in its router
+	 * @return the index of this nic
+	 * @since 1.0
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+	
+	/**
+	 * Returns the number of packets RED has dropped at this nic
+	 * @return the number of dropped packets
+	 * @since 1.0
+	 */
+	public long getDropped() {
+		return this.dropped;
+	}
+	
+	/**
+	 * Adds the state of this nic to a checksum of the simulation
+	 * @param checksum the checksum to add to
+	 * @since 1.0
+	 */
+	public void addToChecksum(StateChecksum checksum) {
+		checksum.update(this.inputBuffer.size());
+		checksum.update(this.outputBuffer.size());
+		checksum.update(this.controlOutput.size());
+		checksum.update(this.dropped);
+		for (int i = 0; i < this.outputBuffer.size(); i ++)
+			checksum.update(this.outputBuffer.get(i).getTraceID());
+	}
+	
+	/**
+	 * Captures every packet this nic receives from its link
+	 * @param capture the capture to write to, or null to stop capturing
+	 * @since 1.0
+	 */
+	public void setIngressCapture(PcapWriter capture) {
+		this.ingressCapture = capture;
+	}
+	
+	/**
+	 * Captures every packet this nic sends onto its link
+	 * @param capture the capture to write to, or null to stop capturing
+	 * @since 1.0
+	 */
+	public void setEgressCapture(PcapWriter capture) {
+		this.egressCapture = capture;
+	}
+	
 
 }
@@ -0,0 +1,68 @@
+package NetworkElements;
+
+/**
+ * LSRNICControl - exposes the buffer settings of a nic as a JMX MBean
+ *
+ * The settings take effect with the next packet or time unit. The queue depths are read
+ * without stopping the simulation, so they may be a tick old.
+ */
+public class LSRNICControl implements LSRNICControlMBean {
+	private LSRNIC nic; // the nic managed
+
+	/**
+	 * Creates the MBean of a nic
+	 * @param nic the nic to manage
+	 * @since 1.0
+	 */
+	public LSRNICControl(LSRNIC nic){
+		this.nic = nic;
+	}
+
+	public int getLinerate(){
+		return this.nic.getLinerate();
+	}
+
+	public void setLinerate(int linerate){
+		this.nic.setLinerate(linerate);
+	}
+
+	public int getMaximumBuffer(){
+		return this.nic.getMaximumBuffer();
+	}
+
+	public void setMaximumBuffer(int maximumBuffer){
+		this.nic.setMaximumBuffer(maximumBuffer);
+	}
+
+	public int getStartDropAt(){
+		return this.nic.getStartDropAt();
+	}
+
+	public void setStartDropAt(int startDropAt){
+		this.nic.setStartDropAt(startDropAt);
+	}
+
+	public boolean getTrace(){
+		return this.nic.getTrace();
+	}
+
+	public void setTrace(boolean trace){
+		this.nic.setTrace(trace);
+	}
+
+	public int getQueueDepth(){
+		return this.nic.getOutputQueueLength();
+	}
+
+	public int getInputQueueDepth(){
+		return this.nic.getInputQueueLength();
+	}
+
+	public int getPeakBuffer(){
+		return this.nic.getPeakBuffer();
+	}
+
+	public long getDropped(){
+		return this.nic.getDropped();
+	}
+}
@@ -0,0 +1,30 @@
+package NetworkElements;
+
+/**
+ * LSRNICControlMBean - the management interface of a nic
+ */
+public interface LSRNICControlMBean {
+	public int getLinerate();
+
+	public void setLinerate(int linerate);
+
+	public int getMaximumBuffer();
+
+	public void setMaximumBuffer(int maximumBuffer);
+
+	public int getStartDropAt();
+
+	public void setStartDropAt(int startDropAt);
+
+	public boolean getTrace();
+
+	public void setTrace(boolean trace);
+
+	public int getQueueDepth();
+
+	public int getInputQueueDepth();
+
+	public int getPeakBuffer();
+
+	public long getDropped();
+}
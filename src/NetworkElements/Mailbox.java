@@ -0,0 +1,102 @@
+package NetworkElements;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import DataTypes.*;
+
+/**
+ * Mailbox - a bounded multi producer, single consumer queue of packets for one router
+ *
+ * Any thread may offer a packet together with the nic it arrived on, only the router's actor
+ * drains it. Each slot carries a sequence number that tells producers when it is free and the
+ * consumer when it is filled, so neither side takes a lock and nothing is allocated per packet.
+ */
+public class Mailbox {
+	private final int mask; // capacity - 1, the capacity is a power of two
+	private final AtomicLongArray sequence; // per slot, the position that may use the slot next
+	private final Packet[] packets; // the queued packets
+	private final LSRNIC[] nics; // the nic each packet arrived on, null for packets created at the router
+	private final AtomicLong tail = new AtomicLong(); // the next position producers claim
+	private long head = 0; // the next position the consumer reads, only touched by the consumer
+
+	/**
+	 * Creates an empty mailbox
+	 * @param capacity the number of packets the mailbox holds, rounded up to a power of two
+	 * @since 1.0
+	 */
+	public Mailbox(int capacity){
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.mask = size - 1;
+		this.sequence = new AtomicLongArray(size);
+		for (int i = 0; i < size; i ++)
+			this.sequence.set(i, i);
+		this.packets = new Packet[size];
+		this.nics = new LSRNIC[size];
+	}
+
+	/**
+	 * Adds a packet to the mailbox, may be called from any thread
+	 * @param packet the packet
+	 * @param nic the nic the packet arrived on, null if it was created at the router
+	 * @return false if the mailbox is full and the packet was not added
+	 * @since 1.0
+	 */
+	public boolean offer(Packet packet, LSRNIC nic){
+		long position;
+		while (true) {
+			position = this.tail.get();
+			long difference = this.sequence.get((int) position & this.mask) - position;
+			if (difference == 0) {
+				if (this.tail.compareAndSet(position, position + 1))
+					break;
+			}
+			else if (difference < 0) {
+				return false;
+			}
+		}
+		int slot = (int) position & this.mask;
+		this.packets[slot] = packet;
+		this.nics[slot] = nic;
+		this.sequence.lazySet(slot, position + 1);
+		return true;
+	}
+
+	/**
+	 * Returns whether the mailbox holds no packets, only called by the consumer
+	 * @return true if there is nothing to drain
+	 * @since 1.0
+	 */
+	public boolean isEmpty(){
+		return this.sequence.get((int) this.head & this.mask) != this.head + 1;
+	}
+
+	/**
+	 * Hands queued packets to a router in the order they were added, only called by the consumer
+	 * @param router the router the mailbox belongs to
+	 * @param max the most packets to hand over
+	 * @return the number of packets handed over
+	 * @since 1.0
+	 */
+	public int drainTo(LSR router, int max){
+		int drained = 0;
+		while (drained < max) {
+			int slot = (int) this.head & this.mask;
+			if (this.sequence.get(slot) != this.head + 1)
+				break;
+			Packet packet = this.packets[slot];
+			LSRNIC nic = this.nics[slot];
+			this.packets[slot] = null;
+			this.nics[slot] = null;
+			this.sequence.lazySet(slot, this.head + this.mask + 1);
+			this.head++;
+			drained++;
+
+			if (nic == null)
+				router.originatePacket(packet);
+			else
+				router.receivePacket(packet, nic);
+		}
+		return drained;
+	}
+}
@@ -5,6 +5,9 @@ import DataTypes.*;
 public class OtoOLink {
 	private LSRNIC r1NIC=null, r2NIC=null;
 	private Boolean trace=false;
+	private PcapWriter capture=null; // where packets crossing the link are captured, null if not capturing
+	private double r1FluidRate=0, r2FluidRate=0; // fluid packets sent by each end in the last time unit
+	private long r1Packets=0, r2Packets=0; // packets sent by each end since the link was created
 	
 	/**
 	 * The default constructor for a OtoOLink
@@ -20,10 +23,9 @@ public class OtoOLink {
 		
 		int addr1 = r1NIC.getParent().getAddress();
 		int addr2 = r2NIC.getParent().getAddress();
-		GraphInfo.graph.get(addr1).add(addr2);
-		GraphInfo.graph.get(addr2).add(addr1);
-		GraphInfo.nics.get(addr1).add(r1NIC);
-		GraphInfo.nics.get(addr2).add(r2NIC);
+		GraphInfo.addEdge(addr1, addr2, r1NIC);
+		GraphInfo.addEdge(addr2, addr1, r2NIC);
+		ScenarioRecorder.linkCreated(r1NIC, r2NIC);
 		
 		if(this.trace){
 			if(r1NIC==null)
@@ -33,6 +35,22 @@ public class OtoOLink {
 		}
 	}
 	
+	/**
+	 * Constructor for a link whose far end is not in this JVM. Only the local nic is connected,
+	 * the graph still records the link at both routers
+	 * @param localNIC the end of the link in this JVM
+	 * @param remoteAddress the address of the router at the far end
+	 * @since 1.0
+	 */
+	protected OtoOLink(LSRNIC localNIC, int remoteAddress){
+		this.r1NIC = localNIC;
+		this.r1NIC.connectOtoOLink(this);
+		
+		int addr1 = localNIC.getParent().getAddress();
+		GraphInfo.addEdge(addr1, remoteAddress, localNIC);
+		GraphInfo.addEdge(remoteAddress, addr1, null);
+	}
+	
 	/**
 	 * Sends a packet from one end of the link to the other
 	 * @param currentPacket the packet to be sent
@@ -40,6 +58,9 @@ public class OtoOLink {
 	 * @since 1.0
 	 */
 	public void sendPacket(Packet currentPacket, LSRNIC nic){
+		if(this.capture!=null)
+			this.capture.capture(currentPacket, nic.getParent().getAddress());
+		this.countPacket(nic);
 		if(this.r1NIC.equals(nic)){
 			if(this.trace)
 				System.out.println("(OtoOLink) Trace: sending packet from router A to router B");
@@ -53,4 +74,97 @@ public class OtoOLink {
 		else
 			System.err.println("(OtoOLink) Error: You are trying to send a packet down a link that you are not connected to");
 	}
+	
+	/**
+	 * Returns the nic at the other end of the link
+	 * @param nic one end of the link
+	 * @return the other end, or null if it is not in this JVM
+	 * @since 1.0
+	 */
+	public LSRNIC getPeer(LSRNIC nic){
+		if(nic==this.r1NIC)
+			return this.r2NIC;
+		if(nic==this.r2NIC)
+			return this.r1NIC;
+		return null;
+	}
+	
+	/**
+	 * Records the fluid one end of the link sent in the current time unit
+	 * @param nic the sending nic
+	 * @param rate the fluid packets sent
+	 * @since 1.0
+	 */
+	public void carryFluid(LSRNIC nic, double rate){
+		if(nic==this.r1NIC)
+			this.r1FluidRate = rate;
+		else if(nic==this.r2NIC)
+			this.r2FluidRate = rate;
+	}
+	
+	/**
+	 * Returns the fluid one end of the link sent in the last time unit
+	 * @param nic the sending nic
+	 * @return the fluid packets sent
+	 * @since 1.0
+	 */
+	public double getFluidRate(LSRNIC nic){
+		return nic==this.r1NIC ? this.r1FluidRate : this.r2FluidRate;
+	}
+	
+	/**
+	 * Counts a packet one end of the link sent
+	 * @param nic the sending nic
+	 * @since 1.0
+	 */
+	protected void countPacket(LSRNIC nic){
+		if(nic==this.r1NIC)
+			this.r1Packets++;
+		else if(nic==this.r2NIC)
+			this.r2Packets++;
+	}
+	
+	/**
+	 * Counts the packets one end of the link sent while the network was fast-forwarded
+	 * @param nic the sending nic
+	 * @param count the number of packets
+	 * @since 1.0
+	 */
+	protected void countPackets(LSRNIC nic, long count){
+		if(nic==this.r1NIC)
+			this.r1Packets += count;
+		else if(nic==this.r2NIC)
+			this.r2Packets += count;
+	}
+	
+	/**
+	 * Returns the packets one end of the link has sent since the link was created
+	 * @param nic the sending nic
+	 * @return the packets sent
+	 * @since 1.0
+	 */
+	public long getPackets(LSRNIC nic){
+		return nic==this.r1NIC ? this.r1Packets : this.r2Packets;
+	}
+	
+	/**
+	 * Passes credits freed by the input buffer of one nic to the nic at the other end
+	 * @param nic the nic that freed space
+	 * @param count the number of packets freed
+	 * @since 1.0
+	 */
+	public void returnCredits(LSRNIC nic, int count){
+		LSRNIC peer = this.getPeer(nic);
+		if(peer!=null)
+			peer.addCredits(count);
+	}
+	
+	/**
+	 * Captures every packet that crosses this link, in either direction
+	 * @param capture the capture to write to, or null to stop capturing
+	 * @since 1.0
+	 */
+	public void setCapture(PcapWriter capture){
+		this.capture = capture;
+	}
 }
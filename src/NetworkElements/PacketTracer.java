@@ -0,0 +1,156 @@
+package NetworkElements;
+
+import java.io.PrintStream;
+
+import DataTypes.*;
+
+/**
+ * PacketTracer - follows a sample of the data packets through the network
+ *
+ * A packet is marked when it passes the filter and its trace id falls into the sampled fraction.
+ * The decision is a hash of the seed, source and trace id, so it draws from no random stream and
+ * is the same at every hop: a packet left out at its ingress is only marked further on if the
+ * filter matches there, for example on a label it is swapped to. A marked packet carries a
+ * preallocated PacketTrace, each router it passes appends a hop record, and the whole path is
+ * written as one line when the packet is delivered or dropped. While the tracer is stopped the
+ * only cost is one check per packet and hop.
+ */
+public class PacketTracer {
+	static private volatile boolean enabled = false; // is a sample being traced?
+	static private double fraction = 0; // the fraction of the packets passing the filter that are marked
+	static private CaptureFilter filter = null; // which packets can be marked, null for all
+	static private int capacity = 16; // hops a trace keeps
+	static private PrintStream out = System.out; // where the traces are written
+	static private long emitted = 0; // number of traces written so far
+
+	/**
+	 * Starts marking packets
+	 * @param sample the fraction of the packets passing the filter to mark, 1 for all of them
+	 * @param packetFilter which packets can be marked, or null for all
+	 * @since 1.0
+	 */
+	public static void start(double sample, CaptureFilter packetFilter){
+		if (sample < 0 || sample > 1)
+			throw new IllegalArgumentException("(PacketTracer) Error: the sampled fraction must be between 0 and 1");
+		fraction = sample;
+		filter = packetFilter;
+		enabled = sample > 0;
+	}
+
+	/**
+	 * Stops marking packets. Packets already marked are still reported
+	 * @since 1.0
+	 */
+	public static void stop(){
+		enabled = false;
+	}
+
+	/**
+	 * Returns whether packets are being marked
+	 * @return true while tracing
+	 * @since 1.0
+	 */
+	public static boolean isEnabled(){
+		return enabled;
+	}
+
+	/**
+	 * Sets the number of hops a trace keeps, hops beyond are only counted
+	 * @param hops the capacity of the traces marked from now on
+	 * @since 1.0
+	 */
+	public static void setCapacity(int hops){
+		if (hops < 1)
+			throw new IllegalArgumentException("(PacketTracer) Error: a trace must keep at least one hop");
+		capacity = hops;
+	}
+
+	/**
+	 * Sets where the traces are written
+	 * @param stream the stream, System.out by default
+	 * @since 1.0
+	 */
+	public static void setOutput(PrintStream stream){
+		out = stream;
+	}
+
+	/**
+	 * Returns the number of traces written so far
+	 * @return the number of packets reported
+	 * @since 1.0
+	 */
+	public static long getEmitted(){
+		return emitted;
+	}
+
+	/**
+	 * Records a hop of a packet, marking it first if it is sampled here. Called for every packet
+	 * while the tracer is running and for the packets already marked when it is not
+	 * @param packet the data packet
+	 * @param router the address of the router
+	 * @param inNIC the index of the nic the packet arrived on, PacketTrace.NONE at the ingress
+	 * @param inLabel the label the packet arrived with, PacketTrace.NONE at the ingress
+	 * @param outLabel the label the packet leaves with, PacketTrace.NONE at the egress
+	 * @param queueDepth the packets ahead of it in the output buffer
+	 * @since 1.0
+	 */
+	static void hop(Packet packet, int router, int inNIC, int inLabel, int outLabel, int queueDepth){
+		PacketTrace trace = packet.getTrace();
+		if (trace == null) {
+			if (!enabled || !sampled(packet, router))
+				return;
+			trace = new PacketTrace(capacity, SimulationClock.getTick());
+			packet.setTrace(trace);
+		}
+		trace.record(router, inNIC, inLabel, outLabel, queueDepth, SimulationClock.getTick());
+	}
+
+	/**
+	 * Reports a marked packet that reached the end of its LSP
+	 * @param packet the packet
+	 * @param router the address of the router it was delivered at
+	 * @since 1.0
+	 */
+	static void delivered(Packet packet, int router){
+		if (packet.getTrace() != null)
+			emit(packet, "delivered at " + router);
+	}
+
+	/**
+	 * Reports a marked packet that was dropped
+	 * @param packet the packet
+	 * @param router the address of the router it was dropped at
+	 * @param reason why it was dropped
+	 * @since 1.0
+	 */
+	static void dropped(Packet packet, int router, String reason){
+		if (packet.getTrace() != null)
+			emit(packet, "dropped at " + router + " (" + reason + ")");
+	}
+
+	/**
+	 * Returns whether a packet not marked yet is marked at a router
+	 */
+	private static boolean sampled(Packet packet, int router){
+		if (filter != null && !filter.matches(packet, router))
+			return false;
+		if (fraction >= 1)
+			return true;
+		long hash = SimulationRandom.mix(SimulationRandom.getSeed(), SimulationRandom.mix(packet.getSource(), packet.getTraceID()));
+		return (hash >>> 11) * 0x1.0p-53 < fraction;
+	}
+
+	/**
+	 * Writes the path of a packet as one line, the packet then stops recording
+	 */
+	private static void emit(Packet packet, String outcome){
+		PacketTrace trace = packet.getTrace();
+		packet.setTrace(null);
+		String line = "Trace: packet " + packet.getTraceID() + " " + packet.getSource() + "->" + packet.getDest()
+				+ " DSCP " + packet.getDSCP() + " " + outcome + " at tick " + SimulationClock.getTick() + ": " + trace;
+		synchronized (PacketTracer.class) {	// actors of different routers may report at the same time
+			out.println(line);
+			emitted++;
+		}
+	}
+}
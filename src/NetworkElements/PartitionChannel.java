@@ -0,0 +1,178 @@
+package NetworkElements;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import DataTypes.*;
+
+/**
+ * PartitionChannel - carries the packets of all cut links between two partitions
+ *
+ * Packets sent during a tick are batched into a bounded buffer and written to a local socket,
+ * followed by an end of tick marker. A reader thread decodes everything the peer partition
+ * sends, so writes never block on a peer that is itself blocked writing. A partition only
+ * starts processing its input buffers once the marker of every peer has arrived, which keeps
+ * the partitions in lock step.
+ */
+public class PartitionChannel implements Runnable {
+	private static final int BUFFER_SIZE = 1 << 16; // bytes batched before each socket write
+	private static final int END_OF_TICK = -1; // link id of an end of tick marker
+
+	private SocketChannel socket; // the connection to the peer partition
+	private int peer; // the index of the peer partition
+	private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE); // frames waiting to be written
+	private LinkedBlockingQueue<Frame> received = new LinkedBlockingQueue<Frame>(); // decoded frames from the peer
+	private Thread reader; // decodes the frames the peer sends
+
+	/**
+	 * A packet or end of tick marker received from the peer
+	 */
+	private static class Frame {
+		int link; // the cut link the packet crossed, or END_OF_TICK
+		Packet packet; // the packet, null for markers
+		long tick; // the tick a marker ends, -1 if the peer closed the connection
+	}
+
+	/**
+	 * Wraps a connected socket and starts reading from it
+	 * @param socket the connection to the peer partition
+	 * @param peer the index of the peer partition
+	 * @since 1.0
+	 */
+	public PartitionChannel(SocketChannel socket, int peer){
+		this.socket = socket;
+		this.peer = peer;
+		this.reader = new Thread(this, "partition-channel-" + peer);
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * Returns the index of the peer partition
+	 * @return the peer partition
+	 * @since 1.0
+	 */
+	public int getPeer(){
+		return this.peer;
+	}
+
+	/**
+	 * Queues a packet to be sent across a cut link
+	 * @param link the id of the cut link
+	 * @param packet the packet
+	 * @since 1.0
+	 */
+	public void send(int link, Packet packet){
+		int length = 4 + PacketCodec.encodedLength(packet);
+		if (this.out.remaining() < 4 + length)
+			this.flush();
+		this.out.putInt(length);
+		this.out.putInt(link);
+		PacketCodec.encode(packet, this.out);
+	}
+
+	/**
+	 * Marks the end of the packets sent during a tick and writes everything queued
+	 * @param tick the tick that ended
+	 * @since 1.0
+	 */
+	public void endTick(long tick){
+		if (this.out.remaining() < 16)
+			this.flush();
+		this.out.putInt(12);
+		this.out.putInt(END_OF_TICK);
+		this.out.putLong(tick);
+		this.flush();
+	}
+
+	/**
+	 * Waits for the peer to finish a tick and delivers the packets it sent during it
+	 * @param tick the tick to wait for
+	 * @param links the local ends of the cut links, by link id
+	 * @since 1.0
+	 */
+	public void receiveTick(long tick, Map<Integer, PartitionLink> links){
+		try{
+			while (true) {
+				Frame frame = this.received.take();
+				if (frame.packet != null) {
+					links.get(frame.link).deliver(frame.packet);
+				}
+				else if (frame.tick == tick) {
+					return;
+				}
+				else {
+					throw new IllegalStateException("(PartitionChannel) Error: partition " + this.peer
+							+ " sent the end of tick " + frame.tick + " while waiting for tick " + tick);
+				}
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Closes the connection to the peer
+	 * @since 1.0
+	 */
+	public void close(){
+		try{
+			this.socket.close();
+		}
+		catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads and decodes frames from the peer until the connection is closed
+	 * @since 1.0
+	 */
+	public void run(){
+		ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try{
+			while (this.socket.read(in) >= 0) {
+				in.flip();
+				while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+					in.getInt();
+					Frame frame = new Frame();
+					frame.link = in.getInt();
+					if (frame.link == END_OF_TICK)
+						frame.tick = in.getLong();
+					else
+						frame.packet = PacketCodec.decode(in);
+					this.received.put(frame);
+				}
+				in.compact();
+			}
+		}
+		catch(IOException e){
+			// the connection was closed
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		Frame closed = new Frame();
+		closed.tick = -1;
+		this.received.offer(closed);
+	}
+
+	/**
+	 * Writes the queued frames to the socket
+	 */
+	private void flush(){
+		try{
+			this.out.flip();
+			while (this.out.hasRemaining())
+				this.socket.write(this.out);
+			this.out.clear();
+		}
+		catch(IOException e){
+			throw new IllegalStateException("(PartitionChannel) Error: lost the connection to partition " + this.peer, e);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package NetworkElements;
+
+import DataTypes.*;
+
+/**
+ * PartitionLink - a link whose far end is a router owned by another partition
+ *
+ * Packets sent onto the link are handed to the channel to the other partition, packets
+ * arriving from the channel are delivered to the local nic.
+ */
+public class PartitionLink extends OtoOLink {
+	private int id; // the id of the link, the same in every partition
+	private LSRNIC localNIC; // the end of the link in this partition
+	private PartitionChannel channel; // the channel to the partition owning the far end
+
+	/**
+	 * Connects a local nic to a router in another partition
+	 * @param id the id of the link, the same in every partition
+	 * @param localNIC the end of the link in this partition
+	 * @param remoteAddress the address of the router at the far end
+	 * @param channel the channel to the partition owning the far end
+	 * @since 1.0
+	 */
+	public PartitionLink(int id, LSRNIC localNIC, int remoteAddress, PartitionChannel channel){
+		super(localNIC, remoteAddress);
+		this.id = id;
+		this.localNIC = localNIC;
+		this.channel = channel;
+	}
+
+	/**
+	 * Returns the id of this link
+	 * @return the id of the link
+	 * @since 1.0
+	 */
+	public int getId(){
+		return this.id;
+	}
+
+	/**
+	 * Sends a packet to the far end of the link
+	 * @param currentPacket the packet to be sent
+	 * @param nic the nic the packet is being sent from
+	 * @since 1.0
+	 */
+	public void sendPacket(Packet currentPacket, LSRNIC nic){
+		if (nic != this.localNIC) {
+			System.err.println("(PartitionLink) Error: You are trying to send a packet down a link that you are not connected to");
+			return;
+		}
+		this.countPacket(nic);
+		this.channel.send(this.id, currentPacket);
+	}
+
+	/**
+	 * Delivers a packet that arrived from the far end to the local nic
+	 * @param currentPacket the packet that arrived
+	 * @since 1.0
+	 */
+	public void deliver(Packet currentPacket){
+		this.localNIC.receivePacket(currentPacket);
+	}
+}
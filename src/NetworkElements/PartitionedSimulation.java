@@ -0,0 +1,273 @@
+package NetworkElements;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+
+import DataTypes.*;
+
+/**
+ * PartitionedSimulation - runs one network across several local JVMs
+ *
+ * The network is read from a topology file with one entry per line:
+ *   router address
+ *   link address1 address2
+ *   packet tick router destination DSCP
+ *   ticks count
+ * Routers must be listed before the links that use them. The routers are split into
+ * partitions with few cut links and each partition runs in its own process, owning its
+ * routers. Links inside a partition are ordinary OtoOLinks, cut links are PartitionLinks
+ * whose packets travel over a local socket to the partition owning the far end.
+ *
+ * Started with a topology file and a partition count, the class launches one worker process
+ * per partition and waits for them. Each worker writes its console output to
+ * topology.partitionN.log.
+ */
+public class PartitionedSimulation {
+	private static final int DEFAULT_BASE_PORT = 47000; // partition i listens on base port + i
+	private static final int CONNECT_ATTEMPTS = 200; // how often to try reaching a peer that is not listening yet
+
+	private ArrayList<Integer> routers = new ArrayList<Integer>(); // router addresses, in file order
+	private ArrayList<int[]> links = new ArrayList<int[]>(); // the two router addresses of each link, in file order
+	private ArrayList<long[]> packets = new ArrayList<long[]>(); // tick, router, destination and DSCP of each packet
+	private long ticks = 20; // how many ticks to run
+	private HashMap<Integer, Integer> position = new HashMap<Integer, Integer>(); // the position of each router in routers
+	private int[] part; // the partition of each router, by position in routers
+
+	/**
+	 * Reads a topology file and partitions its routers
+	 * @param fileName the topology file
+	 * @param parts the number of partitions
+	 * @throws IOException if the file can not be read
+	 * @since 1.0
+	 */
+	public PartitionedSimulation(String fileName, int parts) throws IOException{
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+		try{
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.trim().split("\\s+");
+				if (fields[0].equals("router"))
+					this.routers.add(Integer.parseInt(fields[1]));
+				else if (fields[0].equals("link"))
+					this.links.add(new int[]{Integer.parseInt(fields[1]), Integer.parseInt(fields[2])});
+				else if (fields[0].equals("packet"))
+					this.packets.add(new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+							Long.parseLong(fields[3]), Long.parseLong(fields[4])});
+				else if (fields[0].equals("ticks"))
+					this.ticks = Long.parseLong(fields[1]);
+			}
+		}
+		finally{
+			in.close();
+		}
+
+		for (int i = 0; i < this.routers.size(); i ++)
+			this.position.put(this.routers.get(i), i);
+		ArrayList<ArrayList<Integer>> neighbours = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < this.routers.size(); i ++)
+			neighbours.add(new ArrayList<Integer>());
+		for (int[] link : this.links) {
+			neighbours.get(this.position.get(link[0])).add(this.position.get(link[1]));
+			neighbours.get(this.position.get(link[1])).add(this.position.get(link[0]));
+		}
+		int[][] adjacency = new int[this.routers.size()][];
+		for (int i = 0; i < adjacency.length; i ++) {
+			adjacency[i] = new int[neighbours.get(i).size()];
+			for (int j = 0; j < adjacency[i].length; j ++)
+				adjacency[i][j] = neighbours.get(i).get(j);
+		}
+		this.part = GraphPartitioner.partition(adjacency, parts);
+		System.out.println("** " + this.routers.size() + " ROUTERS IN " + parts + " PARTITIONS, "
+				+ GraphPartitioner.cutLinks(adjacency, this.part) + " OF " + this.links.size() + " LINKS CUT **");
+	}
+
+	/**
+	 * Returns the partition that owns a router
+	 */
+	private int partitionOf(int address){
+		return this.part[this.position.get(address)];
+	}
+
+	/**
+	 * Starts one worker process per partition and waits for all of them to finish
+	 * @param fileName the topology file
+	 * @param parts the number of partitions
+	 * @param basePort the port partition 0 listens on
+	 * @since 1.0
+	 */
+	public static void launch(String fileName, int parts, int basePort) throws IOException, InterruptedException{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classpath = System.getProperty("java.class.path");
+		Process[] workers = new Process[parts];
+		for (int i = 0; i < parts; i ++) {
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", classpath, PartitionedSimulation.class.getName(),
+					fileName, "" + parts, "" + i, "" + basePort, "" + SimulationRandom.getSeed());
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(new File(fileName + ".partition" + i + ".log"));
+			workers[i] = builder.start();
+		}
+		for (int i = 0; i < parts; i ++)
+			System.out.println("** PARTITION " + i + " EXITED WITH " + workers[i].waitFor() + " **");
+	}
+
+	/**
+	 * Runs the routers of one partition
+	 * @param index the partition this process owns
+	 * @param basePort the port partition 0 listens on
+	 * @since 1.0
+	 */
+	public void runPartition(int index, int basePort) throws IOException{
+		// connect to every partition that shares a cut link with this one
+		TreeSet<Integer> peers = new TreeSet<Integer>();
+		for (int[] link : this.links) {
+			int p1 = this.partitionOf(link[0]), p2 = this.partitionOf(link[1]);
+			if (p1 == index && p2 != index)
+				peers.add(p2);
+			if (p2 == index && p1 != index)
+				peers.add(p1);
+		}
+		TreeMap<Integer, PartitionChannel> channels = this.connect(index, basePort, peers);
+
+		// build the routers of this partition, the graph still holds every router for the next hop calculation
+		ArrayList<LSR> local = new ArrayList<LSR>();
+		HashMap<Integer, LSR> byAddress = new HashMap<Integer, LSR>();
+		for (int address : this.routers) {
+			if (this.partitionOf(address) == index) {
+				LSR router = new LSR(address);
+				local.add(router);
+				byAddress.put(address, router);
+			}
+			else {
+				GraphInfo.addRouter(address);
+			}
+		}
+		HashMap<Integer, PartitionLink> cutLinks = new HashMap<Integer, PartitionLink>();
+		for (int id = 0; id < this.links.size(); id ++) {
+			int[] link = this.links.get(id);
+			LSR r1 = byAddress.get(link[0]), r2 = byAddress.get(link[1]);
+			if (r1 != null && r2 != null) {
+				new OtoOLink(new LSRNIC(r1), new LSRNIC(r2));
+			}
+			else if (r1 != null) {
+				cutLinks.put(id, new PartitionLink(id, new LSRNIC(r1), link[1], channels.get(this.partitionOf(link[1]))));
+			}
+			else if (r2 != null) {
+				cutLinks.put(id, new PartitionLink(id, new LSRNIC(r2), link[0], channels.get(this.partitionOf(link[0]))));
+			}
+			else {
+				GraphInfo.addEdge(link[0], link[1], null);
+				GraphInfo.addEdge(link[1], link[0], null);
+			}
+		}
+
+		// run the ticks, every partition has to finish sending before any starts receiving
+		for (long tick = 0; tick < this.ticks; tick ++) {
+			for (long[] packet : this.packets) {
+				LSR router = byAddress.get((int) packet[1]);
+				if (packet[0] == tick && router != null)
+					router.createPacket((int) packet[2], (int) packet[3]);
+			}
+
+			System.out.println("** PARTITION " + index + " TIME = " + SimulationClock.getTick() + " **");
+			SimulationClock.advance();
+			LSR.runTimers();
+			LSRNIC.sendActivePackets();
+			for (PartitionChannel channel : channels.values())
+				channel.endTick(tick);
+			for (PartitionChannel channel : channels.values())
+				channel.receiveTick(tick, cutLinks);
+			LSRNIC.recieveActiveControl();
+			LSRNIC.recieveActivePackets();
+		}
+
+		for (PartitionChannel channel : channels.values())
+			channel.close();
+		StateChecksum checksum = new StateChecksum();
+		for (int i = 0; i < local.size(); i ++)
+			local.get(i).addToChecksum(checksum);
+		System.out.println("** PARTITION " + index + " CHECKSUM = " + Long.toHexString(checksum.getValue()) + " **");
+		for (FECLatency fec : LSR.mergeLatency(local))
+			System.out.println("** PARTITION " + index + " LATENCY " + fec + " **");
+	}
+
+	/**
+	 * Opens a channel to each peer partition. A partition connects to the peers with a higher
+	 * index and accepts connections from the peers with a lower index
+	 */
+	private TreeMap<Integer, PartitionChannel> connect(int index, int basePort, TreeSet<Integer> peers) throws IOException{
+		TreeMap<Integer, PartitionChannel> channels = new TreeMap<Integer, PartitionChannel>();
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress("127.0.0.1", basePort + index));
+
+		for (int peer : peers.tailSet(index, false)) {
+			SocketChannel socket = null;
+			for (int attempt = 0; socket == null; attempt ++) {
+				try{
+					socket = SocketChannel.open(new InetSocketAddress("127.0.0.1", basePort + peer));
+				}
+				catch(IOException e){
+					if (attempt >= CONNECT_ATTEMPTS)
+						throw e;
+					try{
+						Thread.sleep(50);
+					}
+					catch(InterruptedException ie){
+						Thread.currentThread().interrupt();
+						throw e;
+					}
+				}
+			}
+			socket.socket().setTcpNoDelay(true);
+			ByteBuffer hello = ByteBuffer.allocate(4);
+			hello.putInt(index);
+			hello.flip();
+			while (hello.hasRemaining())
+				socket.write(hello);
+			channels.put(peer, new PartitionChannel(socket, peer));
+		}
+
+		for (int accepted = 0; accepted < peers.headSet(index).size(); accepted ++) {
+			SocketChannel socket = server.accept();
+			socket.socket().setTcpNoDelay(true);
+			ByteBuffer hello = ByteBuffer.allocate(4);
+			while (hello.hasRemaining())
+				if (socket.read(hello) < 0)
+					throw new IOException("(PartitionedSimulation) Error: a peer closed the connection before saying hello");
+			hello.flip();
+			int peer = hello.getInt();
+			channels.put(peer, new PartitionChannel(socket, peer));
+		}
+		server.close();
+		return channels;
+	}
+
+	/**
+	 * Launches a partitioned run, or runs one partition when started by the launcher
+	 * Usage: PartitionedSimulation topology partitions [index [basePort [seed]]]
+	 * @since 1.0
+	 */
+	public static void main(String args[]) throws Exception{
+		if (args.length < 2) {
+			System.err.println("Usage: PartitionedSimulation topology partitions [index [basePort [seed]]]");
+			return;
+		}
+		if (args.length > 4)
+			SimulationRandom.setSeed(Long.parseLong(args[4]));
+		int parts = Integer.parseInt(args[1]);
+		int basePort = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BASE_PORT;
+		if (args.length > 2) {
+			new PartitionedSimulation(args[0], parts).runPartition(Integer.parseInt(args[2]), basePort);
+		}
+		else {
+			new PartitionedSimulation(args[0], parts);
+			launch(args[0], parts, basePort);
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package NetworkElements;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+import DataTypes.*;
+
+/**
+ * PcapWriter - writes the packets seen by a capture tap to a libpcap file
+ *
+ * Each packet is encoded as a synthetic Ethernet frame carrying the packet's MPLS label
+ * stack and an IPv4 header built from its source, destination and DSCP fields. Records
+ * are encoded into a preallocated buffer that is written to the file channel only when
+ * it fills up, so a capture costs one small copy per packet.
+ */
+public class PcapWriter {
+	private static final int BUFFER_SIZE = 1 << 16; // bytes batched before each channel write
+	private static final int LINKTYPE_ETHERNET = 1;
+	private static final int ETHERTYPE_IPV4 = 0x0800;
+	private static final int ETHERTYPE_MPLS = 0x8847;
+	private static final int PROTOCOL_RSVP = 46; // OAM packets are written as RSVP
+	private static final int PROTOCOL_DATA = 253; // data packets use the experimental protocol number
+	private static final int PAYLOAD_LENGTH = 8; // trace id and message type
+
+	private FileChannel channel; // the file the capture is written to
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+	private CaptureFilter filter = null; // which packets to capture, null for all
+	private long microsPerTick; // how much wall time a tick represents in the capture
+	private long captured = 0; // number of packets written so far
+
+	/**
+	 * Creates a capture file and writes the pcap global header to it
+	 * @param fileName the name of the pcap file
+	 * @param microsPerTick how many microseconds one simulation tick represents
+	 * @throws IOException if the file can not be created
+	 * @since 1.0
+	 */
+	public PcapWriter(String fileName, long microsPerTick) throws IOException{
+		this.channel = new FileOutputStream(fileName).getChannel();
+		this.microsPerTick = microsPerTick;
+
+		this.buffer.putInt(0xa1b2c3d4); // magic
+		this.buffer.putShort((short) 2); // version major
+		this.buffer.putShort((short) 4); // version minor
+		this.buffer.putInt(0); // GMT offset
+		this.buffer.putInt(0); // timestamp accuracy
+		this.buffer.putInt(0xffff); // snapshot length
+		this.buffer.putInt(LINKTYPE_ETHERNET);
+	}
+
+	/**
+	 * Sets the filter that decides which packets are written
+	 * @param filter the filter, or null to capture everything
+	 * @since 1.0
+	 */
+	public void setFilter(CaptureFilter filter){
+		this.filter = filter;
+	}
+
+	/**
+	 * Returns the number of packets written to the capture
+	 * @return the number of packets written
+	 * @since 1.0
+	 */
+	public long getCaptured(){
+		return this.captured;
+	}
+
+	/**
+	 * Writes a packet to the capture if it passes the filter
+	 * @param packet the packet seen by the tap
+	 * @param router the address of the router the packet is seen at
+	 * @since 1.0
+	 */
+	public synchronized void capture(Packet packet, int router){
+		if (this.channel == null) {
+			return;
+		}
+		if (this.filter != null && !this.filter.matches(packet, router)) {
+			return;
+		}
+
+		int labels = packet.getMPLSheaderCount();
+		int ipLength = 20 + PAYLOAD_LENGTH;
+		int frameLength = 14 + 4 * labels + ipLength;
+		if (this.buffer.remaining() < 16 + frameLength) {
+			this.flush();
+			if (this.channel == null) {
+				return;
+			}
+		}
+
+		// record header
+		long micros = SimulationClock.getTick() * this.microsPerTick;
+		this.buffer.putInt((int) (micros / 1000000));
+		this.buffer.putInt((int) (micros % 1000000));
+		this.buffer.putInt(frameLength);
+		this.buffer.putInt(frameLength);
+
+		// ethernet, addressed from the router the packet is seen at towards its destination
+		this.putMAC(packet.getDest());
+		this.putMAC(router);
+		this.buffer.putShort((short) (labels > 0 ? ETHERTYPE_MPLS : ETHERTYPE_IPV4));
+
+		// MPLS label stack, the bottom of stack bit is set on the last header
+		Iterator<MPLS> headers = packet.MPLSheaderIterator();
+		for (int i = 0; i < labels; i ++) {
+			MPLS header = headers.next();
+			int entry = (header.getLabel() & 0xfffff) << 12;
+			entry |= (header.getTrafficClass() & 0x7) << 9;
+			if (i == labels - 1) {
+				entry |= 1 << 8;
+			}
+			entry |= 64; // TTL
+			this.buffer.putInt(entry);
+		}
+
+		// IPv4
+		int ipStart = this.buffer.position();
+		this.buffer.put((byte) 0x45);
+		this.buffer.put((byte) (packet.getDSCP() << 2));
+		this.buffer.putShort((short) ipLength);
+		this.buffer.putShort((short) packet.getTraceID());
+		this.buffer.putShort((short) 0); // flags and fragment offset
+		this.buffer.put((byte) 64); // TTL
+		this.buffer.put((byte) (packet.getIsOAM() ? PROTOCOL_RSVP : PROTOCOL_DATA));
+		this.buffer.putShort((short) 0); // checksum, filled in below
+		this.putAddress(packet.getSource());
+		this.putAddress(packet.getDest());
+		this.buffer.putShort(ipStart + 10, this.checksum(ipStart, 20));
+
+		// payload
+		this.buffer.putInt(packet.getTraceID());
+		this.buffer.put((byte) this.messageType(packet));
+		this.buffer.put((byte) 0);
+		this.buffer.putShort((short) packet.getBandwidth());
+
+		this.captured++;
+	}
+
+	/**
+	 * Writes everything buffered so far to the file
+	 * @since 1.0
+	 */
+	public synchronized void flush(){
+		if (this.channel == null) {
+			return;
+		}
+		try{
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+		catch(IOException e){
+			e.printStackTrace();
+			this.closeChannel();
+		}
+	}
+
+	/**
+	 * Flushes the buffer and closes the capture file
+	 * @since 1.0
+	 */
+	public synchronized void close(){
+		this.flush();
+		this.closeChannel();
+	}
+
+	/**
+	 * Closes the file channel, after which captures are ignored
+	 */
+	private void closeChannel(){
+		if (this.channel == null) {
+			return;
+		}
+		try{
+			this.channel.close();
+		}
+		catch(IOException e){
+			e.printStackTrace();
+		}
+		this.channel = null;
+	}
+
+	/**
+	 * Writes a locally administered MAC address built from a router address
+	 */
+	private void putMAC(int address){
+		this.buffer.putShort((short) 0x0200);
+		this.buffer.putInt(address);
+	}
+
+	/**
+	 * Writes a router address as a 10.0.0.0/8 IPv4 address
+	 */
+	private void putAddress(int address){
+		this.buffer.putInt((10 << 24) | (address & 0xffffff));
+	}
+
+	/**
+	 * Returns the internet checksum over part of the buffer
+	 */
+	private short checksum(int start, int length){
+		int sum = 0;
+		for (int i = start; i < start + length; i += 2) {
+			sum += this.buffer.getShort(i) & 0xffff;
+		}
+		while ((sum >> 16) != 0) {
+			sum = (sum & 0xffff) + (sum >> 16);
+		}
+		return (short) ~sum;
+	}
+
+	/**
+	 * Returns a small code for the message type of a packet, 0 for data
+	 */
+	private int messageType(Packet packet){
+		if (!packet.getIsOAM())
+			return 0;
+		if (packet.getIsPath())
+			return 1;
+		if (packet.getIsResv())
+			return 2;
+		if (packet.getIsPathErr())
+			return 3;
+		if (packet.getIsResvErr())
+			return 4;
+		if (packet.getIsResvConf())
+			return 5;
+		if (packet.getIsPathTear())
+			return 6;
+		if (packet.getIsResvTear())
+			return 7;
+		return 255;
+	}
+}
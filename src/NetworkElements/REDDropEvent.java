@@ -0,0 +1,42 @@
+package NetworkElements;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * REDDropEvent - a Flight Recorder event for a packet dropped by random early detection
+ *
+ * The event is disabled by default. While it is off the only cost is one check of PROBE per drop.
+ */
+@Name("packet.REDDrop")
+@Label("RED Drop")
+@Description("A packet dropped by random early detection at the output buffer of a nic")
+@Category({"MPLS Simulator", "Forwarding"})
+@Enabled(false)
+@StackTrace(false)
+public class REDDropEvent extends Event {
+	static final REDDropEvent PROBE = new REDDropEvent(); // only used to ask whether the event is enabled
+
+	@Label("Router")
+	int router;
+
+	@Label("NIC")
+	int nic;
+
+	@Label("Queue Length")
+	int queueLength;
+
+	@Label("Drop Probability")
+	double probability;
+
+	@Label("Trace ID")
+	int traceID;
+
+	@Label("Tick")
+	long tick;
+}
@@ -0,0 +1,196 @@
+package NetworkElements;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import DataTypes.*;
+
+/**
+ * ScaleHarness - measures the memory a network takes per router, nic and LSP
+ *
+ * Started with a list of sizes, the harness runs one process per size, as the graph, the timers
+ * and the active nic sets are static and a network can not be taken down again. Each process
+ * builds a square grid of routers in stages and measures the heap left in use after a garbage
+ * collection at every stage: the routers alone give the bytes per router, the links between
+ * them the bytes per nic, counting the link and the graph entries with the two nics of a link.
+ * A number of LSPs of two hops is then set up and used, and the same LSPs again in a second
+ * traffic class; the second round gives the bytes per LSP, as the first has already paid for
+ * what is shared by both, like the next hop tables of the routers on the way. The process
+ * exits with 1 if a figure is over its budget, or if the bytes per router grow with the size
+ * of the network. The child processes get the maximum heap of the launcher, so
+ * java -Xmx4g NetworkElements.ScaleHarness 1000 100000 1000000
+ * measures a network of a million routers.
+ */
+public class ScaleHarness {
+	private static final long ROUTER_BUDGET = 520; // bytes a router may take, without its nics
+	private static final long NIC_BUDGET = 360; // bytes a nic may take, with half its link
+	private static final long LSP_BUDGET = 2100; // bytes an LSP of two hops may take, with its state at all three routers
+	private static final double GROWTH = 1.25; // how much more a router may take in the largest network than in the smallest
+	private static final int MAX_LSPS = 1000; // LSPs set up in a network, at most one per ten routers
+	private static final int SETUP_TICKS = 12; // time units given to the LSPs to come up and deliver
+
+	/**
+	 * Builds a network of a size and prints what it takes, in the child process
+	 * @param size the number of routers
+	 * @since 1.0
+	 */
+	public static void measure(int size){
+		int width = (int) Math.ceil(Math.sqrt(size));
+		long base = used();
+
+		LSR[] routers = new LSR[size];
+		for (int i = 0; i < size; i ++) {
+			routers[i] = new LSR(i + 1);
+			routers[i].setDisplayCommands(false);
+		}
+		long afterRouters = used();
+
+		// every router is linked to the one to its right and the one below it
+		long nics = 0;
+		for (int i = 0; i < size; i ++) {
+			if ((i + 1) % width != 0 && i + 1 < size) {
+				new OtoOLink(new LSRNIC(routers[i]), new LSRNIC(routers[i + 1]));
+				nics += 2;
+			}
+			if (i + width < size) {
+				new OtoOLink(new LSRNIC(routers[i]), new LSRNIC(routers[i + width]));
+				nics += 2;
+			}
+		}
+		long afterLinks = used();
+
+		// each LSP runs two rows down, so it has a single shortest path
+		int lsps = Math.max(1, Math.min(MAX_LSPS, (size - 2 * width) / 10));
+		int step = Math.max(1, (size - 2 * width) / lsps);
+		for (int i = 0; i < lsps; i ++)
+			routers[i * step].createPacket(i * step + 2 * width + 1, 0);
+		run(SETUP_TICKS);
+		long afterFirst = used();
+		for (int i = 0; i < lsps; i ++)
+			routers[i * step].createPacket(i * step + 2 * width + 1, 1);
+		run(SETUP_TICKS);
+		long afterSecond = used();
+
+		long delivered = 0;
+		for (int i = 0; i < size; i ++)
+			delivered += routers[i].getDelivered();
+		if (delivered != 2 * lsps) {
+			System.out.println("(ScaleHarness) Error: " + delivered + " of " + 2 * lsps + " packets were delivered");
+			System.exit(1);
+		}
+		System.out.println("** SCALE " + size + " ROUTER " + (afterRouters - base) / size + " NIC " + (afterLinks - afterRouters) / nics
+				+ " LSP " + (afterSecond - afterFirst) / lsps + " HEAP " + (afterSecond >> 20) + "MB **");
+		routers[0].getAddress();	// keeps the routers reachable up to the last measurement
+	}
+
+	/**
+	 * Runs the network for a number of time units
+	 */
+	private static void run(int ticks){
+		for (int i = 0; i < ticks; i ++) {
+			SimulationClock.advance();
+			LSR.runTimers();
+			LSRNIC.sendActivePackets();
+			LSRNIC.recieveActiveControl();
+			LSRNIC.recieveActivePackets();
+		}
+	}
+
+	/**
+	 * Returns the bytes in use after a few garbage collections
+	 */
+	private static long used(){
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 4; i ++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	/**
+	 * Measures each size in its own process
+	 * @param sizes the network sizes
+	 * @return the bytes per router, nic and LSP of each size, null for a size whose process failed
+	 */
+	private static long[][] launch(int[] sizes) throws IOException, InterruptedException{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classpath = System.getProperty("java.class.path");
+		String heap = "-Xmx" + (Runtime.getRuntime().maxMemory() >> 20) + "m";
+		long[][] results = new long[sizes.length][];
+		for (int i = 0; i < sizes.length; i ++) {
+			ProcessBuilder builder = new ProcessBuilder(java, heap, "-XX:+UseSerialGC", "-cp", classpath,
+					ScaleHarness.class.getName(), "-measure", "" + sizes[i]);
+			builder.redirectErrorStream(true);
+			Process child = builder.start();
+			BufferedReader in = new BufferedReader(new InputStreamReader(child.getInputStream()));
+			String line;
+			while ((line = in.readLine()) != null) {
+				System.out.println(line);
+				String[] words = line.split(" ");
+				if (line.startsWith("** SCALE ") && words.length >= 9) {
+					results[i] = new long[] {Long.parseLong(words[4]), Long.parseLong(words[6]), Long.parseLong(words[8])};
+				}
+			}
+			if (child.waitFor() != 0) {
+				results[i] = null;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Measures networks of growing size and checks the figures against their budgets
+	 * @param args the sizes to measure, 1000 10000 100000 if none are given
+	 * @since 1.0
+	 */
+	public static void main(String args[]) throws Exception{
+		if (args.length == 2 && args[0].equals("-measure")) {
+			measure(Integer.parseInt(args[1]));
+			return;
+		}
+		int[] sizes = {1000, 10000, 100000};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i ++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		long[][] results = launch(sizes);
+
+		ArrayList<String> failures = new ArrayList<String>();
+		for (int i = 0; i < sizes.length; i ++) {
+			if (results[i] == null) {
+				failures.add(sizes[i] + " routers: the measurement failed");
+				continue;
+			}
+			if (results[i][0] > ROUTER_BUDGET)
+				failures.add(sizes[i] + " routers: " + results[i][0] + " bytes per router, budget " + ROUTER_BUDGET);
+			if (results[i][1] > NIC_BUDGET)
+				failures.add(sizes[i] + " routers: " + results[i][1] + " bytes per nic, budget " + NIC_BUDGET);
+			if (results[i][2] > LSP_BUDGET)
+				failures.add(sizes[i] + " routers: " + results[i][2] + " bytes per LSP, budget " + LSP_BUDGET);
+		}
+		int last = sizes.length - 1;
+		if (last > 0 && results[0] != null && results[last] != null && results[last][0] > results[0][0] * GROWTH) {
+			failures.add("a router takes " + results[last][0] + " bytes with " + sizes[last] + " routers but "
+					+ results[0][0] + " with " + sizes[0]);
+		}
+
+		for (int i = 0; i < failures.size(); i ++)
+			System.out.println("** REGRESSION " + failures.get(i) + " **");
+		if (!failures.isEmpty()) {
+			System.exit(1);
+		}
+		System.out.println("** SCALE OK **");
+	}
+}
@@ -0,0 +1,153 @@
+package NetworkElements;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import DataTypes.*;
+
+/**
+ * ScenarioRecorder - records the external inputs of a simulation run so it can be replayed
+ *
+ * While recording, every router, nic and link that is created and every packet and bandwidth
+ * allocation requested from outside the network is written to a log together with the tick
+ * it happened at and the simulation seed. ScenarioReplay reads the log back.
+ */
+public class ScenarioRecorder {
+	static private PrintWriter out = null; // the log being written, null if not recording
+
+	/**
+	 * Starts recording to a file
+	 * @param fileName the name of the log file
+	 * @throws IOException if the file can not be created
+	 * @since 1.0
+	 */
+	public static void start(String fileName) throws IOException{
+		out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+		out.println("SEED " + SimulationRandom.getSeed());
+		out.println("TIMERS " + LSR.getRefreshInterval() + " " + LSR.getIdleTimeout());
+		out.println("BUNDLE " + (LSR.isBundling() ? 1 : 0));
+	}
+
+	/**
+	 * Marks the end of the run and closes the log
+	 * @since 1.0
+	 */
+	public static void stop(){
+		if (out == null) {
+			return;
+		}
+		out.println(SimulationClock.getTick() + " END");
+		out.close();
+		out = null;
+	}
+
+	/**
+	 * Returns whether a run is being recorded
+	 * @return true if recording
+	 * @since 1.0
+	 */
+	public static boolean isRecording(){
+		return out != null;
+	}
+
+	/**
+	 * Records that a router was created
+	 * @param router the new router
+	 * @since 1.0
+	 */
+	public static void routerCreated(LSR router){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " ROUTER " + router.getAddress());
+	}
+
+	/**
+	 * Records that a nic was added to a router
+	 * @param nic the new nic
+	 * @since 1.0
+	 */
+	public static void nicCreated(LSRNIC nic){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " NIC " + nic.getParent().getAddress());
+	}
+
+	/**
+	 * Records that two nics were connected by a link
+	 * @param r1NIC one end of the link
+	 * @param r2NIC the other end of the link
+	 * @since 1.0
+	 */
+	public static void linkCreated(LSRNIC r1NIC, LSRNIC r2NIC){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " LINK " + r1NIC.getParent().getAddress() + " " + r1NIC.getIndex()
+					+ " " + r2NIC.getParent().getAddress() + " " + r2NIC.getIndex());
+	}
+
+	/**
+	 * Records a call to LSR.allocateBandwidth
+	 * @since 1.0
+	 */
+	public static void bandwidthAllocated(LSR router, int dest, int PHB, int Class, int Bandwidth){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " BANDWIDTH " + router.getAddress() + " " + dest + " " + PHB + " " + Class + " " + Bandwidth);
+	}
+
+	/**
+	 * Records a call to LSR.createPacket
+	 * @since 1.0
+	 */
+	public static void packetCreated(LSR router, int destination, int DSCP){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " PACKET " + router.getAddress() + " " + destination + " " + DSCP);
+	}
+
+	/**
+	 * Records a call to LSR.tearDownLSP
+	 * @since 1.0
+	 */
+	public static void lspTornDown(LSR router, int dest, int DSCP){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " TEARDOWN " + router.getAddress() + " " + dest + " " + DSCP);
+	}
+
+	/**
+	 * Records a call to LSR.rerouteLSP, the route is written as comma separated addresses
+	 * @since 1.0
+	 */
+	public static void lspRerouted(LSR router, int dest, int DSCP, int[] route){
+		if (out != null) {
+			StringBuilder hops = new StringBuilder();
+			for (int i = 0; i < route.length; i ++)
+				hops.append(i == 0 ? "" : ",").append(route[i]);
+			out.println(SimulationClock.getTick() + " REROUTE " + router.getAddress() + " " + dest + " " + DSCP + " " + hops);
+		}
+	}
+
+	/**
+	 * Records a call to LSR.addP2MPLeaf
+	 * @since 1.0
+	 */
+	public static void p2mpLeafAdded(LSR router, int group, int leaf, int DSCP){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " P2MPLEAF " + router.getAddress() + " " + group + " " + leaf + " " + DSCP);
+	}
+
+	/**
+	 * Records a call to LSR.createP2MPPacket
+	 * @since 1.0
+	 */
+	public static void p2mpPacketCreated(LSR router, int group, int DSCP){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " P2MPPACKET " + router.getAddress() + " " + group + " " + DSCP);
+	}
+
+	/**
+	 * Records a call to FluidNetwork.addFlow
+	 * @since 1.0
+	 */
+	public static void fluidFlowAdded(LSR router, int dest, int DSCP, double rate){
+		if (out != null)
+			out.println(SimulationClock.getTick() + " FLUID " + router.getAddress() + " " + dest + " " + DSCP + " " + rate);
+	}
+}
@@ -0,0 +1,141 @@
+package NetworkElements;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+import DataTypes.*;
+
+/**
+ * ScenarioReplay - re-runs the external inputs recorded by ScenarioRecorder
+ *
+ * Creating the replay sets the simulation seed and soft state timers from the log. The driver then calls apply
+ * once per tick, which rebuilds the network and repeats every recorded input at the tick
+ * it was originally made.
+ */
+public class ScenarioReplay {
+	private ArrayList<String[]> events = new ArrayList<String[]>(); // the recorded inputs, in order
+	private int next = 0; // the first event that has not been applied yet
+	private long endTick = 0; // the tick the recorded run stopped at
+	private TreeMap<Integer, LSR> routers = new TreeMap<Integer, LSR>(); // the routers built so far
+	private ArrayList<LSR> routerOrder = new ArrayList<LSR>(); // the routers in the order they were created
+	private FluidNetwork fluid = new FluidNetwork(); // the fluid flows added so far
+
+	/**
+	 * Reads a recorded log and sets the simulation seed it was recorded with
+	 * @param fileName the name of the log file
+	 * @throws IOException if the log can not be read
+	 * @since 1.0
+	 */
+	public ScenarioReplay(String fileName) throws IOException{
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+		try{
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.trim().split(" ");
+				if (fields[0].equals("SEED")) {
+					SimulationRandom.setSeed(Long.parseLong(fields[1]));
+				}
+				else if (fields[0].equals("TIMERS")) {
+					LSR.setSoftStateTimers(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+				}
+				else if (fields[0].equals("BUNDLE")) {
+					LSR.setBundling(fields[1].equals("1"));
+				}
+				else if (fields[1].equals("END")) {
+					this.endTick = Long.parseLong(fields[0]);
+				}
+				else {
+					this.events.add(fields);
+				}
+			}
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the tick the recorded run stopped at
+	 * @return the last tick of the recorded run
+	 * @since 1.0
+	 */
+	public long getEndTick(){
+		return this.endTick;
+	}
+
+	/**
+	 * Returns the routers created by the replay, in the order they were created
+	 * @return the routers of the network
+	 * @since 1.0
+	 */
+	public ArrayList<LSR> getRouters(){
+		return this.routerOrder;
+	}
+
+	/**
+	 * Returns the fluid flows of the replay, they are added as the recorded inputs are applied
+	 * @return the fluid network
+	 * @since 1.0
+	 */
+	public FluidNetwork getFluidNetwork(){
+		return this.fluid;
+	}
+
+	/**
+	 * Applies every recorded input up to and including the given tick
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void apply(long tick){
+		while (this.next < this.events.size() && Long.parseLong(this.events.get(this.next)[0]) <= tick) {
+			String[] event = this.events.get(this.next++);
+			String type = event[1];
+			if (type.equals("ROUTER")) {
+				LSR router = new LSR(Integer.parseInt(event[2]));
+				this.routers.put(router.getAddress(), router);
+				this.routerOrder.add(router);
+			}
+			else if (type.equals("NIC")) {
+				new LSRNIC(this.routers.get(Integer.parseInt(event[2])));
+			}
+			else if (type.equals("LINK")) {
+				LSRNIC r1NIC = this.routers.get(Integer.parseInt(event[2])).getNIC(Integer.parseInt(event[3]));
+				LSRNIC r2NIC = this.routers.get(Integer.parseInt(event[4])).getNIC(Integer.parseInt(event[5]));
+				new OtoOLink(r1NIC, r2NIC);
+			}
+			else if (type.equals("BANDWIDTH")) {
+				this.routers.get(Integer.parseInt(event[2])).allocateBandwidth(Integer.parseInt(event[3]),
+						Integer.parseInt(event[4]), Integer.parseInt(event[5]), Integer.parseInt(event[6]));
+			}
+			else if (type.equals("PACKET")) {
+				this.routers.get(Integer.parseInt(event[2])).createPacket(Integer.parseInt(event[3]), Integer.parseInt(event[4]));
+			}
+			else if (type.equals("P2MPLEAF")) {
+				this.routers.get(Integer.parseInt(event[2])).addP2MPLeaf(Integer.parseInt(event[3]), Integer.parseInt(event[4]),
+						Integer.parseInt(event[5]));
+			}
+			else if (type.equals("P2MPPACKET")) {
+				this.routers.get(Integer.parseInt(event[2])).createP2MPPacket(Integer.parseInt(event[3]), Integer.parseInt(event[4]));
+			}
+			else if (type.equals("FLUID")) {
+				this.fluid.addFlow(this.routers.get(Integer.parseInt(event[2])), Integer.parseInt(event[3]),
+						Integer.parseInt(event[4]), Double.parseDouble(event[5]));
+			}
+			else if (type.equals("TEARDOWN")) {
+				this.routers.get(Integer.parseInt(event[2])).tearDownLSP(Integer.parseInt(event[3]), Integer.parseInt(event[4]));
+			}
+			else if (type.equals("REROUTE")) {
+				String[] hops = event.length > 5 ? event[5].split(",") : new String[0];
+				int[] route = new int[hops.length];
+				for (int i = 0; i < hops.length; i ++)
+					route[i] = Integer.parseInt(hops[i]);
+				this.routers.get(Integer.parseInt(event[2])).rerouteLSP(Integer.parseInt(event[3]), Integer.parseInt(event[4]), route);
+			}
+			else {
+				System.err.println("(ScenarioReplay) Error: unknown event " + type);
+			}
+		}
+	}
+}
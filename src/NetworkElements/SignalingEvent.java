@@ -0,0 +1,68 @@
+package NetworkElements;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import DataTypes.Packet;
+
+/**
+ * SignalingEvent - a Flight Recorder event for the handling of one OAM message at a router
+ *
+ * The event is disabled by default, see LSR.receivePacket for how it is enabled. While it is
+ * off the only cost is one check of PROBE per OAM packet.
+ */
+@Name("packet.Signaling")
+@Label("Signaling Message")
+@Description("Handling of a PATH, RESV, RESVCONF, PATHERR, RESVERR or teardown message at a router")
+@Category({"MPLS Simulator", "Signaling"})
+@Enabled(false)
+@StackTrace(false)
+public class SignalingEvent extends Event {
+	static final SignalingEvent PROBE = new SignalingEvent(); // only used to ask whether the event is enabled
+
+	@Label("Router")
+	int router;
+
+	@Label("Message")
+	String message;
+
+	@Label("Source")
+	int source;
+
+	@Label("Destination")
+	int dest;
+
+	@Label("DSCP")
+	int DSCP;
+
+	@Label("Tick")
+	long tick;
+
+	/**
+	 * Returns the name of the OAM message a packet carries
+	 */
+	static String messageOf(Packet packet){
+		if (packet.getBundle() != null)
+			return messageOf(packet.getBundle()[0]) + " BUNDLE";
+		if (packet.getIsPath())
+			return packet.getIsRefresh() ? "PATH REFRESH" : "PATH";
+		if (packet.getIsResv())
+			return "RESV";
+		if (packet.getIsResvConf())
+			return "RESVCONF";
+		if (packet.getIsPathErr())
+			return "PATHERR";
+		if (packet.getIsResvErr())
+			return "RESVERR";
+		if (packet.getIsPathTear())
+			return "PATHTEAR";
+		if (packet.getIsResvTear())
+			return "RESVTEAR";
+		return "OAM";
+	}
+}
@@ -0,0 +1,249 @@
+package NetworkElements;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * StatisticsReader - reads the column file written by StatisticsWriter
+ *
+ * The schemas and the index are read when the file is opened. Chunks are only read and
+ * inflated when a table is asked for, and only the chunks whose ticks fall in the range asked
+ * for, so a span of a long run is read without touching the rest of the file.
+ */
+public class StatisticsReader {
+	private FileChannel channel; // the file being read
+	private String[] tables; // the name of each table
+	private String[][] columns; // the column names of each table
+	private byte[] chunkTable; // the table of each chunk
+	private int[] chunkRows; // the number of rows of each chunk
+	private long[] chunkFirst, chunkLast; // the first and last tick of each chunk
+	private long[] chunkOffset; // the file offset of each chunk
+
+	/**
+	 * Opens a statistics file and reads its schemas and index
+	 * @param fileName the name of the file
+	 * @throws IOException if the file can not be read or is not a statistics file
+	 * @since 1.0
+	 */
+	public StatisticsReader(String fileName) throws IOException{
+		this.channel = new FileInputStream(fileName).getChannel();
+
+		ByteBuffer schema = this.read(0, (int) Math.min(1024, this.channel.size()));
+		if (schema.getLong() != StatisticsWriter.MAGIC || schema.getInt() != StatisticsWriter.VERSION) {
+			throw new IOException(fileName + " is not a statistics file of this version");
+		}
+		this.tables = new String[schema.get()];
+		this.columns = new String[this.tables.length][];
+		for (int i = 0; i < this.tables.length; i ++) {
+			this.tables[i] = getName(schema);
+			this.columns[i] = new String[schema.get()];
+			for (int j = 0; j < this.columns[i].length; j ++)
+				this.columns[i][j] = getName(schema);
+		}
+
+		ByteBuffer footer = this.read(this.channel.size() - 20, 20);
+		long indexOffset = footer.getLong();
+		int chunks = footer.getInt();
+		if (footer.getLong() != StatisticsWriter.MAGIC) {
+			throw new IOException(fileName + " has no index, the run was not closed");
+		}
+		ByteBuffer index = this.read(indexOffset, chunks * StatisticsWriter.INDEX_ENTRY);
+		this.chunkTable = new byte[chunks];
+		this.chunkRows = new int[chunks];
+		this.chunkFirst = new long[chunks];
+		this.chunkLast = new long[chunks];
+		this.chunkOffset = new long[chunks];
+		for (int i = 0; i < chunks; i ++) {
+			this.chunkTable[i] = index.get();
+			this.chunkRows[i] = index.getInt();
+			this.chunkFirst[i] = index.getLong();
+			this.chunkLast[i] = index.getLong();
+			this.chunkOffset[i] = index.getLong();
+		}
+	}
+
+	/**
+	 * Returns the number of the table with a name
+	 * @param name the name of the table
+	 * @return the table, -1 if there is no such table
+	 * @since 1.0
+	 */
+	public int getTable(String name){
+		for (int i = 0; i < this.tables.length; i ++)
+			if (this.tables[i].equals(name))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the column names of a table
+	 * @param table the table
+	 * @return the column names, tick first
+	 * @since 1.0
+	 */
+	public String[] getColumns(int table){
+		return this.columns[table].clone();
+	}
+
+	/**
+	 * Returns the number of chunks in the file
+	 * @return the chunk count
+	 * @since 1.0
+	 */
+	public int getChunkCount(){
+		return this.chunkTable.length;
+	}
+
+	/**
+	 * Reads and decodes one chunk
+	 * @param chunk the chunk, below getChunkCount
+	 * @return the values of the chunk by column and row
+	 * @throws IOException if the chunk can not be read or inflated
+	 * @since 1.0
+	 */
+	public long[][] readChunk(int chunk) throws IOException{
+		ByteBuffer header = this.read(this.chunkOffset[chunk], StatisticsWriter.CHUNK_HEADER);
+		int table = header.get();
+		int rows = header.getInt();
+		header.getLong();
+		header.getLong();
+		byte[] encoded = new byte[header.getInt()];
+		int length = header.getInt();
+		ByteBuffer deflated = this.read(this.chunkOffset[chunk] + StatisticsWriter.CHUNK_HEADER, length);
+
+		Inflater inflater = new Inflater();
+		inflater.setInput(deflated.array(), 0, length);
+		try {
+			int done = 0;
+			while (done < encoded.length && !inflater.finished())
+				done += inflater.inflate(encoded, done, encoded.length - done);
+		}
+		catch (DataFormatException e) {
+			throw new IOException("chunk " + chunk + " is damaged", e);
+		}
+		finally {
+			inflater.end();
+		}
+
+		ByteBuffer in = ByteBuffer.wrap(encoded);
+		long[][] values = new long[this.columns[table].length][rows];
+		for (int i = 0; i < values.length; i ++) {
+			long previous = 0;
+			for (int j = 0; j < rows; j ++) {
+				long zigzag = getVarLong(in);
+				previous += (zigzag >>> 1) ^ -(zigzag & 1);
+				values[i][j] = previous;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Writes the rows of a table within a range of ticks as comma separated values, the column
+	 * names first
+	 * @param table the table
+	 * @param fromTick the first tick to write
+	 * @param toTick the last tick to write
+	 * @param out where to write the rows
+	 * @throws IOException if the file can not be read
+	 * @since 1.0
+	 */
+	public void printTable(int table, long fromTick, long toTick, PrintStream out) throws IOException{
+		out.println(String.join(",", this.columns[table]));
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < this.chunkTable.length; i ++) {
+			if (this.chunkTable[i] != table || this.chunkLast[i] < fromTick || this.chunkFirst[i] > toTick) {
+				continue;
+			}
+			long[][] values = this.readChunk(i);
+			for (int j = 0; j < this.chunkRows[i]; j ++) {
+				if (values[0][j] < fromTick || values[0][j] > toTick) {
+					continue;
+				}
+				line.setLength(0);
+				for (int k = 0; k < values.length; k ++) {
+					if (k > 0)
+						line.append(',');
+					line.append(values[k][j]);
+				}
+				out.println(line);
+			}
+		}
+	}
+
+	/**
+	 * Closes the file
+	 * @throws IOException if the file can not be closed
+	 * @since 1.0
+	 */
+	public void close() throws IOException{
+		this.channel.close();
+	}
+
+	/**
+	 * Reads bytes at an offset of the file
+	 */
+	private ByteBuffer read(long offset, int length) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (this.channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("unexpected end of file");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Reads a name written as its length and its characters
+	 */
+	private static String getName(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.get()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads an unsigned value written in 7 bit groups, low group first
+	 */
+	private static long getVarLong(ByteBuffer buffer){
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Prints one table of a statistics file as comma separated values
+	 * @param args the file, the table (nic, link or router) and optionally the first and last tick
+	 * @since 1.0
+	 */
+	public static void main(String args[]) throws IOException{
+		if (args.length < 2) {
+			System.err.println("usage: StatisticsReader file table [fromTick toTick]");
+			return;
+		}
+		StatisticsReader reader = new StatisticsReader(args[0]);
+		int table = reader.getTable(args[1]);
+		if (table < 0) {
+			System.err.println("(StatisticsReader) Error: no table " + args[1]);
+		}
+		else {
+			long from = args.length > 2 ? Long.parseLong(args[2]) : Long.MIN_VALUE;
+			long to = args.length > 3 ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+			reader.printTable(table, from, to, System.out);
+		}
+		reader.close();
+	}
+}
@@ -0,0 +1,348 @@
+package NetworkElements;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * StatisticsWriter - samples the counters of every router, nic and link into a column file
+ *
+ * Every interval ticks one row per nic, per link direction and per router is appended to three
+ * tables with fixed columns. Rows are collected in chunks of CHUNK_ROWS rows. A full chunk is
+ * handed to a writer thread, which stores each column delta and varint encoded, deflates the
+ * chunk and appends it to the file through a channel. Only a few chunks can be in flight, when
+ * the writer falls behind the simulation waits for it instead of holding the run in memory.
+ * The file ends with an index of the table, tick range and offset of every chunk, so
+ * StatisticsReader can read one table or time span without decoding the rest.
+ *
+ * The file is big endian: the magic, the version, the table schemas, the chunks, the index and
+ * a footer with the offset of the index, the number of chunks and the magic again. A chunk is
+ * its table (byte), rows (int), first and last tick (long), encoded and deflated length (int)
+ * followed by the deflated columns, one after the other.
+ */
+public class StatisticsWriter {
+	public static final int NIC = 0, LINK = 1, ROUTER = 2; // the tables
+	public static final String[] TABLES = { "nic", "link", "router" };
+	public static final String[][] COLUMNS = {
+		{ "tick", "router", "nic", "output", "input", "control", "dropped", "controlDropped", "peakBuffer", "fluidBacklog" },
+		{ "tick", "router", "nic", "packets", "fluidRate" },
+		{ "tick", "router", "lsps", "labels", "waitList", "delivered", "refused" } };
+	static final long MAGIC = 0x4d504c5353544154L; // "MPLSSTAT"
+	static final int VERSION = 1;
+	static final int CHUNK_HEADER = 29; // bytes before the deflated columns of a chunk
+	static final int INDEX_ENTRY = 29; // bytes per chunk in the index
+	private static final int CHUNK_ROWS = 4096; // rows per chunk
+	private static final int MAX_COLUMNS = 10; // columns of the widest table
+	private static final int CHUNKS_IN_FLIGHT = 4; // full chunks that may wait for the writer thread
+	private static final Chunk END = new Chunk(); // tells the writer thread to stop
+
+	private List<LSR> routers; // the routers sampled, with their nics and links
+	private int interval; // ticks between samples
+	private FileChannel channel; // the file the chunks are written to
+	private Chunk[] current = new Chunk[TABLES.length]; // the chunk being filled for each table, null if none
+	private ArrayBlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(CHUNKS_IN_FLIGHT); // chunks waiting for the writer thread
+	private ArrayBlockingQueue<Chunk> spare = new ArrayBlockingQueue<Chunk>(CHUNKS_IN_FLIGHT + TABLES.length + 1); // chunks the writer thread is done with
+	private Thread writer; // encodes, deflates and writes the full chunks
+	private volatile IOException failure = null; // the error that stopped the writer thread, thrown by close
+
+	// used by the writer thread only
+	private ByteBuffer encoded = ByteBuffer.allocate(CHUNK_ROWS * MAX_COLUMNS * 10); // the varint columns of a chunk
+	private byte[] deflated = new byte[1 << 16]; // the deflated columns of a chunk, grown when needed
+	private ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER);
+	private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private long position; // the file offset the next chunk is written at
+	private ArrayList<long[]> index = new ArrayList<long[]>(); // table, rows, first tick, last tick and offset of each chunk
+
+	/**
+	 * The rows of one table collected for one chunk, column by column
+	 */
+	private static class Chunk {
+		int table;
+		int rows = 0;
+		long[][] columns = new long[MAX_COLUMNS][CHUNK_ROWS];
+	}
+
+	/**
+	 * Creates a statistics file and starts its writer thread
+	 * @param fileName the name of the file
+	 * @param routers the routers to sample, with their nics and links
+	 * @param interval ticks between samples, at least 1
+	 * @throws IOException if the file can not be created
+	 * @since 1.0
+	 */
+	public StatisticsWriter(String fileName, List<LSR> routers, int interval) throws IOException{
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval must be at least 1, not " + interval);
+		}
+		this.routers = routers;
+		this.interval = interval;
+		this.channel = new FileOutputStream(fileName).getChannel();
+
+		ByteBuffer schema = ByteBuffer.allocate(1024);
+		schema.putLong(MAGIC);
+		schema.putInt(VERSION);
+		schema.put((byte) TABLES.length);
+		for (int i = 0; i < TABLES.length; i ++) {
+			putName(schema, TABLES[i]);
+			schema.put((byte) COLUMNS[i].length);
+			for (int j = 0; j < COLUMNS[i].length; j ++)
+				putName(schema, COLUMNS[i][j]);
+		}
+		schema.flip();
+		this.position = schema.remaining();
+		this.write(schema);
+
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				StatisticsWriter.this.drain();
+			}
+		}, "StatisticsWriter");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Samples every router, nic and link if the tick is a multiple of the interval
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void sample(long tick){
+		if (tick % this.interval != 0) {
+			return;
+		}
+		for (int i = 0; i < this.routers.size(); i ++) {
+			LSR router = this.routers.get(i);
+			int address = router.getAddress();
+			Chunk chunk = this.chunkOf(ROUTER);
+			int row = chunk.rows++;
+			chunk.columns[0][row] = tick;
+			chunk.columns[1][row] = address;
+			chunk.columns[2][row] = router.getLSPCount();
+			chunk.columns[3][row] = router.getLabelTableSize();
+			chunk.columns[4][row] = router.getWaitListLength();
+			chunk.columns[5][row] = router.getDelivered();
+			chunk.columns[6][row] = router.getRefused();
+			this.filled(chunk);
+
+			for (int j = 0; j < router.getNICCount(); j ++) {
+				LSRNIC nic = router.getNIC(j);
+				chunk = this.chunkOf(NIC);
+				row = chunk.rows++;
+				chunk.columns[0][row] = tick;
+				chunk.columns[1][row] = address;
+				chunk.columns[2][row] = j;
+				chunk.columns[3][row] = nic.getOutputQueueLength();
+				chunk.columns[4][row] = nic.getInputQueueLength();
+				chunk.columns[5][row] = nic.getControlQueueLength();
+				chunk.columns[6][row] = nic.getDropped();
+				chunk.columns[7][row] = nic.getControlDropped();
+				chunk.columns[8][row] = nic.getPeakBuffer();
+				chunk.columns[9][row] = Math.round(nic.getFluidBacklog());
+				this.filled(chunk);
+
+				OtoOLink link = nic.getLink();
+				if (link == null) {
+					continue;
+				}
+				chunk = this.chunkOf(LINK);
+				row = chunk.rows++;
+				chunk.columns[0][row] = tick;
+				chunk.columns[1][row] = address;
+				chunk.columns[2][row] = j;
+				chunk.columns[3][row] = link.getPackets(nic);
+				chunk.columns[4][row] = Math.round(link.getFluidRate(nic));
+				this.filled(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Writes the rows still collected, the index and the footer and closes the file
+	 * @throws IOException if the file could not be written
+	 * @since 1.0
+	 */
+	public void close() throws IOException{
+		for (int i = 0; i < TABLES.length; i ++) {
+			if (this.current[i] != null) {
+				this.handOff(this.current[i]);
+				this.current[i] = null;
+			}
+		}
+		this.handOff(END);
+		try {
+			this.writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.failure == null) {
+			ByteBuffer index = ByteBuffer.allocate(this.index.size() * INDEX_ENTRY + 20);
+			for (int i = 0; i < this.index.size(); i ++) {
+				long[] entry = this.index.get(i);
+				index.put((byte) entry[0]);
+				index.putInt((int) entry[1]);
+				index.putLong(entry[2]);
+				index.putLong(entry[3]);
+				index.putLong(entry[4]);
+			}
+			index.putLong(this.position);
+			index.putInt(this.index.size());
+			index.putLong(MAGIC);
+			index.flip();
+			try {
+				this.write(index);
+			}
+			catch (IOException e) {
+				this.failure = e;
+			}
+		}
+		this.channel.close();
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * Returns the chunk rows of a table are added to
+	 */
+	private Chunk chunkOf(int table){
+		Chunk chunk = this.current[table];
+		if (chunk == null) {
+			chunk = this.spare.poll();
+			if (chunk == null) {
+				chunk = new Chunk();
+			}
+			chunk.table = table;
+			chunk.rows = 0;
+			this.current[table] = chunk;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Hands a chunk to the writer thread once it is full
+	 */
+	private void filled(Chunk chunk){
+		if (chunk.rows == CHUNK_ROWS) {
+			this.current[chunk.table] = null;
+			this.handOff(chunk);
+		}
+	}
+
+	/**
+	 * Queues a chunk for the writer thread, waiting while the queue is full
+	 */
+	private void handOff(Chunk chunk){
+		try {
+			this.full.put(chunk);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The writer thread, writes chunks until it is told to stop. After an error the chunks are
+	 * still taken from the queue so the simulation never waits for a writer that has given up
+	 */
+	private void drain(){
+		while (true) {
+			Chunk chunk;
+			try {
+				chunk = this.full.take();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			if (chunk == END) {
+				return;
+			}
+			if (this.failure == null) {
+				try {
+					this.writeChunk(chunk);
+				}
+				catch (IOException e) {
+					this.failure = e;
+				}
+			}
+			this.spare.offer(chunk);
+		}
+	}
+
+	/**
+	 * Encodes, deflates and writes a chunk and adds it to the index
+	 */
+	private void writeChunk(Chunk chunk) throws IOException{
+		ByteBuffer encoded = this.encoded;
+		encoded.clear();
+		for (int i = 0; i < COLUMNS[chunk.table].length; i ++) {
+			long[] column = chunk.columns[i];
+			long previous = 0;
+			for (int j = 0; j < chunk.rows; j ++) {
+				long delta = column[j] - previous;
+				putVarLong(encoded, (delta << 1) ^ (delta >> 63));
+				previous = column[j];
+			}
+		}
+
+		this.deflater.reset();
+		this.deflater.setInput(encoded.array(), 0, encoded.position());
+		this.deflater.finish();
+		int length = 0;
+		while (!this.deflater.finished()) {
+			if (length == this.deflated.length) {
+				this.deflated = Arrays.copyOf(this.deflated, length * 2);
+			}
+			length += this.deflater.deflate(this.deflated, length, this.deflated.length - length);
+		}
+
+		long first = chunk.columns[0][0], last = chunk.columns[0][chunk.rows - 1];
+		this.header.clear();
+		this.header.put((byte) chunk.table);
+		this.header.putInt(chunk.rows);
+		this.header.putLong(first);
+		this.header.putLong(last);
+		this.header.putInt(encoded.position());
+		this.header.putInt(length);
+		this.header.flip();
+		this.write(this.header);
+		this.write(ByteBuffer.wrap(this.deflated, 0, length));
+		this.index.add(new long[] { chunk.table, chunk.rows, first, last, this.position });
+		this.position += CHUNK_HEADER + length;
+	}
+
+	/**
+	 * Writes a whole buffer to the file
+	 */
+	private void write(ByteBuffer buffer) throws IOException{
+		while (buffer.hasRemaining())
+			this.channel.write(buffer);
+	}
+
+	/**
+	 * Writes a name as its length and its characters
+	 */
+	private static void putName(ByteBuffer buffer, String name){
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		buffer.put((byte) bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes an unsigned value in 7 bit groups, low group first
+	 */
+	private static void putVarLong(ByteBuffer buffer, long value){
+		while ((value & ~0x7fL) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+}
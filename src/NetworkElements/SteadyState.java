@@ -0,0 +1,228 @@
+package NetworkElements;
+
+import java.util.*;
+
+import DataTypes.*;
+
+/**
+ * SteadyState - detects when the network repeats itself every tick and skips ahead in bulk
+ *
+ * After every packet level tick the driver calls observe, which takes what each router
+ * delivered and gave out trace ids for, what each nic sent and dropped, the buffer lengths,
+ * credits and the latency recorded in the tick. Once these have been the same for a window of
+ * ticks, no signaling is pending anywhere and no packet arrives at a buffer above its RED
+ * threshold, so RED draws no random numbers, each further tick would do the same per packet
+ * work again. fastForward then adds the counts of
+ * one tick for every tick skipped and moves the clock, stopping short of the next soft state
+ * timer. Any change of the inputs, a link or a label table shows up in the next observation
+ * and the network is simulated packet by packet until it has settled again.
+ *
+ * Packets created in skipped ticks are never built, so the trace ids held in the buffers and
+ * the checksum of a fast-forwarded run differ from a run simulated packet by packet. Runs that
+ * are recorded or driven by actors are never fast-forwarded.
+ */
+public class SteadyState {
+	private List<LSR> routers; // the routers of the network
+	private int window; // ticks the network must repeat itself before it is fast-forwarded
+	private long[] counters = null; // the cumulative counters at the end of the last tick
+	private long[] tick = null; // how much each counter moved in the last tick
+	private long[] levels = null; // the buffer lengths and credits at the end of the last tick
+	private ArrayList<IdentityHashMap<FECLatency, FECLatency>> latency = new ArrayList<IdentityHashMap<FECLatency, FECLatency>>(); // the latency recorded so far, by router and the router's entry
+	private ArrayList<IdentityHashMap<FECLatency, FECLatency>> tickLatency = new ArrayList<IdentityHashMap<FECLatency, FECLatency>>(); // the latency recorded in the last tick, by router and the router's entry
+	private int repeats = 0; // consecutive ticks that were the same as the one before
+	private long skipped = 0; // ticks fast-forwarded so far
+
+	/**
+	 * Watches a network for steady state
+	 * @param routers the routers of the network
+	 * @param window the number of identical ticks before the network is fast-forwarded, at least 2
+	 * @since 1.0
+	 */
+	public SteadyState(List<LSR> routers, int window){
+		if (window < 2)
+			throw new IllegalArgumentException("(SteadyState) Error: the window must be at least 2 ticks");
+		this.routers = routers;
+		this.window = window;
+	}
+
+	/**
+	 * Takes the counters at the end of a packet level tick and compares the tick with the one before
+	 * @since 1.0
+	 */
+	public void observe(){
+		long[] counters = this.counters();
+		long[] levels = this.levels();
+		long[] tick = null;
+		if (this.counters != null && this.counters.length == counters.length) {
+			tick = new long[counters.length];
+			for (int i = 0; i < counters.length; i ++)
+				tick[i] = counters[i] - this.counters[i];
+		}
+		boolean same = tick != null && Arrays.equals(tick, this.tick) && Arrays.equals(levels, this.levels);
+		same = this.observeLatency() && same;
+		for (int i = 0; same && i < this.routers.size(); i ++) {
+			LSR router = this.routers.get(i);
+			same = router.isQuiet();
+			for (int j = 0; same && j < router.getNICCount(); j ++)
+				same = router.getNIC(j).isQuiet();
+		}
+		this.counters = counters;
+		this.tick = tick;
+		this.levels = levels;
+		this.repeats = same ? this.repeats + 1 : 0;
+	}
+
+	/**
+	 * Returns whether the network has repeated itself for the whole window
+	 * @return true if the network can be fast-forwarded
+	 * @since 1.0
+	 */
+	public boolean isSteady(){
+		return this.repeats >= this.window;
+	}
+
+	/**
+	 * Skips ticks in bulk if the network is in steady state. The clock is left at the last tick
+	 * skipped, so the driver goes on with the next tick as usual
+	 * @param limit the number of ticks the driver allows to be skipped, up to its next input
+	 * @return the number of ticks skipped, 0 if the network has to be simulated packet by packet
+	 * @since 1.0
+	 */
+	public long fastForward(long limit){
+		if (!this.isSteady() || ScenarioRecorder.isRecording()) {
+			return 0;
+		}
+		long now = SimulationClock.getTick();
+		long ticks = Math.min(limit, LSR.nextTimerDeadline() - now - 1);
+		if (ticks <= 0) {
+			return 0;
+		}
+		int at = 0;
+		for (int i = 0; i < this.routers.size(); i ++) {
+			LSR router = this.routers.get(i);
+			for (int j = 0; j < router.getNICCount(); j ++) {
+				LSRNIC nic = router.getNIC(j);
+				if (!nic.isLossless() && this.levels[at + 3] > nic.getStartDropAt())	// RED could draw
+					return 0;
+				at += 4;
+			}
+		}
+
+		at = 0;
+		for (int i = 0; i < this.routers.size(); i ++) {
+			LSR router = this.routers.get(i);
+			int traceIDs = (int) this.tick[at];
+			long delivered = this.tick[at + 1];
+			long refused = this.tick[at + 2];
+			at += 3;
+			long[] sent = new long[router.getNICCount()];
+			for (int j = 0; j < sent.length; j ++) {
+				sent[j] = this.tick[at];
+				at += 2;
+			}
+			router.fastForward(ticks, traceIDs, delivered, refused, this.tickLatency.get(i).values(), sent);
+			for (FECLatency fec : router.getLatency())
+				this.latency.get(i).put(fec, fec.copy());
+		}
+		SimulationClock.advance(ticks);
+		this.counters = this.counters();
+		this.skipped += ticks;
+		return ticks;
+	}
+
+	/**
+	 * Forgets what was observed, the network is simulated packet by packet for a whole window
+	 * before it can be fast-forwarded again
+	 * @since 1.0
+	 */
+	public void reset(){
+		this.counters = null;
+		this.tick = null;
+		this.levels = null;
+		this.repeats = 0;
+	}
+
+	/**
+	 * Returns the number of ticks fast-forwarded so far
+	 * @return the ticks skipped
+	 * @since 1.0
+	 */
+	public long getSkipped(){
+		return this.skipped;
+	}
+
+	/**
+	 * Reads the counters of every router and nic: per router the trace id, the packets delivered
+	 * and refused, then per nic the packets sent and dropped
+	 */
+	private long[] counters(){
+		int length = 0;
+		for (int i = 0; i < this.routers.size(); i ++)
+			length += 3 + 2 * this.routers.get(i).getNICCount();
+		long[] counters = new long[length];
+		int at = 0;
+		for (int i = 0; i < this.routers.size(); i ++) {
+			LSR router = this.routers.get(i);
+			counters[at++] = router.peekTraceID();
+			counters[at++] = router.getDelivered();
+			counters[at++] = router.getRefused();
+			for (int j = 0; j < router.getNICCount(); j ++) {
+				LSRNIC nic = router.getNIC(j);
+				counters[at++] = nic.getLink() == null ? 0 : nic.getLink().getPackets(nic);
+				counters[at++] = nic.getDropped();
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * Reads the output and input buffer lengths, the credits and the longest buffer a packet
+	 * arrived at in the tick of every nic
+	 */
+	private long[] levels(){
+		int length = 0;
+		for (int i = 0; i < this.routers.size(); i ++)
+			length += 4 * this.routers.get(i).getNICCount();
+		long[] levels = new long[length];
+		int at = 0;
+		for (int i = 0; i < this.routers.size(); i ++) {
+			LSR router = this.routers.get(i);
+			for (int j = 0; j < router.getNICCount(); j ++) {
+				LSRNIC nic = router.getNIC(j);
+				levels[at++] = nic.getOutputQueueLength();
+				levels[at++] = nic.getInputQueueLength();
+				levels[at++] = nic.getCredits();
+				levels[at++] = nic.takeArrivalPeak();
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * Works out the latency each router recorded in the last tick
+	 * @return true if it is the same as in the tick before
+	 */
+	private boolean observeLatency(){
+		boolean same = true;
+		for (int i = 0; i < this.routers.size(); i ++) {
+			if (this.latency.size() <= i) {
+				this.latency.add(new IdentityHashMap<FECLatency, FECLatency>());
+				this.tickLatency.add(new IdentityHashMap<FECLatency, FECLatency>());
+			}
+			IdentityHashMap<FECLatency, FECLatency> before = this.latency.get(i);
+			IdentityHashMap<FECLatency, FECLatency> lastTick = this.tickLatency.get(i);
+			IdentityHashMap<FECLatency, FECLatency> thisTick = new IdentityHashMap<FECLatency, FECLatency>();
+			for (FECLatency fec : this.routers.get(i).getLatency()) {	// a router keeps one entry per class for good
+				FECLatency earlier = before.get(fec);
+				FECLatency recorded = earlier == null ? fec.copy() : fec.since(earlier);
+				FECLatency previous = lastTick.get(fec);
+				if (previous == null ? recorded.getTotal().getCount() != 0 : !previous.sameAs(recorded))
+					same = false;
+				before.put(fec, fec.copy());
+				thisTick.put(fec, recorded);
+			}
+			this.tickLatency.set(i, thisTick);
+		}
+		return same;
+	}
+}
@@ -0,0 +1,38 @@
+package NetworkElements;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TickPhaseEvent - a Flight Recorder event for the send or receive phase of one router in one tick
+ *
+ * The event is disabled by default. While it is off the only cost is one check of PROBE per
+ * router and phase.
+ */
+@Name("packet.TickPhase")
+@Label("Tick Phase")
+@Description("The sendPackets or recievePackets phase of a router, with the number of packets moved")
+@Category({"MPLS Simulator", "Ticks"})
+@Enabled(false)
+@StackTrace(false)
+public class TickPhaseEvent extends Event {
+	static final TickPhaseEvent PROBE = new TickPhaseEvent(); // only used to ask whether the event is enabled
+
+	@Label("Router")
+	@Description("The router address, -1 for the phase of all active nics")
+	int router;
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Packets")
+	int packets;
+
+	@Label("Tick")
+	long tick;
+}
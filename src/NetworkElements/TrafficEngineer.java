@@ -0,0 +1,265 @@
+package NetworkElements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import DataTypes.*;
+
+/**
+ * TrafficEngineer - moves LSPs off congested links onto less loaded paths
+ *
+ * optimize is called once per time unit after the packets were moved. Every interval ticks it
+ * works out the load of every nic over the interval, the packets sent and dropped plus the
+ * fluid carried against the line rate, and calls the nics at or above the threshold hot. An LSP
+ * whose path crosses a hot nic is re-routed by its ingress onto the path with the fewest hops
+ * and least load that avoids every hot nic. The ingress does this make before break, so no
+ * packets are lost while the LSP moves. The load of an LSP is not known before it has moved
+ * and a move takes a few ticks to signal, so after a move the nic it relieved and the nics of
+ * the new path are left alone for a few intervals: no other LSP is moved off or onto them
+ * until the loads measured show the effect of the move.
+ */
+public class TrafficEngineer {
+	private static final int MAX_HOPS = 256; // guards against label loops while following an LSP
+	private static final int HOLD_DOWN = 4; // intervals the nics and the LSP of a move are left alone
+
+	private int interval; // ticks between two rounds
+	private double threshold; // the load, as a fraction of the line rate, from which a nic is hot
+	private ArrayList<LSR> routers = new ArrayList<LSR>(); // the routers whose LSPs are moved
+	private TreeMap<Integer, LSR> byAddress = new TreeMap<Integer, LSR>(); // the routers by address
+	private ArrayList<LSRNIC> nics = new ArrayList<LSRNIC>(); // the nics of all routers
+	private IdentityHashMap<LSRNIC, Integer> nicIndex = new IdentityHashMap<LSRNIC, Integer>(); // the position of each nic in nics
+	private long[] lastSent, lastDropped; // the counters of each nic at the last round
+	private double[] load; // the load of each nic over the last interval
+	private long[] settling; // the tick up to which each nic is left alone after an LSP was moved off or onto it
+	private HashMap<Long, Long> moved = new HashMap<Long, Long>(); // the tick up to which each LSP that was moved is left alone, by LSPState.key of ingress, destination and DSCP
+	private long moves = 0; // LSPs moved so far
+
+	/**
+	 * Creates a traffic engineer for a network
+	 * @param routers the routers of the network
+	 * @param interval ticks between two rounds
+	 * @param threshold the load, as a fraction of the line rate, from which a nic is hot
+	 * @since 1.0
+	 */
+	public TrafficEngineer(List<LSR> routers, int interval, double threshold){
+		this.interval = Math.max(1, interval);
+		this.threshold = threshold;
+		this.routers.addAll(routers);
+		for (int i = 0; i < routers.size(); i ++) {
+			LSR router = routers.get(i);
+			this.byAddress.put(router.getAddress(), router);
+			for (int j = 0; j < router.getNICCount(); j ++) {
+				this.nicIndex.put(router.getNIC(j), this.nics.size());
+				this.nics.add(router.getNIC(j));
+			}
+		}
+		this.lastSent = new long[this.nics.size()];
+		this.lastDropped = new long[this.nics.size()];
+		this.load = new double[this.nics.size()];
+		this.settling = new long[this.nics.size()];
+		for (int i = 0; i < this.nics.size(); i ++) {
+			LSRNIC nic = this.nics.get(i);
+			this.lastSent[i] = nic.getLink() == null ? 0 : nic.getLink().getPackets(nic);
+			this.lastDropped[i] = nic.getDropped();
+		}
+	}
+
+	/**
+	 * Measures the load of every nic and moves LSPs off the hot ones, if a round is due
+	 * @param tick the current tick
+	 * @since 1.0
+	 */
+	public void optimize(long tick){
+		if (tick % this.interval != 0) {
+			return;
+		}
+		boolean[] hot = new boolean[this.nics.size()];
+		boolean anyHot = false;
+		for (int i = 0; i < this.nics.size(); i ++) {
+			LSRNIC nic = this.nics.get(i);
+			long sent = nic.getLink() == null ? 0 : nic.getLink().getPackets(nic);
+			double offered = sent - this.lastSent[i] + nic.getDropped() - this.lastDropped[i];
+			if (nic.getLink() != null)
+				offered += nic.getLink().getFluidRate(nic) * this.interval;
+			this.lastSent[i] = sent;
+			this.lastDropped[i] = nic.getDropped();
+			this.load[i] = offered / ((double) nic.getLinerate() * this.interval);
+			hot[i] = this.load[i] >= this.threshold;
+			anyHot |= hot[i];
+		}
+		if (!anyHot) {
+			return;
+		}
+
+		// the nics a move is settling on are neither relieved again nor given more LSPs
+		boolean[] avoid = new boolean[this.nics.size()];
+		for (int i = 0; i < this.nics.size(); i ++)
+			avoid[i] = hot[i] || this.settling[i] > tick;
+		long settled = tick + HOLD_DOWN * (long) this.interval;
+		ArrayList<LSRNIC> path = new ArrayList<LSRNIC>();
+		for (int i = 0; i < this.routers.size(); i ++) {
+			LSR router = this.routers.get(i);
+			FECTable lsps = router.getIngressLabels();
+			for (int slot = 0; slot < lsps.capacity(); slot ++) {
+				long fec = lsps.keyAt(slot);
+				if (fec < 0 || !this.follow(router, lsps.valueAt(slot), path)) {
+					continue;
+				}
+				int dest = (int) (fec >>> 6);
+				int DSCP = (int) (fec & 0x3f);
+				Long last = this.moved.get(LSPState.key(router.getAddress(), dest, DSCP));
+				if (last != null && last > tick) {
+					continue;
+				}
+				int crossing = -1;	// the hot nic the LSP is to be moved off
+				for (int j = 0; j < path.size() && crossing < 0; j ++) {
+					int nic = this.nicIndex.get(path.get(j));
+					if (hot[nic] && this.settling[nic] <= tick)
+						crossing = nic;
+				}
+				if (crossing < 0) {
+					continue;
+				}
+				int[] route = this.route(router.getAddress(), dest, avoid);
+				if (route == null || this.isPath(route, path)) {
+					continue;
+				}
+				if (router.rerouteLSP(dest, DSCP, route)) {
+					this.moved.put(LSPState.key(router.getAddress(), dest, DSCP), settled);
+					this.moves++;
+					this.settling[crossing] = settled;
+					this.markRoute(router.getAddress(), route, avoid, settled);
+					if (router.getDisplayCommands()) {
+						System.out.println("Traffic engineering moves the LSP from Router " + router.getAddress() + " to Router " + dest
+								+ " off Router " + this.nics.get(crossing).getParent().getAddress() + " nic " + this.nics.get(crossing).getIndex()
+								+ ", load " + Math.round(this.load[crossing] * 100) + "%");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the load of a nic over the last interval
+	 * @param nic the nic
+	 * @return the packets offered to the nic as a fraction of its line rate, 0 for a nic of another network
+	 * @since 1.0
+	 */
+	public double getLoad(LSRNIC nic){
+		Integer index = this.nicIndex.get(nic);
+		return index == null ? 0 : this.load[index];
+	}
+
+	/**
+	 * Returns the number of LSPs moved so far
+	 * @return the moves
+	 * @since 1.0
+	 */
+	public long getMoves(){
+		return this.moves;
+	}
+
+	/**
+	 * Follows an LSP from its ingress label to its egress, collecting the output nics along it
+	 * @return false if the LSP is not up or leaves the routers of this engineer
+	 */
+	private boolean follow(LSR router, int label, ArrayList<LSRNIC> path){
+		path.clear();
+		NICLabelPair hop = router.switchLabel(label);
+		while (hop != null && hop.getNIC() != null && path.size() < MAX_HOPS) {
+			LSRNIC nic = hop.getNIC();
+			LSRNIC peer = nic.getLink() == null ? null : nic.getLink().getPeer(nic);
+			if (peer == null || !this.nicIndex.containsKey(nic)) {
+				return false;
+			}
+			path.add(nic);
+			hop = peer.getParent().switchLabel(hop.getVC());
+		}
+		return hop != null && hop.getNIC() == null;
+	}
+
+	/**
+	 * Returns whether a route visits the same routers as a path of nics
+	 */
+	private boolean isPath(int[] route, ArrayList<LSRNIC> path){
+		if (route.length != path.size()) {
+			return false;
+		}
+		for (int i = 0; i < route.length; i ++) {
+			if (path.get(i).getLink().getPeer(path.get(i)).getParent().getAddress() != route[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the path from a router to a destination that avoids some nics, with Dijkstra's
+	 * algorithm. A hop costs one plus the load of its nic, so of the shortest paths the least
+	 * loaded one is taken
+	 * @return the addresses of the routers after the source up to the destination, null if there is no such path
+	 */
+	private int[] route(int source, int dest, boolean[] avoid){
+		HashMap<Integer, Double> cost = new HashMap<Integer, Double>();
+		HashMap<Integer, Integer> previous = new HashMap<Integer, Integer>();
+		ArrayList<Integer> open = new ArrayList<Integer>();
+		cost.put(source, 0.0);
+		open.add(source);
+		while (!open.isEmpty()) {
+			int best = 0;
+			for (int i = 1; i < open.size(); i ++)
+				if (cost.get(open.get(i)) < cost.get(open.get(best)))
+					best = i;
+			int address = open.remove(best);
+			if (address == dest) {
+				break;
+			}
+			if (!this.byAddress.containsKey(address)) {
+				continue;
+			}
+			for (int edge = GraphInfo.getFirstEdge(address); edge >= 0; edge = GraphInfo.getNextEdge(edge)) {
+				Integer nic = this.nicIndex.get(GraphInfo.getEdgeNIC(edge));
+				if (nic == null || avoid[nic]) {
+					continue;
+				}
+				int neighbor = GraphInfo.getEdgeTarget(edge);
+				double through = cost.get(address) + 1 + this.load[nic];
+				Double known = cost.get(neighbor);
+				if (known == null || through < known) {
+					if (known == null)
+						open.add(neighbor);
+					cost.put(neighbor, through);
+					previous.put(neighbor, address);
+				}
+			}
+		}
+		if (!previous.containsKey(dest)) {
+			return null;
+		}
+		ArrayList<Integer> hops = new ArrayList<Integer>();
+		for (int address = dest; address != source; address = previous.get(address))
+			hops.add(0, address);
+		int[] route = new int[hops.size()];
+		for (int i = 0; i < route.length; i ++)
+			route[i] = hops.get(i);
+		return route;
+	}
+
+	/**
+	 * Leaves the nics along a route alone until a tick
+	 */
+	private void markRoute(int source, int[] route, boolean[] avoid, long until){
+		int from = source;
+		for (int i = 0; i < route.length; i ++) {
+			Integer nic = this.nicIndex.get(GraphInfo.getNICTo(from, route[i]));
+			if (nic != null) {
+				avoid[nic] = true;
+				this.settling[nic] = until;
+			}
+			from = route[i];
+		}
+	}
+}
@@ -1,12 +1,41 @@
+import DataTypes.CaptureFilter;
+import DataTypes.FECLatency;
 import DataTypes.GraphInfo;
+import DataTypes.SimulationClock;
+import DataTypes.SimulationRandom;
+import DataTypes.StateChecksum;
 import NetworkElements.*;
 
+import java.io.IOException;
 import java.util.*;
 
 public class example {
 	// This object will be used to move time forward on all objects
-	private int time = 0;
 	private ArrayList<LSR> allConsumers = new ArrayList<LSR>();
+	private String captureFile = null; // write all link traffic to this pcap file, null to disable capture
+	private PcapWriter capture = null;
+	private String recordFile = null; // record the inputs of the run to this file, null to disable recording
+	private String replayFile = null; // replay the inputs recorded in this file instead of building the example network
+	private ScenarioReplay scenario = null; // the scenario being replayed, null when not replaying
+	private ActorRuntime actors = null; // runs the routers as free running actors instead of ticks, null for ticks
+	private boolean lossless = false; // use credit based flow control on every nic instead of RED
+	private int load = 0; // packets each load source sends to router 14 every time unit
+	private ArrayList<LSR> loadSources = new ArrayList<LSR>();
+	private int ticks = 20; // how many time units to run
+	private double fluidRate = 0; // packets per time unit of fluid background load routers 9 and 11 send to router 14
+	private FluidNetwork fluid = null; // the fluid flows, null if there are none
+	private int multicast = 0; // packets router 9 sends to its group every time unit, the group's tree reaches routers 11, 13 and 14
+	private LSR multicastSource = null;
+	private boolean jmx = false; // register MBeans for every router and nic so the run can be tuned from a JMX console
+	private String statsFile = null; // sample the counters of every router, nic and link to this file, null to disable sampling
+	private int statsInterval = 1; // time units between samples
+	private StatisticsWriter stats = null;
+	private int teInterval = 0; // time units between the rounds of the traffic engineer, 0 to leave the LSPs where they are set up
+	private TrafficEngineer engineer = null;
+	private double sample = 0; // fraction of the data packets whose path is traced hop by hop, 0 to disable
+	private int sampleDest = CaptureFilter.ANY; // only trace the packets sent to this router
+	private int steadyWindow = 0; // identical ticks after which the network is fast-forwarded, 0 to simulate every tick
+	private SteadyState steady = null;
 	/**
 	 * Create a network and creates connections
 	 * @since 1.0
@@ -14,6 +43,15 @@ public class example {
 	public void go(){
 		System.out.println("** SYSTEM SETUP **");
 		
+		if (this.recordFile != null) {
+			try {
+				ScenarioRecorder.start(this.recordFile);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
 		// Create some new ATM Routers
 		LSR r1 = new LSR(9);
 		LSR r2 = new LSR(3);
@@ -36,6 +74,25 @@ public class example {
 		OtoOLink l2 = new OtoOLink(r2n2, r3n1);
 		OtoOLink l3 = new OtoOLink(r2n3, r4n1);
 		OtoOLink l4 = new OtoOLink(r4n2, r5n1);
+		
+		// a second way from router 3 to router 14, the shortest one, so traffic engineering has a path to move LSPs to
+		if (this.teInterval > 0) {
+			new OtoOLink(new LSRNIC(r2), new LSRNIC(r5));
+		}
+		
+		// capture the traffic on every link
+		if (this.captureFile != null) {
+			try {
+				this.capture = new PcapWriter(this.captureFile, 1000);
+				l1.setCapture(this.capture);
+				l2.setCapture(this.capture);
+				l3.setCapture(this.capture);
+				l4.setCapture(this.capture);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 				
 		// Add the objects that need to move in time to an array
 		this.allConsumers.add(r1);
@@ -44,6 +101,46 @@ public class example {
 		this.allConsumers.add(r4);
 		this.allConsumers.add(r5);
 		
+		// routers 9 and 11 load the link between routers 3 and 13, or between routers 3 and 14 with traffic engineering
+		this.loadSources.add(r1);
+		this.loadSources.add(r3);
+		
+		if (this.lossless) {
+			for (int i = 0; i < this.allConsumers.size(); i ++)
+				for (int j = 0; j < this.allConsumers.get(i).getNICCount(); j ++)
+					this.allConsumers.get(i).getNIC(j).setLossless(true);
+		}
+		
+		if (this.jmx) {
+			LSRControl.register(this.allConsumers);
+		}
+		
+		if (this.fluidRate > 0) {
+			this.fluid = new FluidNetwork();
+			for (int i = 0; i < this.loadSources.size(); i ++)
+				this.fluid.addFlow(this.loadSources.get(i), 14, 0, this.fluidRate);
+		}
+		
+		if (this.multicast > 0) {
+			this.multicastSource = r1;
+			r1.addP2MPLeaf(1, 11, 0);
+			r1.addP2MPLeaf(1, 13, 0);
+			r1.addP2MPLeaf(1, 14, 0);
+		}
+		
+		this.startStatistics();
+		
+		if (this.teInterval > 0) {
+			this.engineer = new TrafficEngineer(this.allConsumers, this.teInterval, 0.9);
+		}
+		
+		if (this.actors != null) {
+			this.actors.start(this.allConsumers, 1024);
+		}
+		else if (this.steadyWindow > 0) {
+			this.steady = new SteadyState(this.allConsumers, this.steadyWindow);
+		}
+		
 		//send packets from router 1 to the other routers...
 		r1.createPacket(11, 0);
 		r1.createPacket(3, 0);
@@ -57,27 +154,240 @@ public class example {
 		r5.createPacket(13, 0);
 		
 		
-		for (int i = 0; i < 20; i ++) {
+		if (this.actors != null) {
+			try {
+				this.actors.awaitQuiescence();
+				this.actors.shutdown();
+			}
+			catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		else {
+			long end = SimulationClock.getTick() + this.ticks;
+			while (SimulationClock.getTick() < end) {
+				tock();
+				if (this.steady != null)
+					fastForward(end);
+			}
+		}
+		
+		if (this.capture != null) {
+			this.capture.close();
+		}
+		ScenarioRecorder.stop();
+		this.stopStatistics();
+		this.printChecksum();
+	}
+	
+	/**
+	 * Rebuilds a recorded network and repeats the recorded inputs tick by tick
+	 * @since 1.0
+	 */
+	public void replay(){
+		System.out.println("** REPLAY OF " + this.replayFile + " **");
+		ScenarioReplay replay;
+		try {
+			replay = new ScenarioReplay(this.replayFile);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		this.allConsumers = replay.getRouters();
+		replay.apply(SimulationClock.getTick());
+		if (this.jmx) {
+			LSRControl.register(this.allConsumers);
+		}
+		this.scenario = replay;
+		this.fluid = replay.getFluidNetwork();
+		this.startStatistics();
+		while (SimulationClock.getTick() < replay.getEndTick()) {
 			tock();
 		}
+		this.stopStatistics();
+		this.printChecksum();
+	}
+	
+	/**
+	 * Opens the statistics file if sampling was asked for
+	 * @since 1.0
+	 */
+	public void startStatistics(){
+		if (this.statsFile != null) {
+			try {
+				this.stats = new StatisticsWriter(this.statsFile, this.allConsumers, this.statsInterval);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the samples still buffered and the index of the statistics file
+	 * @since 1.0
+	 */
+	public void stopStatistics(){
+		if (this.stats != null) {
+			try {
+				this.stats.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			this.stats = null;
+		}
+	}
+	
+	/**
+	 * Outputs the seed, a checksum of the final state of all routers, the packet counters and
+	 * the latency percentiles of each forwarding equivalence class
+	 * @since 1.0
+	 */
+	public void printChecksum(){
+		StateChecksum checksum = new StateChecksum();
+		long delivered = 0, refused = 0, dropped = 0, peakBuffer = 0;
+		for(int i=0; i<this.allConsumers.size(); i++) {
+			LSR router = this.allConsumers.get(i);
+			router.addToChecksum(checksum);
+			delivered += router.getDelivered();
+			refused += router.getRefused();
+			for (int j = 0; j < router.getNICCount(); j ++) {
+				dropped += router.getNIC(j).getDropped();
+				peakBuffer += router.getNIC(j).getPeakBuffer();
+			}
+		}
+		System.out.println("** SEED = " + SimulationRandom.getSeed() + " CHECKSUM = " + Long.toHexString(checksum.getValue()) + " **");
+		System.out.println("** DELIVERED = " + delivered + " DROPPED = " + dropped + " REFUSED = " + refused
+				+ " PEAK BUFFER = " + peakBuffer + " **");
+		for (FECLatency fec : LSR.mergeLatency(this.allConsumers))
+			System.out.println("** LATENCY " + fec + " **");
+		if (this.steady != null)
+			System.out.println("** FAST FORWARDED = " + this.steady.getSkipped() + " TICKS **");
+		if (this.fluid != null) {
+			for (FluidFlow flow : this.fluid.getFlows())
+				System.out.println("** FLUID " + flow.getSource().getAddress() + "->" + flow.getDest() + " DSCP " + flow.getDSCP()
+						+ ": OFFERED = " + Math.round(flow.getOffered()) + " DELIVERED = " + Math.round(flow.getDelivered()) + " **");
+		}
+	}
+	
+	/**
+	 * Skips the ticks the network would spend repeating itself, up to the next tick the driver
+	 * has to run itself: the end of the run, a statistics sample or a traffic engineering round
+	 * @param end the tick the run ends at
+	 * @since 1.0
+	 */
+	public void fastForward(long end){
+		long tick = SimulationClock.getTick();
+		long limit = end - tick;
+		if (this.stats != null)
+			limit = Math.min(limit, (tick / this.statsInterval + 1) * this.statsInterval - tick - 1);
+		if (this.engineer != null)
+			limit = Math.min(limit, (tick / this.teInterval + 1) * this.teInterval - tick - 1);
+		long skipped = this.steady.fastForward(limit);
+		if (skipped > 0)
+			System.out.println("** FAST FORWARD " + skipped + " TICKS TO TIME = " + SimulationClock.getTick() + " **");
 	}
 	
 	public void tock(){
-		System.out.println("** TIME = " + time + " **");
-		time++;
+		System.out.println("** TIME = " + SimulationClock.getTick() + " **");
+		SimulationClock.advance();
+		LSR.runTimers();
+		
+		// repeat the recorded inputs at the same point of the time unit they were recorded at
+		if (this.scenario != null)
+			this.scenario.apply(SimulationClock.getTick());
+		
+		// move LSPs off the links that were congested, make before break. Like every input it is recorded and replayed here
+		if (this.engineer != null)
+			this.engineer.optimize(SimulationClock.getTick());
 		
+		for (int i = 0; i < this.loadSources.size(); i ++)
+			for (int j = 0; j < this.load; j ++)
+				this.loadSources.get(i).createPacket(14, 0);
+		for (int j = 0; j < this.multicast; j ++)
+			this.multicastSource.createP2MPPacket(1, 0);
 		
-		// Send packets between routers
-		for(int i=0; i<this.allConsumers.size(); i++)
-			allConsumers.get(i).sendPackets();
+		// fluid background load takes its share of the lines before the packets are sent
+		if (this.fluid != null)
+			this.fluid.advance();
+		
+		// Send packets between routers, only the nics with packets waiting are visited
+		LSRNIC.sendActivePackets();
 
-		// Move packets from input buffers to output buffers
-		for(int i=0; i<this.allConsumers.size(); i++)
-			allConsumers.get(i).recievePackets();
+		// Handle the signaling first, then move data packets from input buffers to output buffers
+		LSRNIC.recieveActiveControl();
+		LSRNIC.recieveActivePackets();
+		
+		if (this.stats != null)
+			this.stats.sample(SimulationClock.getTick());
 		
+		// compare the tick with the ones before, the network is fast-forwarded once it repeats itself
+		if (this.steady != null)
+			this.steady.observe();
 	}
 	public static void main(String args[]){
 		example go = new example();
-		go.go();
+		for (int i = 0; i < args.length; i += 2) {
+			if (args[i].equals("-actors")) {
+				go.actors = new ActorRuntime();
+				i--;
+			}
+			else if (args[i].equals("-lossless")) {
+				go.lossless = true;
+				i--;
+			}
+			else if (args[i].equals("-jmx")) {
+				go.jmx = true;
+				i--;
+			}
+			else if (args[i].equals("-bundle")) {
+				LSR.setBundling(true);
+				i--;
+			}
+			else if (i + 1 >= args.length)
+				break;
+			else if (args[i].equals("-seed"))
+				SimulationRandom.setSeed(Long.parseLong(args[i + 1]));
+			else if (args[i].equals("-capture"))
+				go.captureFile = args[i + 1];
+			else if (args[i].equals("-record"))
+				go.recordFile = args[i + 1];
+			else if (args[i].equals("-replay"))
+				go.replayFile = args[i + 1];
+			else if (args[i].equals("-load"))
+				go.load = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-p2mp"))
+				go.multicast = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-fluid"))
+				go.fluidRate = Double.parseDouble(args[i + 1]);
+			else if (args[i].equals("-stats"))
+				go.statsFile = args[i + 1];
+			else if (args[i].equals("-interval"))
+				go.statsInterval = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-te"))
+				go.teInterval = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-ticks"))
+				go.ticks = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-steady"))
+				go.steadyWindow = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-sample"))
+				go.sample = Double.parseDouble(args[i + 1]);
+			else if (args[i].equals("-sampledest"))
+				go.sampleDest = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-refresh"))
+				LSR.setSoftStateTimers(Integer.parseInt(args[i + 1]), 3 * Integer.parseInt(args[i + 1]));
+		}
+		if (go.sample > 0) {
+			CaptureFilter filter = new CaptureFilter();
+			filter.setDest(go.sampleDest);
+			PacketTracer.start(go.sample, filter);
+		}
+		if (go.replayFile != null)
+			go.replay();
+		else
+			go.go();
 	}
 }
\ No newline at end of file